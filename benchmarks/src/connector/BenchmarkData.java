@@ -0,0 +1,109 @@
+package connector;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates realistic payloads for the benchmarks, always the same for the same seed.
+ */
+final class BenchmarkData {
+	private static final String[] TAGS = {"nature", "city", "panorama", "portrait", "night", "sea", "mountain"};
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * A post like the ones of the README, with text, select, relation, file, number, bool and json fields.
+	 */
+	static JsonObject record(Random random, int index) {
+		JsonObject record = new JsonObject();
+		record.addProperty("id", id(random));
+		record.addProperty("collectionId", "pbc_3861817060");
+		record.addProperty("collectionName", "posts");
+		record.addProperty("created", "2024-03-" + (10 + index % 18) + " 10:" + (10 + index % 50) + ":00.123Z");
+		record.addProperty("updated", "2024-04-01 08:30:00.456Z");
+
+		record.addProperty("title", "Post number " + index + " about " + TAGS[index % TAGS.length]);
+		record.addProperty("body", "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(1 + random.nextInt(8)));
+		record.addProperty("views", random.nextInt(100_000));
+		record.addProperty("published", random.nextBoolean());
+		record.addProperty("author", id(random));
+
+		JsonArray type = new JsonArray();
+		type.add(TAGS[random.nextInt(TAGS.length)]);
+		type.add(TAGS[random.nextInt(TAGS.length)]);
+		record.add("type", type);
+
+		JsonArray images = new JsonArray();
+		for (int i = 0; i < random.nextInt(4); i++) {
+			images.add("image_" + id(random) + ".png");
+		}
+		record.add("images", images);
+
+		JsonObject metadata = new JsonObject();
+		metadata.addProperty("width", 1920);
+		metadata.addProperty("height", 1080);
+		record.add("metadata", metadata);
+
+		return record;
+	}
+
+	/**
+	 * The json string of a list response with a page of records.
+	 */
+	static String page(int perPage) {
+		Random random = new Random(42);
+
+		JsonObject page = new JsonObject();
+		page.addProperty("page", 1);
+		page.addProperty("perPage", perPage);
+		page.addProperty("totalPages", 20);
+		page.addProperty("totalItems", perPage * 20);
+
+		JsonArray items = new JsonArray();
+		for (int i = 0; i < perPage; i++) {
+			items.add(record(random, i));
+		}
+		page.add("items", items);
+
+		return page.toString();
+	}
+
+	/**
+	 * The values of a record to create or update.
+	 */
+	static Map<String, PBValue> values() {
+		Map<String, PBValue> values = new HashMap<>();
+		values.put("title", new PBValue().setString("My Post"));
+		values.put("body", new PBValue().setString("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(4)));
+		values.put("views", new PBValue().setString("60"));
+		values.put("author", new PBValue().setString("95jh01oozx0qwg8"));
+		values.put("type", new PBValue().setList(new ArrayList<>(List.of("panorama", "nature", "sea"))));
+		return values;
+	}
+
+	/**
+	 * The json string of a validation error on three fields.
+	 */
+	static String validationError() {
+		return "{\"code\":400,\"message\":\"Failed to create record.\",\"data\":{"
+				+ "\"title\":{\"code\":\"validation_required\",\"message\":\"Missing required value.\"},"
+				+ "\"views\":{\"code\":\"validation_min_number_constraint\",\"message\":\"Must be larger than 0.\"},"
+				+ "\"type\":{\"code\":\"validation_invalid_value\",\"message\":\"Invalid value panoramic.\"}}}";
+	}
+
+	private static String id(Random random) {
+		char[] id = new char[15];
+		for (int i = 0; i < id.length; i++) {
+			int c = random.nextInt(36);
+			id[i] = (char) (c < 10 ? '0' + c : 'a' + c - 10);
+		}
+		return new String(id);
+	}
+}
@@ -0,0 +1,107 @@
+package connector;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the responses: a whole list page and a single record.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+	/**
+	 * The fields of the post used by a typical reader.
+	 */
+	record Post(String id, String title, int views, boolean published, List<String> type) {
+	}
+
+	@Param({"30", "500"})
+	int perPage;
+
+	private PocketBase pocketBase;
+	private PocketBase lazyPocketBase;
+	private String page;
+	private JsonObject record;
+	private PBSchema schema;
+
+	@Setup
+	public void setUp() {
+		pocketBase = new PocketBase("http://127.0.0.1:8090");
+		lazyPocketBase = new PocketBase("http://127.0.0.1:8090");
+		lazyPocketBase.setLazyRecords(true);
+		page = BenchmarkData.page(perPage);
+		record = BenchmarkData.record(new Random(42), 0);
+		schema = PBSchema.fromJson(JsonParser.parseString("{\"name\":\"posts\",\"type\":\"base\",\"schema\":["
+				+ "{\"name\":\"title\",\"type\":\"text\",\"options\":{}},"
+				+ "{\"name\":\"body\",\"type\":\"editor\",\"options\":{}},"
+				+ "{\"name\":\"views\",\"type\":\"number\",\"options\":{}},"
+				+ "{\"name\":\"published\",\"type\":\"bool\",\"options\":{}},"
+				+ "{\"name\":\"author\",\"type\":\"relation\",\"options\":{\"maxSelect\":1}},"
+				+ "{\"name\":\"type\",\"type\":\"select\",\"options\":{\"maxSelect\":2}},"
+				+ "{\"name\":\"images\",\"type\":\"file\",\"options\":{\"maxSelect\":5}},"
+				+ "{\"name\":\"metadata\",\"type\":\"json\",\"options\":{}}]}").getAsJsonObject());
+	}
+
+	/**
+	 * The json string of a page to the PBCollection, like readAllRecords.
+	 */
+	@Benchmark
+	public PBCollection buildCollection() {
+		return pocketBase.buildCollection(page);
+	}
+
+	/**
+	 * Only the PBRecord building, from an already parsed json object.
+	 */
+	@Benchmark
+	public void buildRecord(Blackhole blackhole) {
+		blackhole.consume(pocketBase.buildRecord(record));
+	}
+
+	/**
+	 * The json string of a page directly to objects, like readAllRecords with a class.
+	 */
+	@Benchmark
+	public PBTypedCollection<Post> buildTypedCollection() {
+		return pocketBase.buildTypedCollection(page, Post.class);
+	}
+
+	/**
+	 * The json string of a page to the PBCollection, decoding the values with the types of the schema.
+	 */
+	@Benchmark
+	public PBCollection buildSchemaCollection() {
+		return pocketBase.buildCollection(page, schema);
+	}
+
+	/**
+	 * A page of lazy records of which only the title is read, the typical list view.
+	 */
+	@Benchmark
+	public void buildLazyCollection(Blackhole blackhole) {
+		for (PBRecord item : lazyPocketBase.buildCollection(page).getItems()) {
+			blackhole.consume(item.getValues().get("title"));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the requests: the values of a record, the query string and the error responses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodeBenchmark {
+
+	private PocketBase pocketBase;
+	private Map<String, PBValue> values;
+	private PBQuery query;
+	private String error;
+
+	@Setup
+	public void setUp() {
+		pocketBase = new PocketBase("http://127.0.0.1:8090");
+		values = BenchmarkData.values();
+		query = query();
+		error = BenchmarkData.validationError();
+	}
+
+	private static PBQuery query() {
+		return new PBQuery()
+				.perPage(50)
+				.sort("-created,id")
+				.filter(PBFilter.gt("views", 60).and(PBFilter.eq("title", "My \"Post\"")).or(PBFilter.like("type", "panorama")))
+				.expand("author")
+				.skipTotal(true);
+	}
+
+	/**
+	 * The values of createRecord and updateRecord with the PBValuesTypeAdapter.
+	 */
+	@Benchmark
+	public String serializeValues() {
+		return pocketBase.gson.toJson(values);
+	}
+
+	/**
+	 * A query built and encoded from scratch.
+	 */
+	@Benchmark
+	public String buildQuery() {
+		return query().toString();
+	}
+
+	/**
+	 * A query built once and reused, the encoded string is cached.
+	 */
+	@Benchmark
+	public String reuseQuery() {
+		return query.toString();
+	}
+
+	/**
+	 * The parsing of a validation error into a PocketBaseException.
+	 */
+	@Benchmark
+	public Object handleResponseError() {
+		try {
+			pocketBase.handleResponseError(error);
+			return null;
+		} catch (PocketBaseException e) {
+			return e;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the multipart bodies, drained like the HTTP client does but without the network.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartBenchmark {
+
+	@Param({"16384", "1048576"})
+	int fileSize;
+
+	private byte[] content;
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException {
+		content = new byte[fileSize];
+		new Random(42).nextBytes(content);
+
+		file = Files.createTempFile("multipart-benchmark", ".png");
+		Files.write(file, content);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Text fields and an in-memory stream part.
+	 */
+	@Benchmark
+	public long inMemory() {
+		MultiPartBodyPublisher publisher = new MultiPartBodyPublisher()
+				.addPart("title", "My Post")
+				.addPart("type", "panorama")
+				.addPart("images", () -> new ByteArrayInputStream(content), "image.png", "image/png");
+		return drain(publisher.build());
+	}
+
+	/**
+	 * Text fields and a file part, like createRecordWithFiles.
+	 */
+	@Benchmark
+	public long file() {
+		MultiPartBodyPublisher publisher = new MultiPartBodyPublisher()
+				.addPart("title", "My Post")
+				.addPart("type", "panorama")
+				.addPart("images", file);
+		return drain(publisher.build());
+	}
+
+	/**
+	 * Reads the whole body and returns its size.
+	 */
+	private static long drain(HttpRequest.BodyPublisher body) {
+		CompletableFuture<Long> size = new CompletableFuture<>();
+
+		body.subscribe(new Flow.Subscriber<>() {
+			private long bytes;
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(ByteBuffer item) {
+				bytes += item.remaining();
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				size.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				size.complete(bytes);
+			}
+		});
+
+		return size.join();
+	}
+}
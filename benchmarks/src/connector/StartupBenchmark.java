@@ -0,0 +1,74 @@
+package connector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import testing.StubPocketBase;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first successful request of a new process, with and without {@link PBWarmUp}.<br>
+ * Every fork is a new JVM and measures a single request. Without an address a stub is started in the same JVM,
+ * which already loads part of the classes used by the connector: pass <code>-p address=...</code> of a real server
+ * for the numbers of a cold process.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+	@Param({""})
+	String address;
+
+	@Param({"posts"})
+	String collection;
+
+	@Param({"false", "true"})
+	boolean warmUp;
+
+	private StubPocketBase stub;
+	private PocketBase pocketBase;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		if (address.isEmpty()) {
+			stub = new StubPocketBase();
+			stub.seed(collection, 100);
+			stub.start();
+			address = stub.getAddress();
+		}
+
+		pocketBase = new PocketBase(address);
+		if (warmUp)
+			new PBWarmUp(pocketBase).connections(4).run();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (stub != null)
+			stub.stop();
+	}
+
+	/**
+	 * The first page read by the process.
+	 */
+	@Benchmark
+	public PBCollection firstRequest() throws IOException, PocketBaseException, InterruptedException {
+		return pocketBase.readAllRecords(collection, new PBQuery().perPage(30));
+	}
+}
@@ -15,6 +15,8 @@ import java.util.function.Supplier;
  * <a href="https://stackoverflow.com/questions/46392160/java-9-httpclient-send-a-multipart-form-data-request#54675316">Original stackoverflow answer</a>
  */
 public class MultiPartBodyPublisher {
+	private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.UTF_8);
+
 	private List<PartsSpecification> partsSpecificationList = new ArrayList<>();
 	private String boundary = UUID.randomUUID().toString();
 
@@ -23,7 +25,77 @@ public class MultiPartBodyPublisher {
 			throw new IllegalStateException("Must have at least one part to build multipart message.");
 		}
 		addFinalBoundaryPart();
-		return HttpRequest.BodyPublishers.ofByteArrays(PartsIterator::new);
+		HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofByteArrays(PartsIterator::new);
+
+		// With a known length the body is sent with a Content-Length instead of chunks, and the metrics can count it
+		long contentLength = prepareParts();
+		return contentLength >= 0 ? HttpRequest.BodyPublishers.fromPublisher(publisher, contentLength) : publisher;
+	}
+
+	/**
+	 * Builds the bytes of every part, or the header of the file parts, once for the length and the sending,
+	 * and reads the size of the files that is then sent.
+	 *
+	 * @return the length of the body, -1 if it is unknown because of a stream part
+	 */
+	private long prepareParts() {
+		long length = 0;
+		for (PartsSpecification part : partsSpecificationList) {
+			switch (part.type) {
+				case STRING:
+					part.bytes = stringPart(part);
+					break;
+				case FINAL_BOUNDARY:
+					part.bytes = part.value.getBytes(StandardCharsets.UTF_8);
+					break;
+				case FILE:
+					part.bytes = fileHeader(part.name, part.path.getFileName().toString(), contentTypeOf(part.path));
+					try {
+						part.size = Files.size(part.path);
+					} catch (IOException e) {
+						// The file will fail again while sending, with the right exception
+						part.size = -1;
+					}
+					break;
+				default:
+					String contentType = part.contentType != null ? part.contentType : "application/octet-stream";
+					part.bytes = fileHeader(part.name, part.filename, contentType);
+					part.size = -1;
+			}
+
+			if (part.size < 0 || length < 0)
+				length = -1;
+			else
+				length += part.bytes.length + (part.type == PartsSpecification.TYPE.FILE ? part.size + CRLF.length : 0);
+		}
+		return length;
+	}
+
+	private byte[] stringPart(PartsSpecification part) {
+		String string =
+				"--" + boundary + "\r\n" +
+						"Content-Disposition: form-data; name=" + part.name + "\r\n" +
+						"Content-Type: text/plain; charset=UTF-8\r\n\r\n" +
+						part.value + "\r\n";
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private byte[] fileHeader(String name, String filename, String contentType) {
+		String partHeader =
+				"--" + boundary + "\r\n" +
+						"Content-Disposition: form-data; name=" + name + "; filename=" + filename + "\r\n" +
+						"Content-Type: " + contentType + "\r\n\r\n";
+		return partHeader.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String contentTypeOf(Path path) {
+		String contentType;
+		try {
+			contentType = Files.probeContentType(path);
+		} catch (IOException e) {
+			contentType = null;
+		}
+		return contentType != null ? contentType : "application/octet-stream";
 	}
 
 	public String getBoundary() {
@@ -80,18 +152,32 @@ public class MultiPartBodyPublisher {
 		String filename;
 		String contentType;
 
+		// Set by build: the whole part, or the header of a file or stream part
+		byte[] bytes;
+		// The size of a file part sent, -1 if unknown
+		long size;
+
 	}
 
 	class PartsIterator implements Iterator<byte[]> {
 
 		private Iterator<PartsSpecification> iter;
 		private InputStream currentFileInput;
+		private PartsSpecification currentPart;
+		// The bytes of the current file still to send, -1 if unknown
+		private long remaining;
+		private final byte[] buffer = new byte[8192];
 
 		private boolean done;
 		private byte[] next;
 
+		// Spans the whole encoding, which happens while the body is sent
+		private final PBEvents.MultipartEncode encodeEvent = new PBEvents.MultipartEncode();
+		private long bytes;
+
 		PartsIterator() {
 			iter = partsSpecificationList.iterator();
+			encodeEvent.begin();
 		}
 
 		@Override
@@ -105,8 +191,14 @@ public class MultiPartBodyPublisher {
 			}
 			if (next == null) {
 				done = true;
+				if (encodeEvent.shouldCommit()) {
+					encodeEvent.parts = partsSpecificationList.size() - 1;
+					encodeEvent.bytes = bytes;
+					encodeEvent.commit();
+				}
 				return false;
 			}
+			bytes += next.length;
 			return true;
 		}
 
@@ -122,47 +214,33 @@ public class MultiPartBodyPublisher {
 			if (currentFileInput == null) {
 				if (!iter.hasNext()) return null;
 				PartsSpecification nextPart = iter.next();
-				if (PartsSpecification.TYPE.STRING.equals(nextPart.type)) {
-					String part =
-							"--" + boundary + "\r\n" +
-									"Content-Disposition: form-data; name=" + nextPart.name + "\r\n" +
-									"Content-Type: text/plain; charset=UTF-8\r\n\r\n" +
-									nextPart.value + "\r\n";
-					return part.getBytes(StandardCharsets.UTF_8);
-				}
-				if (PartsSpecification.TYPE.FINAL_BOUNDARY.equals(nextPart.type)) {
-					return nextPart.value.getBytes(StandardCharsets.UTF_8);
+				if (PartsSpecification.TYPE.STRING.equals(nextPart.type) || PartsSpecification.TYPE.FINAL_BOUNDARY.equals(nextPart.type)) {
+					return nextPart.bytes;
 				}
-				String filename;
-				String contentType;
 				if (PartsSpecification.TYPE.FILE.equals(nextPart.type)) {
-					Path path = nextPart.path;
-					filename = path.getFileName().toString();
-					contentType = Files.probeContentType(path);
-					if (contentType == null) contentType = "application/octet-stream";
-					currentFileInput = Files.newInputStream(path);
+					currentFileInput = Files.newInputStream(nextPart.path);
 				} else {
-					filename = nextPart.filename;
-					contentType = nextPart.contentType;
-					if (contentType == null) contentType = "application/octet-stream";
 					currentFileInput = nextPart.stream.get();
 				}
-				String partHeader =
-						"--" + boundary + "\r\n" +
-								"Content-Disposition: form-data; name=" + nextPart.name + "; filename=" + filename + "\r\n" +
-								"Content-Type: " + contentType + "\r\n\r\n";
-				return partHeader.getBytes(StandardCharsets.UTF_8);
+				currentPart = nextPart;
+				remaining = nextPart.size;
+				return nextPart.bytes;
 			} else {
-				byte[] buf = new byte[8192];
-				int r = currentFileInput.read(buf);
+				// A file is sent with the size of the Content-Length, even if it grew in the meantime
+				int length = remaining >= 0 ? (int) Math.min(8192, remaining) : 8192;
+				int r = length > 0 ? currentFileInput.read(buffer, 0, length) : -1;
 				if (r > 0) {
+					if (remaining >= 0)
+						remaining -= r;
 					byte[] actualBytes = new byte[r];
-					System.arraycopy(buf, 0, actualBytes, 0, r);
+					System.arraycopy(buffer, 0, actualBytes, 0, r);
 					return actualBytes;
 				} else {
 					currentFileInput.close();
 					currentFileInput = null;
-					return "\r\n".getBytes(StandardCharsets.UTF_8);
+					if (remaining > 0)
+						throw new IOException("The file " + currentPart.path + " got shorter while it was sent");
+					return CRLF;
 				}
 			}
 		}
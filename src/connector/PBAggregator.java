@@ -0,0 +1,349 @@
+package connector;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Computes sums, minimums, maximums and counts by value over the records of a collection, without keeping them.<br><br>
+ * The pages are read with only the fields aggregated, <code>parallelism</code> at a time, and their records are
+ * decoded lazily, only for the fields aggregated, then dropped: the memory used depends on the size of a page, not on
+ * the size of the collection. The pages are numbered, so the records changed during the aggregation can be counted
+ * twice or missed, like with any paginated read.<br>
+ * The values that are not numbers are skipped by the sums, minimums and maximums; every element of a list is
+ * counted by {@link #countBy(String)}. To only count the records, {@link PocketBase#count(String, String)} is cheaper.
+ * <pre>
+ * PBAggregator.Result result = new PBAggregator(pocketBase, "posts")
+ *         .filter("created &gt;= '2024-01-01'")
+ *         .sum("views")
+ *         .max("views")
+ *         .countBy("type")
+ *         .run();
+ * double views = result.getSum("views");
+ * Map&lt;String, Long&gt; types = result.getCountBy("type");
+ * </pre>
+ */
+public class PBAggregator {
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private String authToken = null;
+	private String filter = null;
+	private int perPage = 500;
+	private int parallelism = 4;
+
+	private final Set<String> numberFields = new LinkedHashSet<>();
+	private final Set<String> countByFields = new LinkedHashSet<>();
+
+	/**
+	 * The values computed by an aggregation.
+	 */
+	public static class Result {
+		private final long count;
+		private final Map<String, Stats> stats;
+		private final Map<String, Map<String, Long>> countBy;
+		private final Duration elapsed;
+
+		Result(long count, Map<String, Stats> stats, Map<String, Map<String, Long>> countBy, Duration elapsed) {
+			this.count = count;
+			this.stats = stats;
+			this.countBy = countBy;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Gets the number of records read.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the sum of the numbers of a field, 0 if there are none.
+		 */
+		public double getSum(String field) {
+			return stats(field).sum;
+		}
+
+		/**
+		 * Gets the minimum of the numbers of a field, null if there are none.
+		 */
+		public Double getMin(String field) {
+			Stats stats = stats(field);
+			return stats.count > 0 ? stats.min : null;
+		}
+
+		/**
+		 * Gets the maximum of the numbers of a field, null if there are none.
+		 */
+		public Double getMax(String field) {
+			Stats stats = stats(field);
+			return stats.count > 0 ? stats.max : null;
+		}
+
+		/**
+		 * Gets the average of the numbers of a field, null if there are none.
+		 */
+		public Double getAverage(String field) {
+			Stats stats = stats(field);
+			return stats.count > 0 ? stats.sum / stats.count : null;
+		}
+
+		/**
+		 * Gets the number of records with a number in a field.
+		 */
+		public long getNumbers(String field) {
+			return stats(field).count;
+		}
+
+		/**
+		 * Gets the number of records for every value of a field, an empty value for the records without one.
+		 */
+		public Map<String, Long> getCountBy(String field) {
+			Map<String, Long> counts = countBy.get(field);
+			if (counts == null)
+				throw new IllegalArgumentException("The field " + field + " was not counted by value");
+			return counts;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		private Stats stats(String field) {
+			Stats fieldStats = stats.get(field);
+			if (fieldStats == null)
+				throw new IllegalArgumentException("The field " + field + " was not aggregated");
+			return fieldStats;
+		}
+
+		@Override
+		public String toString() {
+			return "Result{" +
+					"count=" + count +
+					", stats=" + stats +
+					", countBy=" + countBy +
+					", elapsed=" + elapsed.toMillis() + "ms" +
+					'}';
+		}
+	}
+
+	/**
+	 * The numbers of a field.
+	 */
+	private static final class Stats {
+		long count = 0;
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+
+		void add(double value) {
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		@Override
+		public String toString() {
+			return count > 0 ? "{sum=" + sum + ", min=" + min + ", max=" + max + ", numbers=" + count + "}" : "{}";
+		}
+	}
+
+	/**
+	 * Instantiates a new aggregation of all the records of a collection.
+	 *
+	 * @param pocketBase     the connection used to read the pages
+	 * @param collectionName the collection name
+	 */
+	public PBAggregator(PocketBase pocketBase, String collectionName) {
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+	}
+
+	/**
+	 * Sets the authorization token, default null.
+	 */
+	public PBAggregator authToken(String authToken) {
+		this.authToken = authToken;
+		return this;
+	}
+
+	/**
+	 * Aggregates only the records that match a filter.
+	 */
+	public PBAggregator filter(String filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/**
+	 * Sets the number of records read with every request, default 500, the maximum of PocketBase.
+	 */
+	public PBAggregator perPage(int perPage) {
+		if (perPage <= 0)
+			throw new IllegalArgumentException("perPage must be positive: " + perPage);
+		this.perPage = perPage;
+		return this;
+	}
+
+	/**
+	 * Sets the number of pages read at the same time, default 4.
+	 */
+	public PBAggregator parallelism(int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Computes the sum of the numbers of a field, and also their minimum, maximum and average.
+	 */
+	public PBAggregator sum(String field) {
+		numberFields.add(field);
+		return this;
+	}
+
+	/**
+	 * Computes the minimum of the numbers of a field, and also their sum, maximum and average.
+	 */
+	public PBAggregator min(String field) {
+		return sum(field);
+	}
+
+	/**
+	 * Computes the maximum of the numbers of a field, and also their sum, minimum and average.
+	 */
+	public PBAggregator max(String field) {
+		return sum(field);
+	}
+
+	/**
+	 * Counts the records for every value of a field.
+	 */
+	public PBAggregator countBy(String field) {
+		countByFields.add(field);
+		return this;
+	}
+
+	/**
+	 * Reads all the pages and computes the aggregations.
+	 *
+	 * @return the values computed
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public Result run() throws IOException, PocketBaseException, InterruptedException {
+		long start = System.nanoTime();
+
+		Map<String, Stats> stats = new HashMap<>();
+		for (String field : numberFields) {
+			stats.put(field, new Stats());
+		}
+		Map<String, Map<String, Long>> countBy = new HashMap<>();
+		for (String field : countByFields) {
+			countBy.put(field, new HashMap<>());
+		}
+
+		// Only the fields aggregated are sent, at least one so the records are not sent whole
+		Set<String> fields = new LinkedHashSet<>(numberFields);
+		fields.addAll(countByFields);
+		if (fields.isEmpty())
+			fields.add("id");
+
+		// Numbered pages need a stable order
+		PBQuery query = new PBQuery()
+				.perPage(perPage)
+				.sort("id")
+				.fields(fields.toArray(new String[0]));
+		if (filter != null)
+			query = query.filter(filter);
+
+		// The first page also gives the number of pages
+		PBCollection first = take(pocketBase.readLazyPageAsync(collectionName, authToken, query.page(1)));
+		int totalPages = Integer.parseInt(first.getTotalPages());
+		long count = aggregate(first.getItems(), stats, countBy);
+
+		PBQuery pageQuery = query.skipTotal(true);
+		List<CompletableFuture<PBCollection>> window = new ArrayList<>(parallelism);
+		try {
+			int nextPage = 2;
+			while (nextPage <= totalPages || !window.isEmpty()) {
+				while (nextPage <= totalPages && window.size() < parallelism) {
+					window.add(pocketBase.readLazyPageAsync(collectionName, authToken, pageQuery.page(nextPage++)));
+				}
+
+				// The pages are aggregated in the order they arrive
+				take(CompletableFuture.anyOf(window.toArray(new CompletableFuture<?>[0])));
+				for (int i = window.size() - 1; i >= 0; i--) {
+					if (window.get(i).isDone())
+						count += aggregate(take(window.remove(i)).getItems(), stats, countBy);
+				}
+			}
+		} finally {
+			for (CompletableFuture<PBCollection> page : window) {
+				page.cancel(true);
+			}
+		}
+
+		return new Result(count, Collections.unmodifiableMap(stats), Collections.unmodifiableMap(countBy),
+				Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	private long aggregate(List<PBRecord> records, Map<String, Stats> stats, Map<String, Map<String, Long>> countBy) {
+		for (PBRecord record : records) {
+			Map<String, PBValue> values = record.getValues();
+
+			stats.forEach((field, fieldStats) -> {
+				PBValue value = values.get(field);
+				if (value != null && value.getString() != null) {
+					try {
+						fieldStats.add(Double.parseDouble(value.getString()));
+					} catch (NumberFormatException e) {
+						// Not a number
+					}
+				}
+			});
+
+			countBy.forEach((field, counts) -> {
+				PBValue value = values.get(field);
+				if (value != null && value.getList() != null) {
+					for (String element : value.getList()) {
+						counts.merge(element != null ? element : "", 1L, Long::sum);
+					}
+				} else {
+					String string = value != null ? value.getString() : null;
+					counts.merge(string != null ? string : "", 1L, Long::sum);
+				}
+			});
+		}
+		return records.size();
+	}
+
+	private static <T> T take(CompletableFuture<T> future) throws IOException, PocketBaseException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof PocketBaseException)
+				throw (PocketBaseException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		} catch (CancellationException e) {
+			throw new IOException("The request was cancelled", e);
+		}
+	}
+}
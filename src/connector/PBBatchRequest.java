@@ -0,0 +1,72 @@
+package connector;
+
+import java.util.Map;
+
+/**
+ * A create, update or delete request sent inside a batch, see {@link PocketBase#batch(java.util.List, String)}.
+ */
+public class PBBatchRequest {
+	private final String method;
+	private final String collectionName;
+	private final String url;
+	private final Map<String, PBValue> values;
+
+	private PBBatchRequest(String method, String collectionName, String url, Map<String, PBValue> values) {
+		this.method = method;
+		this.collectionName = collectionName;
+		this.url = url;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a new record inside a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordValues   the map containing the values to insert
+	 */
+	public static PBBatchRequest create(String collectionName, Map<String, PBValue> recordValues) {
+		return new PBBatchRequest("POST", collectionName, "/api/collections/" + collectionName + "/records", recordValues);
+	}
+
+	/**
+	 * Updates an existing record inside a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param updatedValues  the updated values of the record
+	 */
+	public static PBBatchRequest update(String collectionName, String recordId, Map<String, PBValue> updatedValues) {
+		return new PBBatchRequest("PATCH", collectionName, "/api/collections/" + collectionName + "/records/" + recordId, updatedValues);
+	}
+
+	/**
+	 * Deletes an existing record inside a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record to delete
+	 */
+	public static PBBatchRequest delete(String collectionName, String recordId) {
+		return new PBBatchRequest("DELETE", collectionName, "/api/collections/" + collectionName + "/records/" + recordId, null);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	String getCollectionName() {
+		return collectionName;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public Map<String, PBValue> getValues() {
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + url;
+	}
+}
@@ -0,0 +1,300 @@
+package connector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes or updates all the records of a collection that match a filter.<br><br>
+ * The ids of the matching records are scanned with keyset pagination on the id, asking only for the id field, and
+ * every chunk of ids is sent as a batch request by one of <code>concurrency</code> threads, while the scan goes on.
+ * The scan reads the ids after the last one seen, so the records deleted or changed behind it do not move the next pages,
+ * as they would with page numbers. A batch is atomic: when one record is refused, the chunk is sent again one record at a time
+ * to find it. A record deleted by someone else before its turn is reported as missing, not as failed.
+ * <pre>
+ * PBBulk.Result result = new PBBulk(pocketBase, "posts")
+ *         .concurrency(4)
+ *         .batchSize(50)
+ *         .delete("views &lt; 10");
+ * System.out.println(result.getFailed());
+ * </pre>
+ */
+public class PBBulk {
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private String authToken = null;
+	private int concurrency = 4;
+	private int batchSize = 50;
+	private int perPage = 500;
+
+	private volatile boolean batchSupported = true;
+
+	/**
+	 * The outcome of every record that matched the filter.
+	 */
+	public static class Result {
+		private final List<String> succeeded;
+		private final List<String> missing;
+		private final Map<String, Exception> failed;
+		private final Duration elapsed;
+
+		Result(List<String> succeeded, List<String> missing, Map<String, Exception> failed, Duration elapsed) {
+			this.succeeded = Collections.unmodifiableList(succeeded);
+			this.missing = Collections.unmodifiableList(missing);
+			this.failed = Collections.unmodifiableMap(failed);
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Gets the ids of the records deleted or updated.
+		 */
+		public List<String> getSucceeded() {
+			return succeeded;
+		}
+
+		/**
+		 * Gets the ids of the records that matched but were deleted by someone else before their turn.
+		 */
+		public List<String> getMissing() {
+			return missing;
+		}
+
+		/**
+		 * Gets the ids of the records not deleted or updated, with the error.
+		 */
+		public Map<String, Exception> getFailed() {
+			return failed;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("succeeded %d, missing %d, failed %d in %.1fs",
+					succeeded.size(), missing.size(), failed.size(), elapsed.toMillis() / 1000.0);
+		}
+	}
+
+	/**
+	 * Instantiates a new bulk operation. Prefer {@link PocketBase#deleteWhere(String, String)} and
+	 * {@link PocketBase#updateWhere(String, String, Map)} for the default options.
+	 *
+	 * @param pocketBase     the connection
+	 * @param collectionName the collection name
+	 */
+	public PBBulk(PocketBase pocketBase, String collectionName) {
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+	}
+
+	/**
+	 * Sets the authorization token, default null.
+	 */
+	public PBBulk authToken(String authToken) {
+		this.authToken = authToken;
+		return this;
+	}
+
+	/**
+	 * Sets the number of requests sent at the same time, default 4.
+	 */
+	public PBBulk concurrency(int concurrency) {
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * Sets the number of records changed by every batch request, default 50, 1 to send a request per record.
+	 * It cannot be more than the <code>maxRequests</code> of the batch settings of PocketBase.
+	 */
+	public PBBulk batchSize(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Sets the number of ids read with every request of the scan, default 500.
+	 */
+	public PBBulk perPage(int perPage) {
+		if (perPage <= 0)
+			throw new IllegalArgumentException("perPage must be positive: " + perPage);
+		this.perPage = perPage;
+		return this;
+	}
+
+	/**
+	 * Deletes all the records that match a filter.
+	 *
+	 * @param filter the filter of the records, all the records if null
+	 * @return the ids deleted, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
+	 * @throws IOException         the database is unreachable
+	 */
+	public Result delete(String filter) throws IOException, PocketBaseException, InterruptedException {
+		return run(filter, null);
+	}
+
+	/**
+	 * Updates all the records that match a filter with the same values.
+	 *
+	 * @param filter the filter of the records, all the records if null
+	 * @param values the values to set
+	 * @return the ids updated, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
+	 * @throws IOException         the database is unreachable
+	 */
+	public Result update(String filter, Map<String, PBValue> values) throws IOException, PocketBaseException, InterruptedException {
+		if (values == null)
+			throw new IllegalArgumentException("values cannot be null");
+		return run(filter, values);
+	}
+
+	private Result run(String filter, Map<String, PBValue> values) throws IOException, PocketBaseException, InterruptedException {
+		long start = System.nanoTime();
+		Outcome outcome = new Outcome();
+		// The workers share the deadline and the cancellation of the caller
+		PBCall call = PBCall.current();
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "pb-bulk-" + collectionName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		Semaphore permits = new Semaphore(concurrency);
+		try {
+			PBScanner scanner = new PBScanner(pocketBase, collectionName, authToken,
+					filter != null ? PBFilter.raw(filter) : null, perPage, "id", "id");
+			List<String> chunk = new ArrayList<>(batchSize);
+			while (scanner.hasNext()) {
+				chunk.add(scanner.next().getId());
+				if (chunk.size() == batchSize) {
+					submit(executor, permits, call, chunk, values, outcome);
+					chunk = new ArrayList<>(batchSize);
+				}
+			}
+			if (!chunk.isEmpty())
+				submit(executor, permits, call, chunk, values, outcome);
+
+			// All the permits are back when every chunk is done
+			permits.acquire(concurrency);
+		} catch (UncheckedPocketBaseException e) {
+			throw e.getCause();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+
+		return outcome.result(Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/**
+	 * Sends a chunk from a worker, waiting while <code>concurrency</code> chunks are in flight.
+	 */
+	private void submit(ExecutorService executor, Semaphore permits, PBCall call, List<String> ids, Map<String, PBValue> values, Outcome outcome) throws InterruptedException {
+		permits.acquire();
+		executor.execute(() -> {
+			PBCall previous = PBCall.swap(call);
+			try {
+				send(ids, values, outcome);
+			} catch (InterruptedException e) {
+				outcome.failAll(ids, e);
+			} finally {
+				PBCall.swap(previous);
+				permits.release();
+			}
+		});
+	}
+
+	private void send(List<String> ids, Map<String, PBValue> values, Outcome outcome) throws InterruptedException {
+		if (ids.size() > 1 && batchSupported) {
+			List<PBBatchRequest> requests = new ArrayList<>(ids.size());
+			for (String id : ids) {
+				requests.add(values == null
+						? PBBatchRequest.delete(collectionName, id)
+						: PBBatchRequest.update(collectionName, id, values));
+			}
+
+			try {
+				pocketBase.batch(requests, authToken);
+				outcome.succeeded(ids);
+				return;
+			} catch (IOException e) {
+				outcome.failAll(ids, e);
+				return;
+			} catch (PocketBaseException e) {
+				if (e.getCode() == 429 || e.getCode() >= 500) {
+					outcome.failAll(ids, e);
+					return;
+				}
+				if (e.getCode() == 403 || e.getCode() == 404)
+					batchSupported = false;
+				// Otherwise a record is refused or missing and the batch is rolled back: the records are sent one by one to find it
+			}
+		}
+
+		for (String id : ids) {
+			try {
+				if (values == null)
+					pocketBase.deleteRecord(collectionName, id, authToken);
+				else
+					pocketBase.updateRecord(collectionName, id, values, authToken);
+				outcome.succeeded(List.of(id));
+			} catch (PocketBaseException e) {
+				if (e.getCode() == 404)
+					outcome.missing(id);
+				else
+					outcome.failed(id, e);
+			} catch (IOException e) {
+				outcome.failed(id, e);
+			}
+		}
+	}
+
+	/**
+	 * The ids collected by the workers.
+	 */
+	private static final class Outcome {
+		private final List<String> succeeded = new ArrayList<>();
+		private final List<String> missing = new ArrayList<>();
+		private final Map<String, Exception> failed = new LinkedHashMap<>();
+
+		synchronized void succeeded(List<String> ids) {
+			succeeded.addAll(ids);
+		}
+
+		synchronized void missing(String id) {
+			missing.add(id);
+		}
+
+		synchronized void failed(String id, Exception error) {
+			failed.put(id, error);
+		}
+
+		synchronized void failAll(List<String> ids, Exception error) {
+			for (String id : ids) {
+				failed.put(id, error);
+			}
+		}
+
+		synchronized Result result(Duration elapsed) {
+			return new Result(new ArrayList<>(succeeded), new ArrayList<>(missing), new LinkedHashMap<>(failed), elapsed);
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package connector;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A deadline and a cancellation for the calls to a {@link PocketBase} made by a thread.<br><br>
+ * Every request sent by the thread between {@link #begin()} and {@link #close()} gets the time left before the deadline
+ * as its timeout, so the deadline is shared by all the requests of a call: the pages of a scan, the chunks of a prefetch,
+ * the second attempt of a hedged read. A request started after the deadline fails at once, a request still running
+ * at the deadline is aborted, even while a file is being downloaded, with an {@link HttpTimeoutException}.
+ * Another thread can abort the requests running with {@link #cancel()}, they fail with an {@link IOException}.<br>
+ * The futures of the asynchronous methods and the pages of a {@link PBPublisher} keep the call that was current
+ * when they were created.
+ * <pre>
+ * try (PBCall call = PBCall.withTimeout(Duration.ofSeconds(2)).begin()) {
+ *     PBCollection page = pocketBase.readAllRecords("posts", query);
+ *     Map&lt;String, PBRecord&gt; authors = pocketBase.prefetchRelation(page.getItems(), "author", "users");
+ * }
+ * </pre>
+ */
+public class PBCall implements AutoCloseable {
+	private static final ThreadLocal<PBCall> CURRENT = new ThreadLocal<>();
+
+	private final long deadline;
+	private final boolean hasDeadline;
+	// Aborts the requests in flight
+	private final Set<Runnable> cancellers = ConcurrentHashMap.newKeySet();
+	private volatile IOException failure = null;
+
+	private volatile PBCall parent;
+	private PBCall previous;
+	private Thread thread;
+	private final Runnable cancelledByParent = () -> abort(parent.failure());
+
+	private PBCall(long deadline, boolean hasDeadline) {
+		this.deadline = deadline;
+		this.hasDeadline = hasDeadline;
+	}
+
+	/**
+	 * Instantiates a call that must end within a time from now.
+	 */
+	public static PBCall withTimeout(Duration timeout) {
+		if (timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("timeout must be positive: " + timeout);
+		return new PBCall(System.nanoTime() + timeout.toNanos(), true);
+	}
+
+	/**
+	 * Instantiates a call without a deadline, that can only be cancelled.
+	 */
+	public static PBCall cancellable() {
+		return new PBCall(0, false);
+	}
+
+	/**
+	 * Gets the call current for this thread, null if there is none.
+	 */
+	public static PBCall current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Makes this call the current one for this thread, until it is closed. Inside another call, the earlier deadline
+	 * is kept and cancelling the outer call also cancels this one.
+	 *
+	 * @return this call
+	 */
+	public synchronized PBCall begin() {
+		if (thread != null)
+			throw new IllegalStateException("The call has already begun");
+
+		thread = Thread.currentThread();
+		previous = CURRENT.get();
+		parent = previous;
+		CURRENT.set(this);
+
+		if (parent != null && !parent.register(cancelledByParent))
+			cancelledByParent.run();
+		if (hasDeadline) {
+			// Aborts the requests that are still running at the deadline, like a download stuck in the body
+			long delay = deadline - System.nanoTime();
+			CompletableFuture.delayedExecutor(Math.max(0, delay), TimeUnit.NANOSECONDS).execute(this::expire);
+		}
+		return this;
+	}
+
+	/**
+	 * Aborts the requests in flight, and makes the next ones fail at once.
+	 */
+	public void cancel() {
+		abort(new IOException("The call was cancelled"));
+	}
+
+	/**
+	 * Checks if the call was cancelled or its deadline expired.
+	 */
+	public boolean isDone() {
+		return failure != null || remainingNanos() <= 0 || (parent != null && parent.isDone());
+	}
+
+	/**
+	 * Gets the time left before the deadline, null if there is no deadline.
+	 */
+	public Duration getRemaining() {
+		long remaining = remainingNanos();
+		return remaining == Long.MAX_VALUE ? null : Duration.ofNanos(Math.max(0, remaining));
+	}
+
+	/**
+	 * Ends the call: this thread gets back the call it had before.
+	 */
+	@Override
+	public synchronized void close() {
+		if (thread == null)
+			return;
+		if (thread != Thread.currentThread())
+			throw new IllegalStateException("The call must be closed by the thread that began it");
+
+		if (CURRENT.get() == this) {
+			if (previous != null)
+				CURRENT.set(previous);
+			else
+				CURRENT.remove();
+		}
+		if (parent != null)
+			parent.unregister(cancelledByParent);
+		thread = null;
+		cancellers.clear();
+	}
+
+	// ================ REQUESTS ================
+
+	/**
+	 * Makes a call the current one for this thread without beginning it, to send requests for another thread.
+	 *
+	 * @return the call that was current before
+	 */
+	static PBCall swap(PBCall call) {
+		PBCall previous = CURRENT.get();
+		if (call != null)
+			CURRENT.set(call);
+		else
+			CURRENT.remove();
+		return previous;
+	}
+
+	/**
+	 * Throws the reason why the call ended, if it did.
+	 */
+	void check() throws IOException {
+		if (isDone())
+			throw failure();
+	}
+
+	/**
+	 * Sets the time left before the deadline as the timeout of a request.
+	 */
+	HttpRequest.Builder timeout(HttpRequest.Builder requestBuilder) throws IOException {
+		check();
+		long remaining = remainingNanos();
+		if (remaining != Long.MAX_VALUE)
+			requestBuilder.timeout(Duration.ofNanos(remaining));
+		return requestBuilder;
+	}
+
+	/**
+	 * Runs an action when the call is cancelled or expires, until it is unregistered.
+	 *
+	 * @return false if the call has already ended, and the action was not registered
+	 */
+	boolean register(Runnable canceller) {
+		if (isDone())
+			return false;
+		cancellers.add(canceller);
+		// Cancelled while registering
+		if (failure != null && cancellers.remove(canceller))
+			return false;
+		return true;
+	}
+
+	void unregister(Runnable canceller) {
+		cancellers.remove(canceller);
+	}
+
+	/**
+	 * Waits for a future, aborting it when the call ends.
+	 */
+	<T> T await(CompletableFuture<T> future) throws IOException, PocketBaseException, InterruptedException {
+		Runnable canceller = () -> future.cancel(true);
+		if (!register(canceller)) {
+			future.cancel(true);
+			throw failure();
+		}
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof PocketBaseException)
+				throw (PocketBaseException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		} catch (CancellationException e) {
+			throw failure();
+		} finally {
+			unregister(canceller);
+		}
+	}
+
+	/**
+	 * Gets the reason why the call ended.
+	 */
+	IOException failure() {
+		IOException failure = this.failure;
+		if (failure != null)
+			return failure;
+		if (parent != null && parent.isDone())
+			return parent.failure();
+		return new HttpTimeoutException("The deadline of the call expired");
+	}
+
+	private long remainingNanos() {
+		long remaining = hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+		return parent != null ? Math.min(remaining, parent.remainingNanos()) : remaining;
+	}
+
+	private void expire() {
+		abort(new HttpTimeoutException("The deadline of the call expired"));
+	}
+
+	private void abort(IOException reason) {
+		synchronized (this) {
+			if (failure != null)
+				return;
+			failure = reason;
+		}
+		for (Runnable canceller : cancellers) {
+			cancellers.remove(canceller);
+			canceller.run();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PBCall{" +
+				"remaining=" + getRemaining() +
+				", done=" + isDone() +
+				'}';
+	}
+}
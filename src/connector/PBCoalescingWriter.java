@@ -0,0 +1,301 @@
+package connector;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Merges the updates of the same record sent within a short time into a single request.<br><br>
+ * The first update of a record waits for the window, the values of the updates of the same record that arrive in the
+ * meantime are merged into it, the later ones replacing the earlier ones field by field, and the merged values are sent
+ * with one request. Every caller gets the record returned by the server, with all the merged updates.
+ * Only one request per record is in flight at a time, so the updates of a record reach the server in the order
+ * they were made; the ones made while a request is in flight are merged and sent after it.
+ * The modifiers of PocketBase, like <code>views+</code>, are never merged with another update of the same field.
+ * A merged request that fails, for example because of a value refused by the server, fails all the updates merged in it.
+ * <pre>
+ * try (PBCoalescingWriter writer = new PBCoalescingWriter(pocketBase, token).window(Duration.ofMillis(5))) {
+ *     writer.updateRecord("counters", id, Map.of("status", new PBValue().setString("running")));
+ *     writer.updateRecord("counters", id, Map.of("views+", new PBValue().setString("1")))
+ *             .thenAccept(record -&gt; System.out.println(record.getValues().get("views")));
+ * }
+ * </pre>
+ */
+public class PBCoalescingWriter implements Closeable {
+	private final PocketBase pocketBase;
+	private final String authToken;
+	private volatile long windowNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+	// The records with updates waiting or in flight, guarded by this
+	private final Map<Key, Chain> chains = new HashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private boolean closed = false;
+
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+
+	private static final class Key {
+		final String collectionName;
+		final String recordId;
+
+		Key(String collectionName, String recordId) {
+			this.collectionName = collectionName;
+			this.recordId = recordId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key) o;
+			return collectionName.equals(key.collectionName) && recordId.equals(key.recordId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(collectionName, recordId);
+		}
+	}
+
+	/**
+	 * The updates of a record, sent one request at a time.
+	 */
+	private static final class Chain {
+		final Key key;
+		final ArrayDeque<Update> updates = new ArrayDeque<>();
+		boolean inFlight = false;
+
+		Chain(Key key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The merged values of the updates sent with one request.
+	 */
+	private static final class Update {
+		final Map<String, PBValue> values = new LinkedHashMap<>();
+		final List<CompletableFuture<PBRecord>> futures = new ArrayList<>();
+		// The window ended or the writer was flushed
+		boolean due = false;
+		boolean sent = false;
+	}
+
+	/**
+	 * Instantiates a new writer.
+	 *
+	 * @param pocketBase the connection used to send the updates
+	 * @param authToken  the authorization token of all the updates, leave to null if not needed
+	 */
+	public PBCoalescingWriter(PocketBase pocketBase, String authToken) {
+		this.pocketBase = pocketBase;
+		this.authToken = authToken;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pb-coalescing-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public PBCoalescingWriter(PocketBase pocketBase) {
+		this(pocketBase, null);
+	}
+
+	/**
+	 * Sets how long the first update of a record waits for the others, default 5 milliseconds.
+	 * With zero, the updates are merged only while a request of the same record is in flight.
+	 */
+	public PBCoalescingWriter window(Duration window) {
+		if (window.isNegative())
+			throw new IllegalArgumentException("window cannot be negative: " + window);
+		this.windowNanos = window.toNanos();
+		return this;
+	}
+
+	/**
+	 * Gets the number of updates received.
+	 */
+	public long getUpdates() {
+		return updates.sum();
+	}
+
+	/**
+	 * Gets the number of requests sent.
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Updates a record, merging the values with the other updates of the same record.
+	 * The values are copied, so the map and the values can be changed after the call.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param updatedValues  the updated values of the record
+	 * @return the future record returned by the server, completed exceptionally with a {@link PocketBaseException}
+	 * or an {@link java.io.IOException} in case of error
+	 */
+	public CompletableFuture<PBRecord> updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues) {
+		Map<String, PBValue> values = copy(updatedValues);
+		CompletableFuture<PBRecord> future = new CompletableFuture<>();
+		updates.increment();
+
+		synchronized (this) {
+			if (closed)
+				throw new IllegalStateException("The writer is closed");
+
+			Key key = new Key(collectionName, recordId);
+			Chain chain = chains.computeIfAbsent(key, Chain::new);
+			Update last = chain.updates.peekLast();
+
+			if (last != null && !last.sent && canMerge(last.values, values)) {
+				last.values.putAll(values);
+				last.futures.add(future);
+			} else {
+				Update update = new Update();
+				update.values.putAll(values);
+				update.futures.add(future);
+				chain.updates.addLast(update);
+				scheduler.schedule(() -> due(chain, update), windowNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Sends all the updates waiting, without waiting for their window.
+	 *
+	 * @return the future completed when all the updates made before the flush were answered, even if with an error
+	 */
+	public CompletableFuture<Void> flush() {
+		List<CompletableFuture<PBRecord>> futures = new ArrayList<>();
+		synchronized (this) {
+			for (Chain chain : new ArrayList<>(chains.values())) {
+				for (Update update : chain.updates) {
+					update.due = true;
+					futures.addAll(update.futures);
+				}
+				send(chain);
+			}
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> null);
+	}
+
+	/**
+	 * Sends all the updates waiting and waits for them, then stops the writer.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		flush().join();
+		scheduler.shutdownNow();
+	}
+
+	private synchronized void due(Chain chain, Update update) {
+		update.due = true;
+		send(chain);
+	}
+
+	/**
+	 * Sends the first update of a record, if it is due and no other request of the record is in flight.
+	 */
+	private void send(Chain chain) {
+		Update update = chain.updates.peekFirst();
+		if (chain.inFlight || update == null || !update.due)
+			return;
+
+		update.sent = true;
+		chain.inFlight = true;
+		requests.increment();
+
+		CompletableFuture<PBRecord> response;
+		try {
+			response = pocketBase.updateRecordAsync(chain.key.collectionName, chain.key.recordId, update.values, authToken);
+		} catch (RuntimeException e) {
+			response = CompletableFuture.failedFuture(e);
+		}
+
+		response.whenComplete((record, error) -> {
+			synchronized (this) {
+				chain.updates.removeFirst();
+				chain.inFlight = false;
+				if (chain.updates.isEmpty())
+					chains.remove(chain.key);
+				else
+					send(chain);
+			}
+
+			// Outside the lock, the callers may update again
+			for (CompletableFuture<PBRecord> future : update.futures) {
+				if (error != null)
+					future.completeExceptionally(error);
+				else
+					future.complete(record);
+			}
+		});
+	}
+
+	/**
+	 * Checks if new values can be merged into waiting ones: a modifier, like <code>views+</code>, <code>+tags</code>
+	 * or <code>tags-</code>, cannot be merged with anything else on the same field.
+	 */
+	private static boolean canMerge(Map<String, PBValue> waiting, Map<String, PBValue> values) {
+		for (String key : values.keySet()) {
+			String field = fieldOf(key);
+			for (String waitingKey : waiting.keySet()) {
+				if (fieldOf(waitingKey).equals(field) && (isModifier(key) || isModifier(waitingKey)))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isModifier(String key) {
+		return key.startsWith("+") || key.endsWith("+") || key.endsWith("-");
+	}
+
+	private static String fieldOf(String key) {
+		if (key.startsWith("+"))
+			return key.substring(1);
+		if (key.endsWith("+") || key.endsWith("-"))
+			return key.substring(0, key.length() - 1);
+		return key;
+	}
+
+	private static Map<String, PBValue> copy(Map<String, PBValue> values) {
+		Map<String, PBValue> copy = new LinkedHashMap<>();
+		values.forEach((field, value) -> {
+			if (value == null)
+				copy.put(field, null);
+			else if (value.getList() != null)
+				copy.put(field, new PBValue().setList(new ArrayList<>(value.getList())));
+			else
+				copy.put(field, new PBValue().setString(value.getString()));
+		});
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "PBCoalescingWriter{" +
+				"updates=" + getUpdates() +
+				", requests=" + getRequests() +
+				'}';
+	}
+}
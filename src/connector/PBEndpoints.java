@@ -0,0 +1,327 @@
+package connector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The servers of a connection: a primary, that receives all the writes, and replicas that share the reads with it.<br><br>
+ * Every read goes to the better of two endpoints chosen at random, comparing their recent latency (an exponentially
+ * weighted moving average) multiplied by the requests they are answering. An endpoint that fails some requests in a row
+ * is ejected from the reads; a health check of all the endpoints, every few seconds, ejects the ones that do not answer
+ * and brings back the ones that recovered. The writes always go to the primary, so a read from a replica may not see
+ * a write just made, if the replication is not synchronous.
+ * <pre>
+ * PBEndpoints endpoints = new PBEndpoints("http://10.0.0.1:8090", "http://10.0.0.2:8090", "http://10.0.0.3:8090")
+ *         .healthCheckInterval(Duration.ofSeconds(5));
+ * PocketBase pocketBase = new PocketBase(endpoints);
+ * </pre>
+ */
+public class PBEndpoints {
+	// The weight of the latest latency in the average
+	private static final double EWMA_WEIGHT = 0.2;
+
+	private final Endpoint primary;
+	private final List<Endpoint> endpoints;
+
+	private volatile boolean readFromPrimary = true;
+	private volatile int failuresToEject = 3;
+	private volatile Duration ejectionTime = Duration.ofSeconds(30);
+	private volatile Duration healthCheckInterval = Duration.ofSeconds(5);
+
+	private volatile ScheduledExecutorService healthChecks;
+
+	/**
+	 * An endpoint of the connection.
+	 */
+	public static class Endpoint {
+		private final String address;
+		private final boolean primary;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private volatile double latencyNanos = 0;
+		private volatile boolean ejected = false;
+		private volatile long ejectedUntil = 0;
+
+		Endpoint(String address, boolean primary) {
+			this.address = address;
+			this.primary = primary;
+		}
+
+		public String getAddress() {
+			return address;
+		}
+
+		public boolean isPrimary() {
+			return primary;
+		}
+
+		/**
+		 * Checks if the endpoint receives reads.
+		 */
+		public boolean isHealthy() {
+			return !ejected;
+		}
+
+		/**
+		 * Gets the number of requests sent to the endpoint and not yet answered.
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Gets the average recent latency of the endpoint.
+		 */
+		public Duration getLatency() {
+			return Duration.ofNanos((long) latencyNanos);
+		}
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		public long getFailures() {
+			return failures.sum();
+		}
+
+		/**
+		 * The lower, the better: an endpoint answering many requests is slower than its average.
+		 */
+		double score() {
+			return (latencyNanos + 1) * (inFlight.get() + 1);
+		}
+
+		@Override
+		public String toString() {
+			return "Endpoint{" +
+					"address='" + address + '\'' +
+					(primary ? ", primary" : "") +
+					", healthy=" + !ejected +
+					", inFlight=" + inFlight.get() +
+					", latency=" + getLatency().toMillis() + "ms" +
+					", requests=" + requests.sum() +
+					", failures=" + failures.sum() +
+					'}';
+		}
+	}
+
+	/**
+	 * Instantiates the endpoints of a connection.
+	 *
+	 * @param primary  the address of the primary, that receives the writes
+	 * @param replicas the addresses of the replicas, that only receive reads
+	 */
+	public PBEndpoints(String primary, String... replicas) {
+		List<Endpoint> endpoints = new ArrayList<>();
+		this.primary = new Endpoint(primary, true);
+		endpoints.add(this.primary);
+		for (String replica : replicas) {
+			endpoints.add(new Endpoint(replica, false));
+		}
+		this.endpoints = Collections.unmodifiableList(endpoints);
+	}
+
+	/**
+	 * Sets if the primary also receives reads, default true.
+	 */
+	public PBEndpoints readFromPrimary(boolean readFromPrimary) {
+		this.readFromPrimary = readFromPrimary;
+		return this;
+	}
+
+	/**
+	 * Sets the number of failed requests in a row that eject an endpoint from the reads, default 3.
+	 * A failed request is one without a response, or with a 5xx status.
+	 */
+	public PBEndpoints failuresToEject(int failuresToEject) {
+		if (failuresToEject <= 0)
+			throw new IllegalArgumentException("failuresToEject must be positive: " + failuresToEject);
+		this.failuresToEject = failuresToEject;
+		return this;
+	}
+
+	/**
+	 * Sets how long an ejected endpoint waits before receiving reads again when there are no health checks, default 30 seconds.
+	 */
+	public PBEndpoints ejectionTime(Duration ejectionTime) {
+		this.ejectionTime = ejectionTime;
+		return this;
+	}
+
+	/**
+	 * Sets the time between the health checks of the endpoints, default 5 seconds, null to disable them.
+	 * Must be set before creating the connection.
+	 */
+	public PBEndpoints healthCheckInterval(Duration healthCheckInterval) {
+		this.healthCheckInterval = healthCheckInterval;
+		return this;
+	}
+
+	public Endpoint getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * Gets all the endpoints, the primary first.
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	// ================ ROUTING ================
+
+	/**
+	 * Chooses the endpoint of a read: the better of two endpoints able to answer, chosen at random.
+	 */
+	Endpoint chooseRead() {
+		long now = System.nanoTime();
+		List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+		for (Endpoint endpoint : endpoints) {
+			if ((readFromPrimary || !endpoint.primary) && isAvailable(endpoint, now))
+				candidates.add(endpoint);
+		}
+
+		// With every endpoint ejected, the primary is still better than no answer
+		if (candidates.isEmpty())
+			return primary;
+		if (candidates.size() == 1)
+			return candidates.get(0);
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(candidates.size());
+		int second = random.nextInt(candidates.size() - 1);
+		if (second >= first)
+			second++;
+
+		Endpoint a = candidates.get(first);
+		Endpoint b = candidates.get(second);
+		return a.score() <= b.score() ? a : b;
+	}
+
+	private boolean isAvailable(Endpoint endpoint, long now) {
+		if (!endpoint.ejected)
+			return true;
+		// Without health checks an ejected endpoint is tried again after a while
+		return healthChecks == null && now - endpoint.ejectedUntil >= 0;
+	}
+
+	/**
+	 * Records the start of a request to an endpoint.
+	 */
+	void onStart(Endpoint endpoint) {
+		endpoint.inFlight.incrementAndGet();
+		endpoint.requests.increment();
+	}
+
+	/**
+	 * Records the end of a request to an endpoint.
+	 *
+	 * @param latencyNanos the time of the request
+	 * @param failed       true if there was no response or the server failed
+	 * @param cancelled    true if the request was cancelled, and so says nothing about the endpoint
+	 */
+	void onEnd(Endpoint endpoint, long latencyNanos, boolean failed, boolean cancelled) {
+		endpoint.inFlight.decrementAndGet();
+		if (cancelled)
+			return;
+
+		if (failed) {
+			endpoint.failures.increment();
+			if (endpoint.consecutiveFailures.incrementAndGet() >= failuresToEject)
+				eject(endpoint);
+		} else {
+			endpoint.consecutiveFailures.set(0);
+			record(endpoint, latencyNanos);
+			if (endpoint.ejected && healthChecks == null)
+				endpoint.ejected = false;
+		}
+	}
+
+	private static void record(Endpoint endpoint, long latencyNanos) {
+		// Lost updates between threads only make the average a bit less precise
+		endpoint.latencyNanos = endpoint.latencyNanos == 0
+				? latencyNanos
+				: endpoint.latencyNanos + EWMA_WEIGHT * (latencyNanos - endpoint.latencyNanos);
+	}
+
+	private void eject(Endpoint endpoint) {
+		endpoint.ejectedUntil = System.nanoTime() + ejectionTime.toNanos();
+		endpoint.ejected = true;
+	}
+
+	private void reinstate(Endpoint endpoint) {
+		endpoint.consecutiveFailures.set(0);
+		// The old latency says nothing about the recovered endpoint
+		endpoint.latencyNanos = 0;
+		endpoint.ejected = false;
+	}
+
+	// ================ HEALTH CHECKS ================
+
+	/**
+	 * Starts the health checks of the endpoints, if enabled.
+	 */
+	synchronized void start(PocketBase pocketBase) {
+		Duration interval = healthCheckInterval;
+		if (interval == null || healthChecks != null)
+			return;
+
+		healthChecks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pb-health-checks");
+			thread.setDaemon(true);
+			return thread;
+		});
+		healthChecks.scheduleWithFixedDelay(() -> checkAll(pocketBase, interval),
+				interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Checks all the endpoints at the same time, waiting at most the interval.
+	 */
+	private void checkAll(PocketBase pocketBase, Duration timeout) {
+		List<CompletableFuture<Void>> checks = new ArrayList<>();
+		for (Endpoint endpoint : endpoints) {
+			long start = System.nanoTime();
+			checks.add(pocketBase.healthAsync(endpoint.address, timeout).handle((ignored, error) -> {
+				if (error == null) {
+					if (endpoint.ejected)
+						reinstate(endpoint);
+					// An endpoint that lost every choice after a slow answer gets a chance again
+					record(endpoint, System.nanoTime() - start);
+				} else {
+					endpoint.failures.increment();
+					eject(endpoint);
+				}
+				return null;
+			}));
+		}
+		CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
+	}
+
+	/**
+	 * Stops the health checks.
+	 */
+	public synchronized void close() {
+		if (healthChecks != null) {
+			healthChecks.shutdownNow();
+			// The ejected endpoints are tried again after the ejection time, like without health checks
+			healthChecks = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PBEndpoints" + endpoints;
+	}
+}
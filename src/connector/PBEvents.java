@@ -0,0 +1,168 @@
+package connector;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of the connector, visible in JMC under the "PocketBase" category.<br><br>
+ * Events are created and committed only around the HTTP exchanges and the decoding of the responses.
+ * When the recorder is off, or the event is disabled, <code>shouldCommit()</code> is false and the JIT removes almost all of the cost.
+ * <pre>
+ * java -XX:StartFlightRecording:filename=pb.jfr ...
+ * </pre>
+ */
+final class PBEvents {
+
+	private PBEvents() {
+	}
+
+	static void commit(Send event, PBOperation operation, String collection, String method, long requestBytes, int statusCode) {
+		if (event.shouldCommit()) {
+			event.operation = operation.name();
+			event.collection = collection;
+			event.method = method;
+			event.requestBytes = requestBytes;
+			event.statusCode = statusCode;
+			event.commit();
+		}
+	}
+
+	static void commit(Receive event, PBOperation operation, String collection, long responseBytes, int statusCode) {
+		if (event.shouldCommit()) {
+			event.operation = operation.name();
+			event.collection = collection;
+			event.responseBytes = responseBytes;
+			event.statusCode = statusCode;
+			event.commit();
+		}
+	}
+
+	static void commit(Decode event, PBOperation operation, String collection, long responseBytes, int statusCode) {
+		if (event.shouldCommit()) {
+			event.operation = operation.name();
+			event.collection = collection;
+			event.responseBytes = responseBytes;
+			event.statusCode = statusCode;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records that a request is sent again.
+	 *
+	 * @param operation  the operation of the request
+	 * @param collection the collection name of the request
+	 * @param attempt    the number of the new attempt, starting from 2
+	 * @param reason     why the request is sent again
+	 */
+	static void retry(PBOperation operation, String collection, int attempt, String reason) {
+		Retry event = new Retry();
+		if (event.shouldCommit()) {
+			event.operation = operation.name();
+			event.collection = collection;
+			event.attempt = attempt;
+			event.reason = reason;
+			event.commit();
+		}
+	}
+
+	@Name("connector.Send")
+	@Label("Request Send")
+	@Description("From the send of the request to the headers of the response")
+	@Category({"PocketBase", "HTTP"})
+	@StackTrace(false)
+	static final class Send extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Collection")
+		String collection;
+
+		@Label("Method")
+		String method;
+
+		@Label("Request Size")
+		@DataAmount
+		long requestBytes;
+
+		@Label("Status Code")
+		int statusCode;
+	}
+
+	@Name("connector.Receive")
+	@Label("Response Receive")
+	@Description("From the headers to the last byte of the response body")
+	@Category({"PocketBase", "HTTP"})
+	@StackTrace(false)
+	static final class Receive extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Collection")
+		String collection;
+
+		@Label("Response Size")
+		@DataAmount
+		long responseBytes;
+
+		@Label("Status Code")
+		int statusCode;
+	}
+
+	@Name("connector.Decode")
+	@Label("JSON Decode")
+	@Description("Decoding of a response into records or an exception")
+	@Category({"PocketBase", "Decoding"})
+	@StackTrace(false)
+	static final class Decode extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Collection")
+		String collection;
+
+		@Label("Response Size")
+		@DataAmount
+		long responseBytes;
+
+		@Label("Status Code")
+		int statusCode;
+	}
+
+	@Name("connector.MultipartEncode")
+	@Label("Multipart Encode")
+	@Description("Encoding of a multipart/form-data body, while it is sent")
+	@Category({"PocketBase", "HTTP"})
+	@StackTrace(false)
+	static final class MultipartEncode extends Event {
+		@Label("Parts")
+		int parts;
+
+		@Label("Body Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("connector.Retry")
+	@Label("Retry")
+	@Description("A request sent again, after a failure or a slow answer")
+	@Category({"PocketBase", "HTTP"})
+	static final class Retry extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Collection")
+		String collection;
+
+		@Label("Attempt")
+		int attempt;
+
+		@Label("Reason")
+		String reason;
+	}
+}
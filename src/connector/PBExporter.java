@@ -0,0 +1,363 @@
+package connector;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a collection to a NDJSON or CSV file, streaming the pages to the file so the memory used does not depend
+ * on the size of the collection.<br><br>
+ * With a parallelism of 1 the records are read with a {@link PBScanner}, one page at a time.
+ * With a higher parallelism the pages are fetched by number, that many at a time, and written in order:
+ * at most <code>parallelism + 1</code> pages are kept in memory. The page numbers are not stable if the collection
+ * is changed during the export, so a record can be missed or written twice in that case.
+ * <pre>
+ * long exported = new PBExporter(pocketBase, "posts")
+ *         .format(PBExporter.Format.CSV)
+ *         .fields("id", "title", "views")
+ *         .parallelism(4)
+ *         .gzip(true)
+ *         .export(Path.of("posts.csv.gz"));
+ * </pre>
+ */
+public class PBExporter {
+	private static final String[] SYSTEM_FIELDS = {"id", "collectionId", "collectionName", "created", "updated"};
+
+	/**
+	 * The formats of the file.
+	 */
+	public enum Format {
+		/**
+		 * A JSON object for every line.
+		 */
+		NDJSON,
+		/**
+		 * Comma separated values with a header line, the lists are written as JSON arrays.
+		 */
+		CSV
+	}
+
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private String authToken = null;
+	private PBFilter filter = null;
+	private String[] fields = {};
+	private int perPage = 500;
+	private int parallelism = 1;
+	private boolean gzip = false;
+	private Format format = Format.NDJSON;
+
+	/**
+	 * Instantiates a new exporter of all the records and fields of a collection, to NDJSON.
+	 *
+	 * @param pocketBase     the connection used to read the records
+	 * @param collectionName the collection name
+	 */
+	public PBExporter(PocketBase pocketBase, String collectionName) {
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+	}
+
+	public PBExporter authToken(String authToken) {
+		this.authToken = authToken;
+		return this;
+	}
+
+	public PBExporter filter(PBFilter filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	public PBExporter filter(String filter) {
+		return filter(filter != null ? PBFilter.raw(filter) : null);
+	}
+
+	/**
+	 * Sets the fields exported, in order. By default all of them, and in a CSV the columns are the fields of the first record.
+	 */
+	public PBExporter fields(String... fields) {
+		this.fields = fields.clone();
+		return this;
+	}
+
+	public PBExporter perPage(int perPage) {
+		if (perPage <= 0)
+			throw new IllegalArgumentException("perPage must be positive: " + perPage);
+		this.perPage = perPage;
+		return this;
+	}
+
+	/**
+	 * Sets the number of pages fetched at the same time, default 1.
+	 */
+	public PBExporter parallelism(int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets if the file is compressed with gzip, default false.
+	 */
+	public PBExporter gzip(boolean gzip) {
+		this.gzip = gzip;
+		return this;
+	}
+
+	public PBExporter format(Format format) {
+		this.format = format;
+		return this;
+	}
+
+	/**
+	 * Exports the records to a file, replacing it if it exists.
+	 *
+	 * @param file the file to write
+	 * @return the number of records written
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable, or the file cannot be written
+	 */
+	public long export(Path file) throws IOException, PocketBaseException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			OutputStream output = Channels.newOutputStream(channel);
+			if (gzip)
+				output = new GZIPOutputStream(output, 1 << 16);
+
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16)) {
+				return export(writer);
+			}
+		}
+	}
+
+	/**
+	 * Exports the records to a writer, that is not closed.
+	 */
+	long export(Writer writer) throws IOException, PocketBaseException, InterruptedException {
+		RecordWriter recordWriter = format == Format.CSV ? new CsvWriter(writer) : new NdjsonWriter(writer);
+		recordWriter.start();
+		return parallelism > 1 ? exportPages(recordWriter) : exportScan(recordWriter);
+	}
+
+	private long exportScan(RecordWriter writer) throws IOException, PocketBaseException, InterruptedException {
+		// The scan needs the key fields, even if they are not exported
+		String[] scanFields = fields;
+		if (fields.length > 0) {
+			TreeSet<String> withKeys = new TreeSet<>(Arrays.asList(fields));
+			withKeys.add("id");
+			withKeys.add("created");
+			scanFields = withKeys.toArray(new String[0]);
+		}
+
+		PBScanner scanner = new PBScanner(pocketBase, collectionName, authToken, filter, perPage, "created", scanFields);
+		long written = 0;
+		try {
+			while (scanner.hasNext()) {
+				writer.write(scanner.next());
+				written++;
+			}
+		} catch (UncheckedPocketBaseException e) {
+			throw e.getCause();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return written;
+	}
+
+	private long exportPages(RecordWriter writer) throws IOException, PocketBaseException, InterruptedException {
+		PBQuery query = new PBQuery()
+				.perPage(perPage)
+				.sort("created,id");
+		if (filter != null)
+			query = query.filter(filter);
+		if (fields.length > 0)
+			query = query.fields(fields);
+
+		// The first page also gives the number of pages
+		PBCollection first = pocketBase.readAllRecords(collectionName, authToken, query.page(1));
+		int totalPages = Integer.parseInt(first.getTotalPages());
+		long written = write(writer, first.getItems());
+
+		PBQuery pageQuery = query.skipTotal(true);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "pb-export-" + collectionName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		ArrayDeque<Future<List<PBRecord>>> window = new ArrayDeque<>();
+		try {
+			int nextPage = 2;
+			while (nextPage <= totalPages || !window.isEmpty()) {
+				while (nextPage <= totalPages && window.size() < parallelism) {
+					int page = nextPage++;
+					window.add(executor.submit(() -> pocketBase.readAllRecords(collectionName, authToken, pageQuery.page(page)).getItems()));
+				}
+				written += write(writer, take(window.poll()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return written;
+	}
+
+	private static List<PBRecord> take(Future<List<PBRecord>> page) throws IOException, PocketBaseException, InterruptedException {
+		try {
+			return page.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof PocketBaseException)
+				throw (PocketBaseException) e.getCause();
+			if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static long write(RecordWriter writer, List<PBRecord> records) throws IOException {
+		for (PBRecord record : records) {
+			writer.write(record);
+		}
+		return records.size();
+	}
+
+	/**
+	 * Writes the records in a format.
+	 */
+	private interface RecordWriter {
+		default void start() throws IOException {
+		}
+
+		void write(PBRecord record) throws IOException;
+	}
+
+	private class NdjsonWriter implements RecordWriter {
+		private final Writer writer;
+
+		NdjsonWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(PBRecord record) throws IOException {
+			JsonObject json = pocketBase.buildJson(record);
+			if (fields.length > 0) {
+				JsonObject selected = new JsonObject();
+				for (String field : fields) {
+					if (json.has(field))
+						selected.add(field, json.get(field));
+				}
+				json = selected;
+			}
+			writer.write(json.toString());
+			writer.write('\n');
+		}
+	}
+
+	private class CsvWriter implements RecordWriter {
+		private final Writer writer;
+		private List<String> columns;
+
+		CsvWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void start() throws IOException {
+			// With the fields known the header is written even if there are no records
+			if (fields.length > 0) {
+				columns = Arrays.asList(fields);
+				writeLine(columns);
+			}
+		}
+
+		@Override
+		public void write(PBRecord record) throws IOException {
+			if (columns == null) {
+				columns = columnsOf(record);
+				writeLine(columns);
+			}
+
+			List<String> line = new ArrayList<>(columns.size());
+			for (String column : columns) {
+				line.add(valueOf(record, column));
+			}
+			writeLine(line);
+		}
+
+		private void writeLine(List<String> values) throws IOException {
+			for (int i = 0; i < values.size(); i++) {
+				if (i > 0)
+					writer.write(',');
+				writer.write(escape(values.get(i)));
+			}
+			writer.write("\r\n");
+		}
+	}
+
+	private static List<String> columnsOf(PBRecord record) {
+		List<String> columns = new ArrayList<>(Arrays.asList(SYSTEM_FIELDS));
+		columns.addAll(new TreeSet<>(record.getValues().keySet()));
+		return columns;
+	}
+
+	private static String valueOf(PBRecord record, String field) {
+		switch (field) {
+			case "id":
+				return record.getId();
+			case "collectionId":
+				return record.getCollectionId();
+			case "collectionName":
+				return record.getCollectionName();
+			case "created":
+				return record.getCreated();
+			case "updated":
+				return record.getUpdated();
+			default:
+				PBValue value = record.getValues().get(field);
+				if (value == null)
+					return null;
+				if (value.getList() != null) {
+					JsonArray array = new JsonArray();
+					value.getList().forEach(array::add);
+					return array.toString();
+				}
+				return value.getString();
+		}
+	}
+
+	/**
+	 * Quotes a CSV value if it contains a separator, a quote or a line break (RFC 4180).
+	 */
+	private static String escape(String value) {
+		if (value == null)
+			return "";
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\n' || c == '\r')
+				return '"' + value.replace("\"", "\"\"") + '"';
+		}
+		return value;
+	}
+}
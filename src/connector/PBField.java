@@ -0,0 +1,21 @@
+package connector;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field of a class, or a component of a record, to a field of PocketBase with another name.
+ * <pre>
+ * record Post(String id, String title, {@literal @}PBField("views_count") int views) {}
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface PBField {
+	/**
+	 * The name of the field in PocketBase.
+	 */
+	String value();
+}
@@ -0,0 +1,140 @@
+package connector;
+
+/**
+ * A typed filter expression for {@link PBQuery}, with the same syntax of the
+ * <a href="https://pocketbase.io/docs/api-rules-and-filters/">PocketBase filters</a>.<br><br>
+ * Strings are quoted and escaped, numbers and booleans are written as they are.
+ * <pre>{@code
+ * PBFilter filter = PBFilter.gt("views", 60).and(PBFilter.eq("title", "My \"Post\""));
+ * // views > 60 && title = "My \"Post\""
+ * }</pre>
+ */
+public final class PBFilter {
+	private final String expression;
+	// True if the expression is made of more filters joined by && or ||
+	private final boolean composite;
+
+	private PBFilter(String expression, boolean composite) {
+		this.expression = expression;
+		this.composite = composite;
+	}
+
+	/**
+	 * Uses a filter expression as it is, without escaping.
+	 */
+	public static PBFilter raw(String expression) {
+		return new PBFilter(expression, true);
+	}
+
+	/**
+	 * <code>field = value</code>
+	 */
+	public static PBFilter eq(String field, Object value) {
+		return compare(field, "=", value);
+	}
+
+	/**
+	 * <code>field != value</code>
+	 */
+	public static PBFilter neq(String field, Object value) {
+		return compare(field, "!=", value);
+	}
+
+	/**
+	 * <code>field &gt; value</code>
+	 */
+	public static PBFilter gt(String field, Object value) {
+		return compare(field, ">", value);
+	}
+
+	/**
+	 * <code>field &gt;= value</code>
+	 */
+	public static PBFilter gte(String field, Object value) {
+		return compare(field, ">=", value);
+	}
+
+	/**
+	 * <code>field &lt; value</code>
+	 */
+	public static PBFilter lt(String field, Object value) {
+		return compare(field, "<", value);
+	}
+
+	/**
+	 * <code>field &lt;= value</code>
+	 */
+	public static PBFilter lte(String field, Object value) {
+		return compare(field, "<=", value);
+	}
+
+	/**
+	 * <code>field ~ value</code>, true if the field contains the value.
+	 */
+	public static PBFilter like(String field, Object value) {
+		return compare(field, "~", value);
+	}
+
+	/**
+	 * <code>field !~ value</code>, true if the field does not contain the value.
+	 */
+	public static PBFilter notLike(String field, Object value) {
+		return compare(field, "!~", value);
+	}
+
+	/**
+	 * Joins this filter and another one with <code>&amp;&amp;</code>.
+	 */
+	public PBFilter and(PBFilter other) {
+		return join(other, " && ");
+	}
+
+	/**
+	 * Joins this filter and another one with <code>||</code>.
+	 */
+	public PBFilter or(PBFilter other) {
+		return join(other, " || ");
+	}
+
+	private static PBFilter compare(String field, String operator, Object value) {
+		return new PBFilter(field + " " + operator + " " + literal(value), false);
+	}
+
+	private PBFilter join(PBFilter other, String operator) {
+		if (other == null)
+			return this;
+		return new PBFilter(group() + operator + other.group(), true);
+	}
+
+	private String group() {
+		return composite ? "(" + expression + ")" : expression;
+	}
+
+	/**
+	 * Converts a value to a filter literal.
+	 *
+	 * @param value the value, can be null
+	 * @return the literal
+	 */
+	static String literal(Object value) {
+		if (value == null)
+			return "null";
+		if (value instanceof Number || value instanceof Boolean)
+			return value.toString();
+
+		String string = value.toString();
+		StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\');
+			builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+}
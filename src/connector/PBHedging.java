@@ -0,0 +1,314 @@
+package connector;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second attempt of a read that is slower than usual, and takes the first answer.<br><br>
+ * Set on a connection with {@link PocketBase#setHedging(PBHedging)}, it is used by <code>readAllRecords</code> and
+ * <code>readOneRecord</code>, that are safe to send twice. When the first attempt has not answered after a percentile
+ * of the recent latencies of the same operation, a second attempt is sent, the first answer is taken and the other
+ * attempt is cancelled. An error response is an answer, a failed connection is not.<br>
+ * The extra requests are limited by a budget: every read earns a fraction of a hedge, so with a budget of 0.05 at most
+ * about 5% of the reads are sent twice, however slow the server is. Nothing is hedged until enough latencies are known.
+ * <pre>
+ * PBHedging hedging = new PBHedging().percentile(95).budget(0.05);
+ * pocketBase.setHedging(hedging);
+ * ...
+ * System.out.println(hedging);
+ * </pre>
+ */
+public class PBHedging {
+	// The latencies needed before the first hedge
+	private static final int MIN_SAMPLES = 20;
+	// The budget is counted in millionths of a hedge
+	private static final long HEDGE = 1_000_000;
+
+	private volatile double percentile = 95;
+	private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+	private volatile long budget = HEDGE / 20;
+	private volatile long maxBurst = 10 * HEDGE;
+	private volatile int window = 1000;
+
+	private final Latencies[] latencies = new Latencies[PBOperation.values().length];
+	private final AtomicLong tokens = new AtomicLong();
+
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder overBudget = new LongAdder();
+
+	public PBHedging() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new Latencies();
+		}
+	}
+
+	/**
+	 * Sets the percentile of the recent latencies after which a second attempt is sent, default 95.
+	 */
+	public PBHedging percentile(double percentile) {
+		if (percentile <= 0 || percentile >= 100)
+			throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+		this.percentile = percentile;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum wait before a second attempt, default 1 millisecond.
+	 */
+	public PBHedging minDelay(Duration minDelay) {
+		this.minDelayNanos = minDelay.toNanos();
+		return this;
+	}
+
+	/**
+	 * Sets the fraction of the reads that can be sent twice, default 0.05.
+	 */
+	public PBHedging budget(double budget) {
+		if (budget <= 0 || budget > 1)
+			throw new IllegalArgumentException("budget must be between 0 and 1: " + budget);
+		this.budget = (long) (budget * HEDGE);
+		return this;
+	}
+
+	/**
+	 * Sets the number of hedges that can be sent one after the other when the budget was not used, default 10.
+	 */
+	public PBHedging maxBurst(int maxBurst) {
+		if (maxBurst <= 0)
+			throw new IllegalArgumentException("maxBurst must be positive: " + maxBurst);
+		this.maxBurst = maxBurst * HEDGE;
+		return this;
+	}
+
+	/**
+	 * Sets the number of latencies after which the oldest ones are forgotten, default 1000.
+	 * The percentile is computed on the latest full window of reads, or on the first reads until a window is full.
+	 */
+	public PBHedging window(int window) {
+		if (window < MIN_SAMPLES)
+			throw new IllegalArgumentException("window must be at least " + MIN_SAMPLES + ": " + window);
+		this.window = window;
+		return this;
+	}
+
+	/**
+	 * Gets the current wait before a second attempt of an operation.
+	 *
+	 * @return the wait, null if not enough latencies are known yet
+	 */
+	public Duration getDelay(PBOperation operation) {
+		long delay = delayNanos(operation);
+		return delay >= 0 ? Duration.ofNanos(delay) : null;
+	}
+
+	/**
+	 * Gets the number of reads.
+	 */
+	public long getReads() {
+		return reads.sum();
+	}
+
+	/**
+	 * Gets the number of second attempts sent.
+	 */
+	public long getHedges() {
+		return hedges.sum();
+	}
+
+	/**
+	 * Gets the number of second attempts that answered first.
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.sum();
+	}
+
+	/**
+	 * Gets the number of slow reads not sent twice because the budget was used.
+	 */
+	public long getOverBudget() {
+		return overBudget.sum();
+	}
+
+	/**
+	 * Sends a read, and a second attempt if it is slow.
+	 *
+	 * @param operation      the operation, for the latencies
+	 * @param collectionName the collection name, for the flight recorder
+	 * @param attempt        sends an attempt of the read
+	 * @return the first answer
+	 */
+	<T> T read(PBOperation operation, String collectionName, Supplier<CompletableFuture<T>> attempt) throws IOException, PocketBaseException, InterruptedException {
+		long start = System.nanoTime();
+		reads.increment();
+		earn();
+
+		CompletableFuture<T> primary = attempt.get();
+		CompletableFuture<T> hedge = null;
+		try {
+			long delay = delayNanos(operation);
+			if (delay < 0)
+				return await(primary);
+
+			try {
+				T value = primary.get(delay, TimeUnit.NANOSECONDS);
+				return value;
+			} catch (TimeoutException e) {
+				// Slower than usual
+			} catch (ExecutionException e) {
+				return await(primary);
+			}
+
+			if (!spend()) {
+				overBudget.increment();
+				return await(primary);
+			}
+
+			hedges.increment();
+			PBEvents.retry(operation, collectionName, 2, "hedge");
+			hedge = attempt.get();
+
+			CompletableFuture<T> winner = first(primary, hedge);
+			(winner == primary ? hedge : primary).cancel(true);
+			if (winner == hedge)
+				hedgeWins.increment();
+			return await(winner);
+		} catch (InterruptedException e) {
+			primary.cancel(true);
+			if (hedge != null)
+				hedge.cancel(true);
+			throw e;
+		} finally {
+			latencies[operation.ordinal()].record(System.nanoTime() - start, window);
+		}
+	}
+
+	/**
+	 * Waits for the first attempt that answered, or for the last one if both failed to connect.
+	 */
+	private static <T> CompletableFuture<T> first(CompletableFuture<T> primary, CompletableFuture<T> hedge) throws InterruptedException {
+		CompletableFuture<CompletableFuture<T>> winner = new CompletableFuture<>();
+		primary.whenComplete((value, error) -> {
+			if (!isConnectionError(error) || hedge.isDone())
+				winner.complete(primary);
+		});
+		hedge.whenComplete((value, error) -> {
+			if (!isConnectionError(error) || primary.isDone())
+				winner.complete(hedge);
+		});
+
+		try {
+			return winner.get();
+		} catch (ExecutionException e) {
+			// Never completed exceptionally
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isConnectionError(Throwable error) {
+		return error instanceof IOException
+				|| (error instanceof CompletionException && error.getCause() instanceof IOException);
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws IOException, PocketBaseException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof PocketBaseException)
+				throw (PocketBaseException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		} catch (CancellationException e) {
+			throw new IOException("The request was cancelled", e);
+		}
+	}
+
+	private long delayNanos(PBOperation operation) {
+		long percentileNanos = latencies[operation.ordinal()].percentile(percentile);
+		return percentileNanos >= 0 ? Math.max(minDelayNanos, percentileNanos) : -1;
+	}
+
+	private void earn() {
+		long limit = maxBurst;
+		long earned = budget;
+		tokens.getAndUpdate(current -> Math.min(limit, current + earned));
+	}
+
+	private boolean spend() {
+		long current;
+		do {
+			current = tokens.get();
+			if (current < HEDGE)
+				return false;
+		} while (!tokens.compareAndSet(current, current - HEDGE));
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "PBHedging{" +
+				"reads=" + getReads() +
+				", hedges=" + getHedges() +
+				", hedgeWins=" + getHedgeWins() +
+				", overBudget=" + getOverBudget() +
+				'}';
+	}
+
+	/**
+	 * The recent latencies of an operation: a histogram being filled and the previous full one.
+	 */
+	private static final class Latencies {
+		// A snapshot copies the whole histogram, so the percentile is computed again only after this time
+		private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+		private final AtomicReference<PBHistogram> current = new AtomicReference<>(new PBHistogram());
+		private final AtomicLong count = new AtomicLong();
+		private volatile PBHistogram previous = null;
+		private volatile long cachedPercentile = -1;
+		private volatile long cachedAt = System.nanoTime() - REFRESH_NANOS;
+
+		void record(long nanos, int window) {
+			PBHistogram histogram = current.get();
+			histogram.record(nanos);
+			if (count.incrementAndGet() % window == 0 && current.compareAndSet(histogram, new PBHistogram()))
+				previous = histogram;
+		}
+
+		/**
+		 * Gets a percentile of the recent latencies, -1 if too few are known.
+		 */
+		long percentile(double percentile) {
+			long now = System.nanoTime();
+			if (now - cachedAt >= REFRESH_NANOS) {
+				PBHistogram.Snapshot snapshot = snapshot();
+				cachedPercentile = snapshot != null ? snapshot.getPercentile(percentile) : -1;
+				cachedAt = now;
+			}
+			return cachedPercentile;
+		}
+
+		private PBHistogram.Snapshot snapshot() {
+			PBHistogram full = previous;
+			if (full != null)
+				return full.snapshot();
+
+			PBHistogram.Snapshot filling = current.get().snapshot();
+			return filling.getCount() >= MIN_SAMPLES ? filling : null;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package connector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values, like latencies in nanoseconds.<br><br>
+ * Values are counted in log-scaled buckets: every power of two is split in {@value #SUB_BUCKETS} linear buckets,
+ * so a percentile is at most about 6% above the real value, while recording is a single atomic increment
+ * on a fixed array, with no allocation.
+ */
+public class PBHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// Values below SUB_BUCKETS have a bucket each, then SUB_BUCKETS buckets for every power of two up to 2^62
+	private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a value, negative values are recorded as 0.
+	 *
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		counts.incrementAndGet(bucketOf(value));
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Takes a copy of the current counts. Values recorded while copying may or may not be included.
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		return new Snapshot(copy, count, sum.sum(), max.get());
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gets the highest value counted in a bucket.
+	 */
+	static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+	}
+
+	/**
+	 * An immutable copy of the counts of a histogram.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * Gets a percentile of the recorded values.
+		 *
+		 * @param percentile the percentile, from 0 to 100, e.g. 99.9
+		 * @return the value, or 0 if nothing was recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0)
+				return 0;
+
+			long rank = (long) Math.ceil(percentile / 100.0 * count);
+			if (rank < 1)
+				rank = 1;
+
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(highestValueOf(i), max);
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{" +
+					"count=" + count +
+					", mean=" + (long) getMean() +
+					", p50=" + getPercentile(50) +
+					", p99=" + getPercentile(99) +
+					", p999=" + getPercentile(99.9) +
+					", max=" + max +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps lock-free counters and latency histograms for every operation and collection.<br><br>
+ * Recording an exchange costs a map lookup and a few atomic increments, so it can stay enabled in production.
+ * <pre>{@code
+ * PBHistogramMetrics metrics = new PBHistogramMetrics();
+ * pb.setMetrics(metrics);
+ * ...
+ * metrics.snapshot().forEach(System.out::println);
+ * }</pre>
+ */
+public class PBHistogramMetrics implements PBMetrics {
+	// Exchanges without a collection, like the admin authentication
+	private static final String NO_COLLECTION = "";
+
+	// One map of collections for every operation, so no key has to be allocated to record
+	@SuppressWarnings("unchecked")
+	private final Map<String, Endpoint>[] endpoints = (Map<String, Endpoint>[]) new Map<?, ?>[PBOperation.values().length];
+
+	public PBHistogramMetrics() {
+		for (int i = 0; i < endpoints.length; i++) {
+			endpoints[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	@Override
+	public void onExchange(PBOperation operation, String collectionName, int statusCode,
+	                       long firstByteNanos, long totalNanos, long decodeNanos,
+	                       long requestBytes, long responseBytes) {
+		Map<String, Endpoint> collections = endpoints[operation.ordinal()];
+		String key = collectionName != null ? collectionName : NO_COLLECTION;
+
+		// get() first: computeIfAbsent may lock even when the key is present
+		Endpoint endpoint = collections.get(key);
+		if (endpoint == null)
+			endpoint = collections.computeIfAbsent(key, k -> new Endpoint());
+
+		endpoint.count.increment();
+		if (statusCode < 0 || statusCode >= 400)
+			endpoint.errors.increment();
+		if (requestBytes > 0)
+			endpoint.requestBytes.add(requestBytes);
+		endpoint.responseBytes.add(responseBytes);
+
+		endpoint.latency.record(totalNanos);
+		endpoint.firstByte.record(firstByteNanos);
+		endpoint.decode.record(decodeNanos);
+	}
+
+	/**
+	 * Takes a snapshot of every operation and collection seen so far.
+	 */
+	public List<Snapshot> snapshot() {
+		List<Snapshot> snapshots = new ArrayList<>();
+
+		for (PBOperation operation : PBOperation.values()) {
+			endpoints[operation.ordinal()].forEach((collectionName, endpoint) -> snapshots.add(new Snapshot(
+					operation,
+					collectionName.equals(NO_COLLECTION) ? null : collectionName,
+					endpoint.count.sum(),
+					endpoint.errors.sum(),
+					endpoint.requestBytes.sum(),
+					endpoint.responseBytes.sum(),
+					endpoint.latency.snapshot(),
+					endpoint.firstByte.snapshot(),
+					endpoint.decode.snapshot()
+			)));
+		}
+
+		return snapshots;
+	}
+
+	/**
+	 * The counters of an operation on a collection.
+	 */
+	private static class Endpoint {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder requestBytes = new LongAdder();
+		final LongAdder responseBytes = new LongAdder();
+		final PBHistogram latency = new PBHistogram();
+		final PBHistogram firstByte = new PBHistogram();
+		final PBHistogram decode = new PBHistogram();
+	}
+
+	/**
+	 * The counters and histograms of an operation on a collection at a point in time. Latencies are in nanoseconds.
+	 */
+	public static class Snapshot {
+		private final PBOperation operation;
+		private final String collectionName;
+		private final long count;
+		private final long errors;
+		private final long requestBytes;
+		private final long responseBytes;
+		private final PBHistogram.Snapshot latency;
+		private final PBHistogram.Snapshot firstByte;
+		private final PBHistogram.Snapshot decode;
+
+		private Snapshot(PBOperation operation, String collectionName, long count, long errors, long requestBytes, long responseBytes,
+		                 PBHistogram.Snapshot latency, PBHistogram.Snapshot firstByte, PBHistogram.Snapshot decode) {
+			this.operation = operation;
+			this.collectionName = collectionName;
+			this.count = count;
+			this.errors = errors;
+			this.requestBytes = requestBytes;
+			this.responseBytes = responseBytes;
+			this.latency = latency;
+			this.firstByte = firstByte;
+			this.decode = decode;
+		}
+
+		public PBOperation getOperation() {
+			return operation;
+		}
+
+		public String getCollectionName() {
+			return collectionName;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the number of exchanges that failed, with an error status code or without a response.
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		public long getRequestBytes() {
+			return requestBytes;
+		}
+
+		public long getResponseBytes() {
+			return responseBytes;
+		}
+
+		public PBHistogram.Snapshot getLatency() {
+			return latency;
+		}
+
+		public PBHistogram.Snapshot getFirstByte() {
+			return firstByte;
+		}
+
+		public PBHistogram.Snapshot getDecode() {
+			return decode;
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{" +
+					"operation=" + operation +
+					", collectionName='" + collectionName + '\'' +
+					", count=" + count +
+					", errors=" + errors +
+					", requestBytes=" + requestBytes +
+					", responseBytes=" + responseBytes +
+					", latency=" + latency +
+					", firstByte=" + firstByte +
+					", decode=" + decode +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,684 @@
+package connector;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports a NDJSON or CSV file into a collection, creating a record for every row.<br><br>
+ * The import is a pipeline of three stages connected by bounded queues, so a slow stage slows down the ones before it
+ * instead of filling the memory:
+ * <ol>
+ *     <li>the calling thread parses the rows of the file;</li>
+ *     <li>a thread converts them into record values;</li>
+ *     <li><code>concurrency</code> threads create the records, in batch requests when PocketBase supports them.</li>
+ * </ol>
+ * The rows refused by PocketBase, or that cannot be converted, are written to the reject file with the error
+ * and the import goes on. The requests that fail because PocketBase is unreachable or overloaded are sent again
+ * a few times, then the import stops. The rows without an id get one generated here, so a record created by a request
+ * whose response was lost is recognized when it is sent again, instead of being created twice.
+ * A batch larger than the <code>maxRequests</code> of the batch settings of PocketBase stops the import.
+ * <pre>
+ * PBImporter.Progress result = new PBImporter(pocketBase, "posts")
+ *         .format(PBExporter.Format.CSV)
+ *         .concurrency(8)
+ *         .rejectFile(Path.of("posts.rejected.ndjson"))
+ *         .progress(Duration.ofSeconds(5), progress -> System.out.println(progress))
+ *         .importFile(Path.of("posts.csv"));
+ * </pre>
+ */
+public class PBImporter {
+	private static final int MAX_ATTEMPTS = 5;
+	private static final long MIN_BACKOFF_MILLIS = 250;
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Receives the progress of an import, from a background thread.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void onProgress(Progress progress);
+	}
+
+	/**
+	 * The counters of an import.
+	 */
+	public static class Progress {
+		private final long read;
+		private final long written;
+		private final long rejected;
+		private final Duration elapsed;
+
+		Progress(long read, long written, long rejected, Duration elapsed) {
+			this.read = read;
+			this.written = written;
+			this.rejected = rejected;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Gets the number of rows parsed.
+		 */
+		public long getRead() {
+			return read;
+		}
+
+		/**
+		 * Gets the number of records created.
+		 */
+		public long getWritten() {
+			return written;
+		}
+
+		/**
+		 * Gets the number of rows written to the reject file.
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Gets the number of records created per second.
+		 */
+		public double getThroughput() {
+			return elapsed.isZero() ? 0 : written * 1_000_000_000.0 / elapsed.toNanos();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("read %d, written %d, rejected %d in %.1fs (%.1f records/s)",
+					read, written, rejected, elapsed.toMillis() / 1000.0, getThroughput());
+		}
+	}
+
+	/**
+	 * A row of the file, parsed and then converted.
+	 */
+	private static class Row {
+		static final Row END = new Row(-1, null, null);
+
+		final long number;
+		// The row as text, for the reject file
+		final String raw;
+		final Map<String, String> fields;
+		Map<String, PBValue> values;
+		// A request with the row may have reached PocketBase, so a conflict on its id can mean it was created
+		boolean maybeSent = false;
+
+		Row(long number, String raw, Map<String, String> fields) {
+			this.number = number;
+			this.raw = raw;
+			this.fields = fields;
+		}
+	}
+
+	/**
+	 * A request to PocketBase, sent again if it fails because PocketBase is unreachable or overloaded.
+	 */
+	@FunctionalInterface
+	private interface Request {
+		void send() throws IOException, PocketBaseException, InterruptedException;
+	}
+
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private String authToken = null;
+	private PBExporter.Format format = PBExporter.Format.NDJSON;
+	private boolean gzip = false;
+	private int concurrency = 4;
+	private int batchSize = 50;
+	private int queueSize = 1000;
+	private Path rejectFile = null;
+	private Duration progressInterval = null;
+	private ProgressListener progressListener = null;
+
+	// The state of the import running
+	private volatile boolean batchSupported;
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	private final LongAdder read = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private Writer rejects;
+	private long start;
+
+	/**
+	 * Instantiates a new importer of NDJSON files into a collection.
+	 *
+	 * @param pocketBase     the connection used to create the records
+	 * @param collectionName the collection name
+	 */
+	public PBImporter(PocketBase pocketBase, String collectionName) {
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+	}
+
+	public PBImporter authToken(String authToken) {
+		this.authToken = authToken;
+		return this;
+	}
+
+	/**
+	 * Sets the format of the file, default NDJSON. A CSV file must have a header line with the field names,
+	 * and the values like <code>["a","b"]</code> are imported as lists, like {@link PBExporter} writes them.
+	 */
+	public PBImporter format(PBExporter.Format format) {
+		this.format = format;
+		return this;
+	}
+
+	/**
+	 * Sets if the file is compressed with gzip, default false.
+	 */
+	public PBImporter gzip(boolean gzip) {
+		this.gzip = gzip;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads creating the records, default 4.
+	 */
+	public PBImporter concurrency(int concurrency) {
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of records in a batch request, default 50, 1 to never use batches.
+	 * It cannot be more than the <code>maxRequests</code> of the batch settings of PocketBase, 50 by default.
+	 */
+	public PBImporter batchSize(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Sets the capacity of the queues between the stages, default 1000 rows.
+	 */
+	public PBImporter queueSize(int queueSize) {
+		if (queueSize <= 0)
+			throw new IllegalArgumentException("queueSize must be positive: " + queueSize);
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * Sets the NDJSON file where the refused rows are written, with the error. Without it they are only counted.
+	 */
+	public PBImporter rejectFile(Path rejectFile) {
+		this.rejectFile = rejectFile;
+		return this;
+	}
+
+	/**
+	 * Sets a listener called periodically with the progress of the import.
+	 */
+	public PBImporter progress(Duration interval, ProgressListener listener) {
+		this.progressInterval = interval;
+		this.progressListener = listener;
+		return this;
+	}
+
+	/**
+	 * Imports a file. An importer runs one import at a time.
+	 *
+	 * @param file the file to read
+	 * @return the final counters
+	 * @throws PocketBaseException PocketBase refused the requests too many times, for example because it is overloaded
+	 * @throws IOException         the database is unreachable, or the files cannot be read or written
+	 */
+	public synchronized Progress importFile(Path file) throws IOException, PocketBaseException, InterruptedException {
+		InputStream input = Files.newInputStream(file);
+		if (gzip)
+			input = new GZIPInputStream(input, 1 << 16);
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16)) {
+			return importRows(reader);
+		}
+	}
+
+	private Progress importRows(BufferedReader reader) throws IOException, PocketBaseException, InterruptedException {
+		batchSupported = true;
+		failure.set(null);
+		read.reset();
+		written.reset();
+		rejected.reset();
+		start = System.nanoTime();
+		rejects = rejectFile != null ? Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8) : null;
+
+		BlockingQueue<Row> parsed = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<Row> converted = new ArrayBlockingQueue<>(queueSize);
+
+		ExecutorService stages = Executors.newFixedThreadPool(concurrency + 1, runnable -> {
+			Thread thread = new Thread(runnable, "pb-import-" + collectionName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		ScheduledExecutorService reporter = null;
+		if (progressListener != null) {
+			reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "pb-import-progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long interval = progressInterval.toMillis();
+			reporter.scheduleAtFixedRate(() -> progressListener.onProgress(progress()), interval, interval, TimeUnit.MILLISECONDS);
+		}
+
+		try {
+			stages.execute(() -> convert(parsed, converted));
+			for (int i = 0; i < concurrency; i++) {
+				stages.execute(() -> write(converted));
+			}
+
+			try {
+				if (format == PBExporter.Format.CSV)
+					parseCsv(reader, parsed);
+				else
+					parseNdjson(reader, parsed);
+				put(parsed, Row.END);
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+			}
+
+			stages.shutdown();
+			while (!stages.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				// The stages stop at the end of the rows, or at the first failure
+			}
+		} finally {
+			stages.shutdownNow();
+			if (reporter != null)
+				reporter.shutdownNow();
+			if (rejects != null)
+				rejects.close();
+		}
+
+		Exception error = failure.get();
+		if (error instanceof IOException)
+			throw (IOException) error;
+		if (error instanceof PocketBaseException)
+			throw (PocketBaseException) error;
+		if (error instanceof InterruptedException)
+			throw (InterruptedException) error;
+		if (error instanceof RuntimeException)
+			throw (RuntimeException) error;
+		if (error != null)
+			throw new IllegalStateException(error);
+
+		Progress result = progress();
+		if (progressListener != null)
+			progressListener.onProgress(result);
+		return result;
+	}
+
+	private Progress progress() {
+		return new Progress(read.sum(), written.sum(), rejected.sum(), Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	// ================ STAGE 1: PARSE ================
+
+	private void parseNdjson(BufferedReader reader, BlockingQueue<Row> parsed) throws IOException {
+		long number = 0;
+		String line;
+		while ((line = reader.readLine()) != null && failure.get() == null) {
+			number++;
+			if (line.isBlank())
+				continue;
+			read.increment();
+			put(parsed, new Row(number, line, null));
+		}
+	}
+
+	private void parseCsv(BufferedReader reader, BlockingQueue<Row> parsed) throws IOException {
+		List<String> header = readCsvRecord(reader, new StringBuilder());
+		if (header == null)
+			return;
+
+		long number = 0;
+		StringBuilder raw = new StringBuilder();
+		List<String> values;
+		while ((values = readCsvRecord(reader, raw)) != null && failure.get() == null) {
+			number++;
+			read.increment();
+
+			if (values.size() != header.size()) {
+				reject(new Row(number, raw.toString(), null), new PocketBaseException(400, "The row has " + values.size() + " values instead of " + header.size() + "."));
+				continue;
+			}
+
+			Map<String, String> fields = new HashMap<>();
+			for (int i = 0; i < header.size(); i++) {
+				fields.put(header.get(i), values.get(i));
+			}
+			put(parsed, new Row(number, raw.toString(), fields));
+		}
+	}
+
+	/**
+	 * Reads a CSV record (RFC 4180), whose quoted values can contain line breaks.
+	 *
+	 * @param raw filled with the text of the record
+	 * @return the values, or null at the end of the file
+	 */
+	private static List<String> readCsvRecord(BufferedReader reader, StringBuilder raw) throws IOException {
+		raw.setLength(0);
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+
+		int c;
+		while ((c = reader.read()) != -1) {
+			if (c != '\r' && c != '\n' || quoted)
+				raw.append((char) c);
+
+			if (quoted) {
+				if (c != '"') {
+					value.append((char) c);
+					continue;
+				}
+				reader.mark(1);
+				int next = reader.read();
+				if (next == '"') {
+					raw.append('"');
+					value.append('"');
+				} else {
+					quoted = false;
+					reader.reset();
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else if (c == '\n') {
+				if (values.isEmpty() && value.length() == 0)
+					continue;
+				values.add(value.toString());
+				return values;
+			} else if (c != '\r') {
+				value.append((char) c);
+			}
+		}
+
+		if (values.isEmpty() && value.length() == 0)
+			return null;
+		values.add(value.toString());
+		return values;
+	}
+
+	// ================ STAGE 2: CONVERT ================
+
+	private void convert(BlockingQueue<Row> parsed, BlockingQueue<Row> converted) {
+		try {
+			Row row;
+			while ((row = take(parsed)) != Row.END) {
+				try {
+					row.values = row.fields != null ? convertCsv(row) : convertJson(row.raw);
+				} catch (JsonParseException | IllegalStateException e) {
+					reject(row, new PocketBaseException(400, "The row is not a valid JSON object."));
+					continue;
+				}
+				PBValue id = row.values.get("id");
+				if (id == null || id.getString() == null || id.getString().isEmpty())
+					row.values.put("id", new PBValue().setString(PBWriteBehindQueue.newId()));
+				put(converted, row);
+			}
+
+			for (int i = 0; i < concurrency; i++) {
+				put(converted, Row.END);
+			}
+		} catch (InterruptedException | IOException | RuntimeException e) {
+			// The other stages stop at the failure
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private static Map<String, PBValue> convertCsv(Row row) {
+		Map<String, PBValue> values = new HashMap<>();
+		row.fields.forEach((field, text) -> values.put(field, csvValue(text)));
+		return values;
+	}
+
+	private static PBValue csvValue(String text) {
+		// The lists are written as JSON arrays by the exporter, any other text is a string
+		if (text.length() > 1 && text.charAt(0) == '[' && text.charAt(text.length() - 1) == ']') {
+			try {
+				return listOf(JsonParser.parseString(text).getAsJsonArray());
+			} catch (JsonParseException | IllegalStateException e) {
+				return new PBValue().setString(text);
+			}
+		}
+		return new PBValue().setString(text);
+	}
+
+	private static Map<String, PBValue> convertJson(String line) {
+		JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+
+		Map<String, PBValue> values = new HashMap<>();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+			JsonElement value = entry.getValue();
+			if (value.isJsonNull())
+				continue;
+			if (value.isJsonArray())
+				values.put(entry.getKey(), listOf(value.getAsJsonArray()));
+			else
+				values.put(entry.getKey(), new PBValue().setString(value.isJsonPrimitive() ? value.getAsString() : value.toString()));
+		}
+		return values;
+	}
+
+	private static PBValue listOf(JsonArray array) {
+		List<String> list = new ArrayList<>(array.size());
+		for (JsonElement element : array) {
+			list.add(element.isJsonPrimitive() ? element.getAsString() : element.toString());
+		}
+		return new PBValue().setList(list);
+	}
+
+	// ================ STAGE 3: WRITE ================
+
+	private void write(BlockingQueue<Row> converted) {
+		try {
+			List<Row> rows = new ArrayList<>(batchSize);
+			boolean end = false;
+			while (!end) {
+				Row first = take(converted);
+				if (first == Row.END)
+					return;
+				rows.add(first);
+
+				// Fills the batch with the rows already converted, without waiting for more
+				while (rows.size() < batchSize) {
+					Row row = converted.poll();
+					if (row == null)
+						break;
+					if (row == Row.END) {
+						end = true;
+						break;
+					}
+					rows.add(row);
+				}
+
+				writeRows(rows);
+				rows.clear();
+			}
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private void writeRows(List<Row> rows) throws IOException, PocketBaseException, InterruptedException {
+		if (rows.size() > 1 && batchSupported) {
+			List<PBBatchRequest> requests = new ArrayList<>(rows.size());
+			for (Row row : rows) {
+				requests.add(PBBatchRequest.create(collectionName, row.values));
+			}
+
+			try {
+				sendWithRetries(PBOperation.BATCH, rows, () -> pocketBase.batch(requests, authToken));
+				written.add(rows.size());
+				return;
+			} catch (PocketBaseException e) {
+				if (isRetryable(e))
+					throw e;
+				if (isTooManyRequests(e))
+					throw new PocketBaseException(400, "A batch of " + rows.size()
+							+ " requests is over the maxRequests of the batch settings of PocketBase, lower the batchSize of the import.");
+				if (e.getCode() == 403 || e.getCode() == 404)
+					batchSupported = false;
+				// Otherwise a row is refused and the batch is rolled back: the rows are sent one by one to find it
+			}
+		}
+
+		for (Row row : rows) {
+			try {
+				sendWithRetries(PBOperation.CREATE, List.of(row), () -> pocketBase.createRecord(collectionName, row.values, authToken));
+				written.increment();
+			} catch (PocketBaseException e) {
+				if (isRetryable(e))
+					throw e;
+				if (alreadyCreated(row, e))
+					written.increment();
+				else
+					reject(row, e);
+			}
+		}
+	}
+
+	/**
+	 * Sends a request, again if it fails because PocketBase is unreachable or overloaded. Since the failed request
+	 * may have reached PocketBase, its rows are marked, and a conflict on their id is checked by {@link #alreadyCreated(Row, PocketBaseException)}.
+	 */
+	private void sendWithRetries(PBOperation operation, List<Row> rows, Request request) throws IOException, PocketBaseException, InterruptedException {
+		long backoff = MIN_BACKOFF_MILLIS;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				request.send();
+				return;
+			} catch (IOException | PocketBaseException e) {
+				if (e instanceof PocketBaseException && !isRetryable((PocketBaseException) e) || attempt == MAX_ATTEMPTS)
+					throw e;
+				for (Row row : rows) {
+					row.maybeSent = true;
+				}
+				PBEvents.retry(operation, collectionName, attempt + 1, e.getClass().getSimpleName());
+				Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+				backoff *= 2;
+			}
+		}
+	}
+
+	private static boolean isRetryable(PocketBaseException exception) {
+		return exception.getCode() == 429 || exception.getCode() >= 500;
+	}
+
+	/**
+	 * Checks if a batch was refused for having more requests than the <code>maxRequests</code> of PocketBase,
+	 * that fails the validation of the length of the requests.
+	 */
+	private static boolean isTooManyRequests(PocketBaseException exception) {
+		return exception.getCode() == 400 && exception.getMessage().contains("Cause='requests'")
+				&& exception.getMessage().contains("validation_length");
+	}
+
+	/**
+	 * Checks if a row refused by a create was already created by a previous attempt whose response was lost.
+	 */
+	private boolean alreadyCreated(Row row, PocketBaseException exception) throws IOException, InterruptedException {
+		if (!row.maybeSent || exception.getCode() != 400)
+			return false;
+		try {
+			pocketBase.readOneRecord(collectionName, row.values.get("id").getString(), authToken);
+			return true;
+		} catch (PocketBaseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a refused row to the reject file, as a JSON object with the row number, the error and the row.
+	 */
+	private void reject(Row row, PocketBaseException exception) throws IOException {
+		rejected.increment();
+		if (rejects == null)
+			return;
+
+		JsonObject line = new JsonObject();
+		line.addProperty("row", row.number);
+		line.addProperty("code", exception.getCode());
+		line.addProperty("error", exception.getMessage().trim());
+		if (row.values != null)
+			line.add("values", pocketBase.gson.toJsonTree(row.values));
+		else
+			line.addProperty("raw", row.raw);
+
+		synchronized (rejects) {
+			rejects.write(line.toString());
+			rejects.write('\n');
+		}
+	}
+
+	// ================ QUEUES ================
+
+	/**
+	 * Puts a row in a queue, waiting for space, unless another stage failed.
+	 */
+	private void put(BlockingQueue<Row> queue, Row row) throws IOException {
+		try {
+			while (!queue.offer(row, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (failure.get() != null)
+					throw new IOException("Import stopped", failure.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Import interrupted");
+		}
+	}
+
+	/**
+	 * Takes a row from a queue, waiting for one, unless another stage failed.
+	 */
+	private Row take(BlockingQueue<Row> queue) throws InterruptedException {
+		Row row;
+		while ((row = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+			if (failure.get() != null)
+				return Row.END;
+		}
+		return row;
+	}
+}
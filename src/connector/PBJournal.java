@@ -0,0 +1,288 @@
+package connector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of record mutations, stored in memory-mapped segment files, used by {@link PBWriteBehindQueue}.<br><br>
+ * Every entry is written as <code>[length][crc32c][sequence, type, collection, id, body]</code>.
+ * A new segment file is all zeros, so a zero length marks the end of the entries; a torn write at the end
+ * of a crash has a wrong checksum and is dropped, together with anything after it.<br>
+ * The checkpoint file keeps the sequence up to which every entry has been flushed, and the segments
+ * that only contain flushed entries are deleted by {@link #compact(long)}.
+ */
+class PBJournal implements Closeable {
+	static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+	private static final int HEADER_SIZE = 8;
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String CHECKPOINT = "checkpoint";
+
+	/**
+	 * The kinds of mutation.
+	 */
+	enum Type {
+		CREATE, UPDATE, DELETE
+	}
+
+	/**
+	 * A mutation of a record.
+	 */
+	static class Entry {
+		final long sequence;
+		final Type type;
+		final String collectionName;
+		final String recordId;
+		// The JSON of the values, null for the deletes
+		final String body;
+
+		Entry(long sequence, Type type, String collectionName, String recordId, String body) {
+			this.sequence = sequence;
+			this.type = type;
+			this.collectionName = collectionName;
+			this.recordId = recordId;
+			this.body = body;
+		}
+
+		@Override
+		public String toString() {
+			return sequence + " " + type + " " + collectionName + "/" + recordId;
+		}
+	}
+
+	/**
+	 * A segment file, mapped in memory.
+	 */
+	private static class Segment {
+		final Path path;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		long lastSequence = 0;
+
+		Segment(Path path, int size) throws IOException {
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private final List<Segment> segments = new ArrayList<>();
+	private final List<Entry> recovered = new ArrayList<>();
+	private long lastSequence;
+	private long checkpoint;
+
+	/**
+	 * Opens a journal, reading the entries not flushed yet, see {@link #recovered()}.
+	 *
+	 * @param directory   the directory of the segments and the checkpoint, created if missing
+	 * @param segmentSize the size of a new segment file
+	 * @throws IOException the directory cannot be read or written
+	 */
+	PBJournal(Path directory, int segmentSize) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.checkpoint = readCheckpoint();
+		this.lastSequence = checkpoint;
+
+		List<Path> paths;
+		try (Stream<Path> files = Files.list(directory)) {
+			paths = files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+
+		for (Path path : paths) {
+			Segment segment = new Segment(path, segmentSize);
+			segments.add(segment);
+			recover(segment);
+		}
+
+		if (segments.isEmpty())
+			roll(segmentSize);
+	}
+
+	/**
+	 * Gets the entries found at the opening that were not flushed before the last close or crash.
+	 */
+	List<Entry> recovered() {
+		return recovered;
+	}
+
+	long getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Reads the entries of a segment and moves its position after the last valid one.
+	 */
+	private void recover(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		buffer.position(0);
+
+		while (buffer.remaining() >= HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+
+			if (length <= 0 || length > buffer.remaining() || checksum != checksum(buffer, buffer.position(), length)) {
+				// End of the entries, or a torn write
+				buffer.position(start);
+				break;
+			}
+
+			Entry entry = decode(buffer.slice(buffer.position(), length));
+			buffer.position(buffer.position() + length);
+
+			segment.lastSequence = entry.sequence;
+			lastSequence = Math.max(lastSequence, entry.sequence);
+			if (entry.sequence > checkpoint)
+				recovered.add(entry);
+		}
+	}
+
+	/**
+	 * Appends a mutation.
+	 *
+	 * @param force true to write the segment to the disk before returning, to survive a power loss
+	 * @return the entry appended, with its sequence
+	 * @throws IOException the segment cannot be written
+	 */
+	synchronized Entry append(Type type, String collectionName, String recordId, String body, boolean force) throws IOException {
+		Entry entry = new Entry(lastSequence + 1, type, collectionName, recordId, body);
+		byte[] payload = encode(entry);
+
+		Segment segment = segments.get(segments.size() - 1);
+		if (segment.buffer.remaining() < HEADER_SIZE + payload.length)
+			segment = roll(HEADER_SIZE + payload.length);
+
+		MappedByteBuffer buffer = segment.buffer;
+		int start = buffer.position();
+		buffer.position(start + HEADER_SIZE);
+		buffer.put(payload);
+		// The length is written last, so a crash in the middle leaves an invalid entry
+		buffer.putInt(start + 4, checksum(buffer, start + HEADER_SIZE, payload.length));
+		buffer.putInt(start, payload.length);
+
+		if (force)
+			buffer.force();
+
+		segment.lastSequence = entry.sequence;
+		lastSequence = entry.sequence;
+		return entry;
+	}
+
+	private Segment roll(int minimumSize) throws IOException {
+		Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, lastSequence + 1, SEGMENT_SUFFIX));
+		Segment segment = new Segment(path, Math.max(segmentSize, minimumSize));
+		segments.add(segment);
+		return segment;
+	}
+
+	/**
+	 * Saves the sequence up to which every entry has been flushed, replacing the checkpoint file atomically.
+	 */
+	synchronized void checkpoint(long sequence) throws IOException {
+		if (sequence <= checkpoint)
+			return;
+
+		// Whatever the checkpoint covers must be on the disk first
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+
+		ByteBuffer content = ByteBuffer.allocate(12);
+		content.putLong(sequence);
+		content.putInt(checksum(content, 0, 8));
+
+		Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+		Files.write(temporary, content.array());
+		Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		checkpoint = sequence;
+	}
+
+	private long readCheckpoint() throws IOException {
+		Path path = directory.resolve(CHECKPOINT);
+		if (!Files.exists(path))
+			return 0;
+
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+		if (content.remaining() != 12 || content.getInt(8) != checksum(content, 0, 8))
+			throw new IOException("Corrupted checkpoint " + path);
+		return content.getLong(0);
+	}
+
+	/**
+	 * Deletes the segments whose entries are all flushed, except the one being written.
+	 */
+	synchronized void compact(long flushedSequence) throws IOException {
+		while (segments.size() > 1 && segments.get(0).lastSequence <= flushedSequence) {
+			Segment segment = segments.remove(0);
+			segment.close();
+			Files.deleteIfExists(segment.path);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (Segment segment : segments) {
+			segment.buffer.force();
+			segment.close();
+		}
+		segments.clear();
+	}
+
+	private static byte[] encode(Entry entry) {
+		byte[] collection = entry.collectionName.getBytes(StandardCharsets.UTF_8);
+		byte[] id = entry.recordId.getBytes(StandardCharsets.UTF_8);
+		byte[] body = entry.body != null ? entry.body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+		ByteBuffer buffer = ByteBuffer.allocate(8 + 1 + 2 + collection.length + 2 + id.length + 4 + body.length);
+		buffer.putLong(entry.sequence);
+		buffer.put((byte) entry.type.ordinal());
+		buffer.putShort((short) collection.length).put(collection);
+		buffer.putShort((short) id.length).put(id);
+		buffer.putInt(entry.body != null ? body.length : -1).put(body);
+		return buffer.array();
+	}
+
+	private static Entry decode(ByteBuffer buffer) {
+		long sequence = buffer.getLong();
+		Type type = Type.values()[buffer.get()];
+		String collection = string(buffer, buffer.getShort());
+		String id = string(buffer, buffer.getShort());
+		int bodyLength = buffer.getInt();
+		String body = bodyLength >= 0 ? string(buffer, bodyLength) : null;
+		return new Entry(sequence, type, collection, id, body);
+	}
+
+	private static String string(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset, int length) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.slice(offset, length));
+		return (int) crc.getValue();
+	}
+}
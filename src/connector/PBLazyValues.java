@@ -0,0 +1,361 @@
+package connector;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The values of a record decoded only when they are read, see {@link PocketBase#setLazyRecords(boolean)}.<br><br>
+ * The map keeps the json string of the response and the position of every value in it: {@link #get(Object)} decodes
+ * only the value requested, and only the first time. The fields are shared by all the records of a page with the same
+ * fields in the same order, so a record only costs the positions of its values.<br>
+ * Any change to the map, or an iteration over it, decodes all the values and releases the response.
+ * Like a {@link HashMap} it is not safe to use from more threads without synchronization.
+ */
+final class PBLazyValues extends AbstractMap<String, PBValue> {
+
+	/**
+	 * The fields of a record, in order, and their positions.
+	 */
+	private static final class Shape {
+		final String[] names;
+		final Map<String, Integer> index;
+
+		Shape(String[] names) {
+			this.names = names;
+			this.index = new HashMap<>(names.length * 2);
+			for (int i = 0; i < names.length; i++) {
+				index.put(names[i], i);
+			}
+		}
+	}
+
+	private String json;
+	private Shape shape;
+	// The start and end of every value in the json
+	private int[] positions;
+	private PBValue[] decoded;
+	// All the values, after the first change or iteration
+	private Map<String, PBValue> values;
+
+	private PBLazyValues(String json, Shape shape, int[] positions) {
+		this.json = json;
+		this.shape = shape;
+		this.positions = positions;
+		this.decoded = new PBValue[shape.names.length];
+	}
+
+	@Override
+	public PBValue get(Object key) {
+		if (values != null)
+			return values.get(key);
+
+		Integer i = shape.index.get(key);
+		return i != null ? value(i) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return values != null ? values.containsKey(key) : shape.index.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return values != null ? values.size() : shape.names.length;
+	}
+
+	@Override
+	public PBValue put(String key, PBValue value) {
+		return decodeAll().put(key, value);
+	}
+
+	@Override
+	public PBValue remove(Object key) {
+		return decodeAll().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		decodeAll().clear();
+	}
+
+	@Override
+	public Set<Entry<String, PBValue>> entrySet() {
+		return decodeAll().entrySet();
+	}
+
+	/**
+	 * Runs an action on the values decoded so far, without decoding the others.
+	 */
+	void forEachDecoded(BiConsumer<String, PBValue> action) {
+		if (values != null) {
+			values.forEach(action);
+			return;
+		}
+		for (int i = 0; i < decoded.length; i++) {
+			if (decoded[i] != null)
+				action.accept(shape.names[i], decoded[i]);
+		}
+	}
+
+	private PBValue value(int i) {
+		PBValue value = decoded[i];
+		if (value == null) {
+			value = decode(json, positions[2 * i], positions[2 * i + 1]);
+			decoded[i] = value;
+		}
+		return value;
+	}
+
+	private Map<String, PBValue> decodeAll() {
+		if (values == null) {
+			Map<String, PBValue> all = new HashMap<>(shape.names.length * 2);
+			for (int i = 0; i < shape.names.length; i++) {
+				all.put(shape.names[i], value(i));
+			}
+			values = all;
+			json = null;
+			shape = null;
+			positions = null;
+			decoded = null;
+		}
+		return values;
+	}
+
+	/**
+	 * Decodes a value like {@link PocketBase#buildRecord(com.google.gson.JsonObject)}: arrays to lists of strings,
+	 * json objects kept as json, everything else to a string.
+	 */
+	private static PBValue decode(String json, int start, int end) {
+		switch (json.charAt(start)) {
+			case '[':
+				List<String> list = new ArrayList<>();
+				for (JsonElement element : JsonParser.parseString(json.substring(start, end)).getAsJsonArray()) {
+					list.add(PocketBase.asString(element));
+				}
+				return PBValue.loaded(list);
+			case '{':
+				return PBValue.loaded(JsonParser.parseString(json.substring(start, end)).toString());
+			default:
+				return PBValue.loaded(string(json, start, end));
+		}
+	}
+
+	/**
+	 * Decodes a string, a number or a boolean, null for a json null.
+	 */
+	static String string(String json, int start, int end) {
+		if (json.charAt(start) != '"')
+			return json.startsWith("null", start) && end - start == 4 ? null : json.substring(start, end);
+
+		// Most strings have nothing to unescape
+		for (int i = start + 1; i < end - 1; i++) {
+			if (json.charAt(i) == '\\')
+				return JsonParser.parseString(json.substring(start, end)).getAsString();
+		}
+		return json.substring(start + 1, end - 1);
+	}
+
+	// ================ INDEXING ================
+
+	/**
+	 * Collects the positions of the values of the records of a response, reusing the fields of the previous record.
+	 */
+	static final class Indexer {
+		private final String json;
+		private Shape last;
+		// Start and end of the name and of the value, for every field
+		private int[] fields = new int[64];
+		private int count = 0;
+
+		Indexer(String json) {
+			this.json = json;
+		}
+
+		void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+			if (4 * count + 4 > fields.length)
+				fields = Arrays.copyOf(fields, fields.length * 2);
+			fields[4 * count] = nameStart;
+			fields[4 * count + 1] = nameEnd;
+			fields[4 * count + 2] = valueStart;
+			fields[4 * count + 3] = valueEnd;
+			count++;
+		}
+
+		/**
+		 * Builds the values of the fields added, and starts a new record.
+		 */
+		PBLazyValues build() {
+			if (!sameShape()) {
+				String[] names = new String[count];
+				for (int i = 0; i < count; i++) {
+					names[i] = string(json, fields[4 * i] - 1, fields[4 * i + 1] + 1);
+				}
+				last = new Shape(names);
+			}
+
+			int[] positions = new int[2 * count];
+			for (int i = 0; i < count; i++) {
+				positions[2 * i] = fields[4 * i + 2];
+				positions[2 * i + 1] = fields[4 * i + 3];
+			}
+			count = 0;
+			return new PBLazyValues(json, last, positions);
+		}
+
+		private boolean sameShape() {
+			if (last == null || last.names.length != count)
+				return false;
+			for (int i = 0; i < count; i++) {
+				String name = last.names[i];
+				int length = fields[4 * i + 1] - fields[4 * i];
+				if (name.length() != length || !json.regionMatches(fields[4 * i], name, 0, length))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Walks a json string without decoding it, to find where the values start and end.
+	 */
+	static final class Cursor {
+		private final String json;
+		private int position = 0;
+		// The name read by the last call to name(), without the quotes
+		private int nameStart;
+		private int nameEnd;
+
+		Cursor(String json) {
+			this.json = json;
+		}
+
+		String json() {
+			return json;
+		}
+
+		int position() {
+			return position;
+		}
+
+		int nameStart() {
+			return nameStart;
+		}
+
+		int nameEnd() {
+			return nameEnd;
+		}
+
+		/**
+		 * Reads the opening bracket of an object or an array.
+		 */
+		void begin(char bracket) {
+			skipSpace();
+			expect(bracket);
+		}
+
+		/**
+		 * Moves to the next member of an object or element of an array.
+		 *
+		 * @return false if the closing bracket was reached, and read
+		 */
+		boolean hasNext() {
+			skipSpace();
+			char c = peek();
+			if (c == ',') {
+				position++;
+				skipSpace();
+				c = peek();
+			}
+			if (c == '}' || c == ']') {
+				position++;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Reads the name of a member, and the colon after it.
+		 */
+		void name() {
+			nameStart = position + 1;
+			skipString();
+			nameEnd = position - 1;
+			skipSpace();
+			expect(':');
+			skipSpace();
+		}
+
+		boolean nameIs(String name) {
+			return nameEnd - nameStart == name.length() && json.regionMatches(nameStart, name, 0, name.length());
+		}
+
+		char peek() {
+			if (position >= json.length())
+				throw new JsonParseException("Unexpected end of the response");
+			return json.charAt(position);
+		}
+
+		/**
+		 * Skips a value of any type, nested objects and arrays included.
+		 */
+		void skipValue() {
+			skipSpace();
+			char c = peek();
+			if (c == '"') {
+				skipString();
+			} else if (c == '{' || c == '[') {
+				int depth = 0;
+				do {
+					c = peek();
+					if (c == '"') {
+						skipString();
+						continue;
+					}
+					if (c == '{' || c == '[')
+						depth++;
+					else if (c == '}' || c == ']')
+						depth--;
+					position++;
+				} while (depth > 0);
+			} else {
+				while (position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+					position++;
+				}
+			}
+		}
+
+		private void skipString() {
+			expect('"');
+			while (true) {
+				char c = peek();
+				position++;
+				if (c == '"')
+					return;
+				if (c == '\\')
+					position++;
+			}
+		}
+
+		private void skipSpace() {
+			while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+				position++;
+			}
+		}
+
+		private void expect(char c) {
+			if (peek() != c)
+				throw new JsonParseException("Expected '" + c + "' at " + position + " of the response");
+			position++;
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package connector;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes records directly from the JSON of the responses into objects of a user class, and encodes them back.<br><br>
+ * The mapping of a class is built the first time it is used and kept for the whole life of the class:
+ * the constructor and the fields are turned into {@link MethodHandle}s, so decoding and encoding never use reflection.
+ * Classes need a constructor without arguments (it can be private) and are mapped field by field;
+ * records are mapped component by component and built with their canonical constructor.
+ * The names can be changed with {@link PBField}, the static and transient fields are ignored.<br>
+ * Strings, numbers, booleans, enums and lists of strings are read and written directly, any other type by Gson.
+ */
+final class PBMapper<T> {
+	// The fields set by PocketBase, never sent
+	private static final Set<String> SYSTEM_FIELDS = Set.of("collectionId", "collectionName", "created", "updated", "expand");
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final ClassValue<PBMapper<?>> MAPPERS = new ClassValue<>() {
+		@Override
+		protected PBMapper<?> computeValue(Class<?> type) {
+			return new PBMapper<>(type);
+		}
+	};
+
+	/**
+	 * How a value is read and written.
+	 */
+	private enum Kind {
+		STRING, INT, LONG, DOUBLE, FLOAT, BOOLEAN, STRING_LIST, ENUM, OTHER
+	}
+
+	/**
+	 * A mapped field of the class.
+	 */
+	private static final class Property {
+		final String name;
+		final Type type;
+		final Class<?> rawType;
+		final Kind kind;
+		// (Object) -> Object
+		final MethodHandle getter;
+		// (Object, Object) -> void, null for the records and the final fields
+		final MethodHandle setter;
+		// The position in the canonical constructor of a record
+		final int index;
+
+		Property(String name, Type type, Class<?> rawType, MethodHandle getter, MethodHandle setter, int index) {
+			this.name = name;
+			this.type = type;
+			this.rawType = rawType;
+			this.kind = kindOf(type, rawType);
+			this.getter = getter;
+			this.setter = setter;
+			this.index = index;
+		}
+	}
+
+	private final Class<T> type;
+	private final boolean record;
+	// () -> Object for the classes, (Object[]) -> Object for the records
+	private final MethodHandle constructor;
+	private final List<Property> properties = new ArrayList<>();
+	private final Map<String, Property> byName = new HashMap<>();
+	// The default values of the constructor arguments, zero for the primitives
+	private final Object[] defaults;
+
+	@SuppressWarnings("unchecked")
+	static <T> PBMapper<T> of(Class<T> type) {
+		return (PBMapper<T>) MAPPERS.get(type);
+	}
+
+	private PBMapper(Class<T> type) {
+		this.type = type;
+		this.record = type.isRecord();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		try {
+			if (record) {
+				RecordComponent[] components = type.getRecordComponents();
+				Class<?>[] parameterTypes = new Class<?>[components.length];
+				for (int i = 0; i < components.length; i++) {
+					RecordComponent component = components[i];
+					parameterTypes[i] = component.getType();
+					component.getAccessor().setAccessible(true);
+					MethodHandle getter = lookup.unreflect(component.getAccessor()).asType(GETTER);
+					add(new Property(nameOf(component.getAnnotation(PBField.class), component.getName()),
+							component.getGenericType(), component.getType(), getter, null, i));
+				}
+
+				Constructor<T> canonical = type.getDeclaredConstructor(parameterTypes);
+				canonical.setAccessible(true);
+				this.constructor = lookup.unreflectConstructor(canonical)
+						.asSpreader(Object[].class, components.length)
+						.asType(MethodType.methodType(Object.class, Object[].class));
+
+				this.defaults = new Object[components.length];
+				for (int i = 0; i < components.length; i++) {
+					defaults[i] = defaultOf(parameterTypes[i]);
+				}
+			} else {
+				Constructor<T> noArguments = type.getDeclaredConstructor();
+				noArguments.setAccessible(true);
+				this.constructor = lookup.unreflectConstructor(noArguments).asType(MethodType.methodType(Object.class));
+				this.defaults = null;
+
+				for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+					for (Field field : current.getDeclaredFields()) {
+						if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic())
+							continue;
+
+						field.setAccessible(true);
+						MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER);
+						MethodHandle setter = Modifier.isFinal(field.getModifiers()) ? null : lookup.unreflectSetter(field).asType(SETTER);
+						add(new Property(nameOf(field.getAnnotation(PBField.class), field.getName()),
+								field.getGenericType(), field.getType(), getter, setter, -1));
+					}
+				}
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName() + " needs a constructor without arguments to be mapped", e);
+		} catch (IllegalAccessException | RuntimeException e) {
+			throw new IllegalArgumentException(type.getName() + " cannot be mapped: " + e.getMessage(), e);
+		}
+	}
+
+	private void add(Property property) {
+		// A field of a subclass hides the one with the same name of the superclass
+		if (byName.putIfAbsent(property.name, property) == null)
+			properties.add(property);
+	}
+
+	private static String nameOf(PBField annotation, String name) {
+		return annotation != null ? annotation.value() : name;
+	}
+
+	private static Object defaultOf(Class<?> type) {
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		if (type == double.class)
+			return 0.0;
+		if (type == float.class)
+			return 0.0f;
+		if (type == boolean.class)
+			return false;
+		if (type == short.class)
+			return (short) 0;
+		if (type == byte.class)
+			return (byte) 0;
+		if (type == char.class)
+			return '\0';
+		return null;
+	}
+
+	private static Kind kindOf(Type type, Class<?> rawType) {
+		if (rawType == String.class)
+			return Kind.STRING;
+		if (rawType == int.class || rawType == Integer.class)
+			return Kind.INT;
+		if (rawType == long.class || rawType == Long.class)
+			return Kind.LONG;
+		if (rawType == double.class || rawType == Double.class)
+			return Kind.DOUBLE;
+		if (rawType == float.class || rawType == Float.class)
+			return Kind.FLOAT;
+		if (rawType == boolean.class || rawType == Boolean.class)
+			return Kind.BOOLEAN;
+		if (rawType.isEnum())
+			return Kind.ENUM;
+		if (rawType == List.class && type instanceof ParameterizedType
+				&& ((ParameterizedType) type).getActualTypeArguments()[0] == String.class)
+			return Kind.STRING_LIST;
+		return Kind.OTHER;
+	}
+
+	// ================ DECODING ================
+
+	/**
+	 * Decodes a record from the JSON of a response.
+	 */
+	T read(String json, Gson gson) {
+		try {
+			return read(new JsonReader(new StringReader(json)), gson);
+		} catch (IOException e) {
+			// Not possible reading a string
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decodes the record at the position of the reader, skipping the fields that are not mapped.
+	 */
+	T read(JsonReader in, Gson gson) throws IOException {
+		Object[] arguments = record ? defaults.clone() : null;
+		Object instance = record ? null : newInstance();
+
+		in.beginObject();
+		while (in.hasNext()) {
+			Property property = byName.get(in.nextName());
+			if (property == null || (!record && property.setter == null)) {
+				in.skipValue();
+				continue;
+			}
+
+			Object value = readValue(in, property, gson);
+			if (value == null && property.rawType.isPrimitive())
+				continue;
+
+			if (record) {
+				arguments[property.index] = value;
+			} else {
+				try {
+					property.setter.invokeExact(instance, value);
+				} catch (Throwable e) {
+					throw new IllegalStateException("Cannot set " + type.getSimpleName() + "." + property.name, e);
+				}
+			}
+		}
+		in.endObject();
+
+		try {
+			return type.cast(record ? (Object) constructor.invokeExact(arguments) : instance);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot create " + type.getSimpleName(), e);
+		}
+	}
+
+	private Object newInstance() {
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot create " + type.getSimpleName(), e);
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Object readValue(JsonReader in, Property property, Gson gson) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		switch (property.kind) {
+			case STRING:
+				return readString(in);
+			case INT:
+				return in.nextInt();
+			case LONG:
+				return in.nextLong();
+			case DOUBLE:
+				return in.nextDouble();
+			case FLOAT:
+				return (float) in.nextDouble();
+			case BOOLEAN:
+				return in.peek() == JsonToken.BOOLEAN ? in.nextBoolean() : Boolean.parseBoolean(in.nextString());
+			case ENUM:
+				String name = in.nextString();
+				return name.isEmpty() ? null : Enum.valueOf((Class<? extends Enum>) property.rawType, name);
+			case STRING_LIST:
+				List<String> list = new ArrayList<>();
+				// A single select or relation is a string
+				if (in.peek() != JsonToken.BEGIN_ARRAY) {
+					String single = readString(in);
+					if (!single.isEmpty())
+						list.add(single);
+					return list;
+				}
+				in.beginArray();
+				while (in.hasNext()) {
+					list.add(readString(in));
+				}
+				in.endArray();
+				return list;
+			default:
+				return gson.fromJson(in, property.type);
+		}
+	}
+
+	private static String readString(JsonReader in) throws IOException {
+		switch (in.peek()) {
+			case BOOLEAN:
+				return String.valueOf(in.nextBoolean());
+			case BEGIN_OBJECT:
+			case BEGIN_ARRAY:
+				return JsonParser.parseReader(in).toString();
+			default:
+				return in.nextString();
+		}
+	}
+
+	// ================ ENCODING ================
+
+	/**
+	 * Encodes an object into the JSON body of a create or update request. The null values and the system fields are not written.
+	 *
+	 * @param includeId true to write the id, for a create request
+	 */
+	String write(T object, Gson gson, boolean includeId) {
+		StringWriter json = new StringWriter();
+		try (JsonWriter out = new JsonWriter(json)) {
+			out.beginObject();
+			for (Property property : properties) {
+				if (SYSTEM_FIELDS.contains(property.name) || (!includeId && property.name.equals("id")))
+					continue;
+
+				Object value;
+				try {
+					value = property.getter.invokeExact((Object) object);
+				} catch (Throwable e) {
+					throw new IllegalStateException("Cannot get " + type.getSimpleName() + "." + property.name, e);
+				}
+				if (value == null)
+					continue;
+
+				out.name(property.name);
+				writeValue(out, property, value, gson);
+			}
+			out.endObject();
+		} catch (IOException e) {
+			// Not possible writing a string
+			throw new IllegalStateException(e);
+		}
+		return json.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void writeValue(JsonWriter out, Property property, Object value, Gson gson) throws IOException {
+		switch (property.kind) {
+			case STRING:
+				out.value((String) value);
+				break;
+			case INT:
+			case LONG:
+			case DOUBLE:
+			case FLOAT:
+				out.value((Number) value);
+				break;
+			case BOOLEAN:
+				out.value((Boolean) value);
+				break;
+			case ENUM:
+				out.value(((Enum<?>) value).name());
+				break;
+			case STRING_LIST:
+				out.beginArray();
+				for (String element : (List<String>) value) {
+					out.value(element);
+				}
+				out.endArray();
+				break;
+			default:
+				gson.toJson(value, property.type, out);
+		}
+	}
+}
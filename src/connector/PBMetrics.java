@@ -0,0 +1,32 @@
+package connector;
+
+/**
+ * Receives a measurement for every HTTP exchange sent by {@link PocketBase}.<br><br>
+ * The method is called on the thread that sent the request, after the response has been decoded,
+ * so implementations must be thread safe and fast. See {@link PBHistogramMetrics} for a ready-made one.
+ */
+@FunctionalInterface
+public interface PBMetrics {
+
+	/**
+	 * Does nothing, used when no metrics are set.
+	 */
+	PBMetrics NONE = (operation, collectionName, statusCode, firstByteNanos, totalNanos, decodeNanos, requestBytes, responseBytes) -> {
+	};
+
+	/**
+	 * Records an exchange.
+	 *
+	 * @param operation      the operation of the exchange
+	 * @param collectionName the collection name, null if the exchange is not bound to a collection
+	 * @param statusCode     the HTTP status code, -1 if no response was received
+	 * @param firstByteNanos the nanoseconds from the send to the headers of the response
+	 * @param totalNanos     the nanoseconds from the send to the end of the decoding
+	 * @param decodeNanos    the nanoseconds spent decoding the response
+	 * @param requestBytes   the bytes of the request body, -1 if unknown
+	 * @param responseBytes  the bytes of the response body
+	 */
+	void onExchange(PBOperation operation, String collectionName, int statusCode,
+	                long firstByteNanos, long totalNanos, long decodeNanos,
+	                long requestBytes, long responseBytes);
+}
@@ -0,0 +1,18 @@
+package connector;
+
+/**
+ * The kinds of exchange that {@link PocketBase} sends to the server, used by {@link PBMetrics}.
+ */
+public enum PBOperation {
+	CREATE,
+	READ_ALL,
+	READ_ONE,
+	UPDATE,
+	DELETE,
+	AUTH,
+	UPLOAD,
+	DOWNLOAD,
+	BATCH,
+	HEALTH,
+	SCHEMA
+}
@@ -0,0 +1,153 @@
+package connector;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes all the records of a collection to {@link Flow.Subscriber}s, fetching the pages only when they are requested.<br><br>
+ * Every subscriber gets its own scan, with the same keyset pagination of {@link PBScanner}. A page is fetched,
+ * without blocking, only when the subscriber requested more records than the ones already received, so at most one
+ * page is buffered for a slow subscriber. Cancelling the subscription aborts the request of the page in flight.
+ * <pre>
+ * pocketBase.publishRecords("posts", null, "views > 60", 200).subscribe(subscriber);
+ * </pre>
+ */
+public class PBPublisher implements Flow.Publisher<PBRecord> {
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private final String authToken;
+	private final String filter;
+	private final int perPage;
+
+	/**
+	 * Instantiates a new publisher. Prefer {@link PocketBase#publishRecords(String, String, String, int)}.
+	 *
+	 * @param pocketBase     the connection used to fetch the pages
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param filter         filter by field, leave to null if not needed
+	 * @param perPage        number of records fetched with every request
+	 */
+	public PBPublisher(PocketBase pocketBase, String collectionName, String authToken, String filter, int perPage) {
+		if (perPage <= 0)
+			throw new IllegalArgumentException("perPage must be positive: " + perPage);
+
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+		this.authToken = authToken;
+		this.filter = filter;
+		this.perPage = perPage;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super PBRecord> subscriber) {
+		Subscription subscription = new Subscription(subscriber,
+				new PBScanner(pocketBase, collectionName, authToken, filter, perPage));
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * The scan of a subscriber. The signals to the subscriber are sent by one thread at a time, in {@link #drain()}.
+	 */
+	private class Subscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super PBRecord> subscriber;
+		private final PBScanner scanner;
+		// The deadline and the cancellation of the thread that subscribed
+		private final PBCall call = PBCall.current();
+
+		private final AtomicLong demand = new AtomicLong();
+		// The number of calls to drain waiting, only the first one runs the loop
+		private final AtomicInteger work = new AtomicInteger();
+		private volatile CompletableFuture<PBCollection> inFlight;
+		// The page received and not yet given to the scanner, that is only used inside drain
+		private volatile PBCollection received;
+		private volatile Throwable error;
+		private volatile boolean cancelled = false;
+		private boolean done = false;
+
+		Subscription(Flow.Subscriber<? super PBRecord> subscriber, PBScanner scanner) {
+			this.subscriber = subscriber;
+			this.scanner = scanner;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("The number of records requested must be positive: " + n);
+			} else {
+				demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			CompletableFuture<PBCollection> page = inFlight;
+			if (page != null)
+				page.cancel(true);
+		}
+
+		private void drain() {
+			if (work.getAndIncrement() != 0)
+				return;
+
+			do {
+				if (cancelled || done)
+					continue;
+
+				PBCollection page = received;
+				if (page != null) {
+					received = null;
+					inFlight = null;
+					scanner.accept(page);
+				}
+
+				if (error != null) {
+					done = true;
+					cancel();
+					subscriber.onError(error);
+					continue;
+				}
+
+				while (demand.get() > 0 && scanner.hasBuffered() && !cancelled) {
+					demand.decrementAndGet();
+					subscriber.onNext(scanner.next());
+				}
+
+				if (scanner.hasBuffered() || cancelled)
+					continue;
+
+				if (scanner.isLastPage()) {
+					done = true;
+					subscriber.onComplete();
+				} else if (demand.get() > 0 && inFlight == null) {
+					fetch();
+				}
+			} while (work.decrementAndGet() != 0);
+		}
+
+		private void fetch() {
+			CompletableFuture<PBCollection> page;
+			PBCall previous = PBCall.swap(call);
+			try {
+				page = pocketBase.readAllRecordsAsync(collectionName, authToken, scanner.nextPageQuery());
+			} finally {
+				PBCall.swap(previous);
+			}
+			inFlight = page;
+			page.whenComplete((collection, failure) -> {
+				if (failure != null) {
+					if (!cancelled)
+						error = failure;
+				} else {
+					received = collection;
+				}
+				drain();
+			});
+		}
+	}
+}
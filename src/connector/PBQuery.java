@@ -1,13 +1,44 @@
 package connector;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The query parameters of a list request.<br><br>
+ * A query is immutable: every fluent method returns a new query with the parameter changed,
+ * so a query can be built once and shared between threads and requests.
+ * Each parameter is URL encoded only once, when it is set, and the final query string is cached.
+ * <pre>{@code
+ * PBQuery query = new PBQuery()
+ *         .perPage(50)
+ *         .sort("-created")
+ *         .filter(PBFilter.gt("views", 60).and(PBFilter.eq("title", "My Post")))
+ *         .fields("id", "title")
+ *         .skipTotal(true);
+ * }</pre>
+ */
 public class PBQuery {
 
 	private final int page;
 	private final int perPage;
 	private final int skipTotal;
+
+	// The parameters are stored already encoded, e.g. "sort=%2Dcreated"
 	private final String sort;
 	private final String filter;
 	private final String expand;
+	private final String fields;
+
+	// Lazily built query string, see toString()
+	private String query;
+
+	/**
+	 * Sets page to 1 and perPage to 30, the defaults of PocketBase.
+	 * Use the fluent methods to set the other parameters.
+	 */
+	public PBQuery() {
+		this(1, 30, 0, null, null, null, null);
+	}
 
 	/**
 	 * Sets page to 1, perPage to 500 and skipTotal to 1.
@@ -18,24 +49,7 @@ public class PBQuery {
 	 * @param expand expand field, leave to null if not needed
 	 */
 	public PBQuery(String sort, String filter, String expand) {
-		this.page = 1;
-		this.perPage = 500;
-		this.skipTotal = 1;
-
-		if (sort != null)
-			this.sort = "sort=" +  sort;
-		else
-			this.sort = null;
-
-		if (filter != null)
-			this.filter = "filter=" + filter;
-		else
-			this.filter = null;
-
-		if (expand != null)
-			this.expand = "expand=" + expand;
-		else
-			this.expand = null;
+		this(1, 500, 1, sort, filter, expand);
 	}
 
 	/**
@@ -44,51 +58,163 @@ public class PBQuery {
 	 * @param perPage number of items per page
 	 */
 	public PBQuery(int page, int perPage) {
-		this.page = page;
-		this.perPage = perPage;
-
-		this.skipTotal = 0;
-
-		this.sort = null;
-		this.filter = null;
-		this.expand = null;
+		this(page, perPage, 0, null, null, null, null);
 	}
 
 	/**
 	 * Sets everything.
 	 * Instead of using <code>'</code> use <code>"</code> for strings.
-	 * @param page     page number
-	 * @param perPage  number of items per page
-	 * @param sort     sort by field
-	 * @param filter   filter by field
-	 * @param expand   expand field
+	 * @param page      page number
+	 * @param perPage   number of items per page
+	 * @param skipTotal 1 to skip the count of the total items, 0 otherwise
+	 * @param sort      sort by field, leave to null if not needed
+	 * @param filter    filter by field, leave to null if not needed
+	 * @param expand    expand field, leave to null if not needed
 	 */
 	public PBQuery(int page, int perPage, int skipTotal, String sort, String filter, String expand) {
+		this(page, perPage, skipTotal, encode("sort", sort), encode("filter", filter), encode("expand", expand), null);
+	}
+
+	/**
+	 * Used by the fluent methods, the string parameters must be already encoded.
+	 */
+	private PBQuery(int page, int perPage, int skipTotal, String sort, String filter, String expand, String fields) {
 		this.page = page;
 		this.perPage = perPage;
-
 		this.skipTotal = skipTotal;
+		this.sort = sort;
+		this.filter = filter;
+		this.expand = expand;
+		this.fields = fields;
+	}
+
+	// ================  FLUENT METHODS ================
+
+	/**
+	 * Returns a copy of this query with a different page number.
+	 */
+	public PBQuery page(int page) {
+		return new PBQuery(page, perPage, skipTotal, sort, filter, expand, fields);
+	}
 
-		this.sort = "sort=" +  sort;
-		this.filter = "filter=" + filter;
-		this.expand = "expand=" + expand;
+	/**
+	 * Returns a copy of this query with a different number of items per page.
+	 */
+	public PBQuery perPage(int perPage) {
+		return new PBQuery(page, perPage, skipTotal, sort, filter, expand, fields);
 	}
 
+	/**
+	 * Returns a copy of this query that skips (or not) the count of the total items.
+	 * When skipped, the total items and pages of the response are -1, but the request is faster.
+	 */
+	public PBQuery skipTotal(boolean skipTotal) {
+		return new PBQuery(page, perPage, skipTotal ? 1 : 0, sort, filter, expand, fields);
+	}
+
+	/**
+	 * Returns a copy of this query with a different sort, e.g. <code>-created,id</code>.
+	 *
+	 * @param sort sort by field, null to remove it
+	 */
+	public PBQuery sort(String sort) {
+		return new PBQuery(page, perPage, skipTotal, encode("sort", sort), filter, expand, fields);
+	}
+
+	/**
+	 * Returns a copy of this query with a different filter.
+	 * Instead of using <code>'</code> use <code>"</code> for strings.
+	 *
+	 * @param filter filter by field, null to remove it
+	 */
+	public PBQuery filter(String filter) {
+		return new PBQuery(page, perPage, skipTotal, sort, encode("filter", filter), expand, fields);
+	}
+
+	/**
+	 * Returns a copy of this query with a different filter.
+	 *
+	 * @param filter filter by field, null to remove it
+	 */
+	public PBQuery filter(PBFilter filter) {
+		return filter(filter != null ? filter.toString() : null);
+	}
+
+	/**
+	 * Returns a copy of this query with different relations to expand.
+	 *
+	 * @param expand expand field, null to remove it
+	 */
+	public PBQuery expand(String expand) {
+		return new PBQuery(page, perPage, skipTotal, sort, filter, encode("expand", expand), fields);
+	}
+
+	/**
+	 * Returns a copy of this query that only downloads some fields of the records.
+	 * Without fields all of them are returned.
+	 *
+	 * @param fields the names of the fields to return, e.g. <code>id</code>, <code>title</code>
+	 */
+	public PBQuery fields(String... fields) {
+		String joined = fields == null || fields.length == 0 ? null : String.join(",", fields);
+		return new PBQuery(page, perPage, skipTotal, sort, filter, expand, encode("fields", joined));
+	}
+
+	// ================  GETTERS ================
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getPerPage() {
+		return perPage;
+	}
+
+	public boolean isSkipTotal() {
+		return skipTotal == 1;
+	}
+
+	/**
+	 * Encodes a query parameter to be used in a URL.
+	 *
+	 * @param name  the name of the parameter
+	 * @param value the value of the parameter
+	 * @return <code>name=value</code> with the value encoded, or null if the value is null
+	 */
+	private static String encode(String name, String value) {
+		if (value == null)
+			return null;
+		return name + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+	}
+
+	/**
+	 * Returns the encoded query string, ready to be appended to a URL after the <code>?</code>.
+	 */
 	@Override
 	public String toString() {
-		StringBuilder result = new StringBuilder();
-
-		result.append("page=").append(page)
-				.append("&perPage=").append(perPage);
-		if (skipTotal == 1)
-			result.append("&skipTotal=").append(skipTotal);
-		if (sort != null)
-			result.append("&").append(sort);
-		if (filter != null)
-			result.append("&").append(filter);
-		if (expand != null)
-			result.append("&").append(expand);
-
-		return result.toString();
+		String result = query;
+
+		if (result == null) {
+			StringBuilder builder = new StringBuilder(64);
+
+			builder.append("page=").append(page)
+					.append("&perPage=").append(perPage);
+			if (skipTotal == 1)
+				builder.append("&skipTotal=").append(skipTotal);
+			if (sort != null)
+				builder.append("&").append(sort);
+			if (filter != null)
+				builder.append("&").append(filter);
+			if (expand != null)
+				builder.append("&").append(expand);
+			if (fields != null)
+				builder.append("&").append(fields);
+
+			// Benign race: at worst two threads build the same string
+			result = builder.toString();
+			query = result;
+		}
+
+		return result;
 	}
 }
@@ -0,0 +1,243 @@
+package connector;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the responses of the list requests for a time, so the same page asked again is not read from the server.<br><br>
+ * Set on a connection with {@link PocketBase#setQueryCache(PBQueryCache)}, a page is cached by collection, query
+ * string and authorization token, so users with different rules never share a page. Every collection has a version,
+ * increased by every create, update and delete sent by the connection, batches and files included: a page cached before
+ * is not returned anymore, and a page read while the version changed is not cached. The pages are decoded at every hit,
+ * so the records returned can be changed by the caller.<br>
+ * The changes made by other clients are seen only when the time expires, or when {@link #invalidate(String)} is called,
+ * for example from the handler of a realtime event. The pages of other collections that expand the changed records are
+ * not invalidated.
+ * <pre>
+ * pocketBase.setQueryCache(new PBQueryCache(1000, Duration.ofSeconds(30)));
+ * PBCollection page = pocketBase.readAllRecords("posts", token, query); // read from the server
+ * page = pocketBase.readAllRecords("posts", token, query);              // cached
+ * </pre>
+ */
+public class PBQueryCache {
+	private final int maxEntries;
+	private final long ttlNanos;
+	private volatile long maxChars = 32L * 1024 * 1024;
+
+	private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+	// In access order, the least recently used first; guarded by this
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<Key>> keysByCollection = new HashMap<>();
+	private long chars = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * A page of a collection read with a query and a token.
+	 */
+	static final class Key {
+		final String collectionName;
+		final String authToken;
+		final String query;
+
+		Key(String collectionName, String authToken, String query) {
+			this.collectionName = collectionName;
+			this.authToken = authToken;
+			this.query = query;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key) o;
+			return collectionName.equals(key.collectionName) && Objects.equals(authToken, key.authToken) && query.equals(key.query);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(collectionName, authToken, query);
+		}
+	}
+
+	/**
+	 * A response, the version of its collection when it was asked and when it expires.
+	 */
+	private static final class Entry {
+		final String response;
+		final long version;
+		final long expires;
+
+		Entry(String response, long version, long expires) {
+			this.response = response;
+			this.version = version;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Instantiates a new cache of pages.
+	 *
+	 * @param maxEntries the maximum number of pages, the least recently used are removed
+	 * @param ttl        how long a page is kept
+	 */
+	public PBQueryCache(int maxEntries, Duration ttl) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		if (ttl.isNegative() || ttl.isZero())
+			throw new IllegalArgumentException("ttl must be positive: " + ttl);
+
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttl.toNanos();
+	}
+
+	/**
+	 * Sets the maximum size of all the pages, counted in characters of their responses, default 32M.
+	 * A larger page is not cached.
+	 */
+	public PBQueryCache maxChars(long maxChars) {
+		if (maxChars <= 0)
+			throw new IllegalArgumentException("maxChars must be positive: " + maxChars);
+		this.maxChars = maxChars;
+		return this;
+	}
+
+	/**
+	 * Builds the key of a page. The query string of a {@link PBQuery} always has the parameters in the same order,
+	 * and no query is the same as the default one.
+	 */
+	static Key key(String collectionName, String authToken, PBQuery query) {
+		return new Key(collectionName, authToken, (query != null ? query : new PBQuery()).toString());
+	}
+
+	/**
+	 * Gets the current version of a collection, to be given to {@link #put(Key, long, String)} with the response.
+	 */
+	long version(String collectionName) {
+		return versions.computeIfAbsent(collectionName, name -> new AtomicLong()).get();
+	}
+
+	/**
+	 * Gets a response if it is cached, not expired and its collection did not change.
+	 *
+	 * @return the response, null if it must be read
+	 */
+	synchronized String get(Key key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.expires - System.nanoTime() <= 0 || entry.version != version(key.collectionName)) {
+			remove(key);
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.response;
+	}
+
+	/**
+	 * Caches a response, unless its collection changed since the request was sent.
+	 *
+	 * @param version the version of the collection before the request was sent
+	 */
+	synchronized void put(Key key, long version, String response) {
+		if (version != version(key.collectionName) || response.length() > maxChars)
+			return;
+
+		remove(key);
+		entries.put(key, new Entry(response, version, System.nanoTime() + ttlNanos));
+		keysByCollection.computeIfAbsent(key.collectionName, name -> new HashSet<>()).add(key);
+		chars += response.length();
+
+		Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || chars > maxChars) {
+			Map.Entry<Key, Entry> removed = eldest.next();
+			eldest.remove();
+			forget(removed.getKey(), removed.getValue());
+		}
+	}
+
+	/**
+	 * Increases the version of a collection and removes its pages.
+	 * Call it when a collection was changed by someone else, for example from the handler of a realtime event.
+	 */
+	public void invalidate(String collectionName) {
+		// First the version, so a page read in the meantime is not cached
+		versions.computeIfAbsent(collectionName, name -> new AtomicLong()).incrementAndGet();
+
+		synchronized (this) {
+			Set<Key> keys = keysByCollection.remove(collectionName);
+			if (keys != null) {
+				for (Key key : keys) {
+					chars -= entries.remove(key).response.length();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invalidates all the collections.
+	 */
+	public void invalidateAll() {
+		versions.values().forEach(AtomicLong::incrementAndGet);
+
+		synchronized (this) {
+			entries.clear();
+			keysByCollection.clear();
+			chars = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of pages cached.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private void remove(Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			forget(key, entry);
+	}
+
+	private void forget(Key key, Entry entry) {
+		chars -= entry.response.length();
+		Set<Key> keys = keysByCollection.get(key.collectionName);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty())
+				keysByCollection.remove(key.collectionName);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PBQueryCache{" +
+				"entries=" + entries.size() +
+				", chars=" + chars +
+				", hits=" + hits +
+				", misses=" + misses +
+				'}';
+	}
+}
@@ -1,7 +1,10 @@
 package connector;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class PBRecord {
 	private String id;
@@ -10,17 +13,23 @@ public class PBRecord {
 	private String created;
 	private String updated;
 	private Map<String, PBValue> values = new HashMap<>();
+	// Set when the values were given by the caller, so they are all sent by an update
+	private boolean valuesReplaced = false;
+	// Created only when the record has expanded relations
+	private Map<String, List<PBRecord>> expand;
 
 	public PBRecord() {
 	}
 
 	public PBRecord(Map<String, PBValue> values) {
 		this.values = values;
+		this.valuesReplaced = true;
 	}
 
 	public PBRecord(String id, Map<String, PBValue> values) {
 		this.id = id;
 		this.values = values;
+		this.valuesReplaced = true;
 	}
 
 	public PBRecord(String id, String collectionId, String collectionName, String created, String updated) {
@@ -37,6 +46,102 @@ public class PBRecord {
 
 	public void setValues(Map<String, PBValue> values) {
 		this.values = values;
+		this.valuesReplaced = true;
+	}
+
+	/**
+	 * Sets the values read from the server, not changed.
+	 */
+	void loadValues(Map<String, PBValue> values) {
+		this.values = values;
+		this.valuesReplaced = false;
+	}
+
+	/**
+	 * Checks if any value was changed after the record was read, see {@link #getChangedValues()}.
+	 */
+	public boolean isChanged() {
+		return !getChangedValues().isEmpty();
+	}
+
+	/**
+	 * Gets the values changed after the record was read from the server: the values set, and the lists edited.
+	 * All the values are changed after {@link #setValues(Map)}, or for a record built with its values.<br>
+	 * Removing a field from the values does not change it on the server, set an empty value to clear it.
+	 *
+	 * @return the changed values by field, empty if nothing changed
+	 */
+	public Map<String, PBValue> getChangedValues() {
+		Map<String, PBValue> changed = new HashMap<>();
+		if (valuesReplaced) {
+			changed.putAll(values);
+			return changed;
+		}
+
+		forEachLoaded((field, value) -> {
+			if (value != null && value.isChanged())
+				changed.put(field, value);
+		});
+		return changed;
+	}
+
+	/**
+	 * Marks all the values as equal to the ones on the server, after they were sent.
+	 */
+	void markUnchanged() {
+		valuesReplaced = false;
+		forEachLoaded((field, value) -> {
+			if (value != null)
+				value.markUnchanged();
+		});
+	}
+
+	/**
+	 * Runs an action on the values that may have been changed: with lazy records, only the ones already decoded.
+	 */
+	private void forEachLoaded(BiConsumer<String, PBValue> action) {
+		if (values instanceof PBLazyValues)
+			((PBLazyValues) values).forEachDecoded(action);
+		else
+			values.forEach(action);
+	}
+
+	/**
+	 * Gets the expanded relations of the record, with the relation field as key.
+	 * Single relations are lists with one record.
+	 */
+	public Map<String, List<PBRecord>> getExpand() {
+		if (expand == null)
+			expand = new HashMap<>();
+		return expand;
+	}
+
+	public void setExpand(Map<String, List<PBRecord>> expand) {
+		this.expand = expand;
+	}
+
+	/**
+	 * Gets the first expanded record of a relation field.
+	 *
+	 * @param field the relation field
+	 * @return the expanded record, or null if the field was not expanded
+	 */
+	public PBRecord getExpanded(String field) {
+		List<PBRecord> records = getExpandedList(field);
+		return records.isEmpty() ? null : records.get(0);
+	}
+
+	/**
+	 * Gets all the expanded records of a relation field.
+	 *
+	 * @param field the relation field
+	 * @return the expanded records, empty if the field was not expanded
+	 */
+	public List<PBRecord> getExpandedList(String field) {
+		if (expand == null)
+			return List.of();
+		List<PBRecord> records = expand.get(field);
+		return records != null ? records : List.of();
 	}
 
 	public String getId() {
@@ -88,6 +193,20 @@ public class PBRecord {
 				", created='" + created + '\'' +
 				", updated='" + updated + '\'' +
 				", values=" + values +
+				(expand != null && !expand.isEmpty() ? ", expand=" + expandIds() : "") +
 				'}';
 	}
+
+	/**
+	 * Only the ids of the expanded records are printed, since expanded records can reference each other.
+	 */
+	private Map<String, List<String>> expandIds() {
+		Map<String, List<String>> ids = new HashMap<>();
+		expand.forEach((field, records) -> {
+			List<String> fieldIds = new ArrayList<>();
+			records.forEach(record -> fieldIds.add(record.getId()));
+			ids.put(field, fieldIds);
+		});
+		return ids;
+	}
 }
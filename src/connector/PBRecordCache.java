@@ -0,0 +1,572 @@
+package connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of records kept outside the Java heap, so a large number of records does not slow down the garbage collector.<br><br>
+ * The records are serialized in a compact binary form and appended to segments of direct memory, or of a memory-mapped
+ * file, used as a ring: when the memory is full the oldest segment is dropped whole, with all its records.
+ * A record read from the older half of the segments is copied to the newest one, so the records in use survive
+ * and the ones dropped are the least recently used. The index of the ids is an open-addressing hash table, also
+ * outside the heap. A record is decoded into a new {@link PBRecord} every time it is read, so the heap used
+ * depends only on the records read, not on the records cached.<br>
+ * The expanded relations are not cached. An id can be in only one collection of a cache, so use a cache per collection
+ * or ids unique across them. Direct memory is released by the garbage collector after {@link #close()}.
+ * <pre>
+ * PBRecordCache cache = new PBRecordCache(2L &lt;&lt; 30); // 2 GB
+ * cache.put(record);
+ * PBRecord cached = cache.get("RECORD_ID");
+ * </pre>
+ */
+public class PBRecordCache implements Closeable {
+	// Entry: total length, id length, data length, id, data
+	private static final int ENTRY_HEADER = 12;
+	// Index slot: hash of the id, 0 when empty, and location of the entry
+	private static final int SLOT = 16;
+	private static final int MIN_SEGMENT = 64 * 1024;
+	private static final int MAX_SEGMENT = 64 * 1024 * 1024;
+	// Four slots per entry in a single buffer, at most 1 GB
+	private static final int MAX_ENTRIES = 1 << 24;
+
+	private static final byte NULL_VALUE = 0;
+	private static final byte STRING_VALUE = 1;
+	private static final byte LIST_VALUE = 2;
+
+	private final long capacity;
+	private final int segmentSize;
+	private final int maxEntries;
+	private final Path file;
+
+	private ByteBuffer[] segments;
+	// The order of the segments, 0 when empty, and the end of their last entry
+	private final long[] segmentSequence;
+	private final int[] segmentEnd;
+	private int usedSegments = 0;
+	private int head = 0;
+	private long nextSequence = 1;
+
+	private ByteBuffer index;
+	private final int slotMask;
+	private int entries = 0;
+	private long liveBytes = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private boolean closed = false;
+
+	/**
+	 * Instantiates a cache in direct memory, with room for an entry every 512 bytes.
+	 *
+	 * @param capacity the bytes of memory used by the records
+	 */
+	public PBRecordCache(long capacity) {
+		this(capacity, (int) Math.min(MAX_ENTRIES, Math.max(1024, capacity / 512)));
+	}
+
+	/**
+	 * Instantiates a cache in direct memory.
+	 *
+	 * @param capacity   the bytes of memory used by the records
+	 * @param maxEntries the maximum number of records, at most 2^24; the index takes up to 64 bytes for each of them
+	 */
+	public PBRecordCache(long capacity, int maxEntries) {
+		this(capacity, maxEntries, null);
+	}
+
+	/**
+	 * Instantiates a cache in a memory-mapped file, that can be larger than the memory. The file is deleted when the cache is closed.
+	 *
+	 * @param capacity   the bytes of the file used by the records
+	 * @param maxEntries the maximum number of records, at most 2^24; the index takes up to 64 bytes of direct memory for each of them
+	 * @param file       the file, null to use direct memory
+	 * @throws UncheckedIOException the file cannot be mapped
+	 */
+	public PBRecordCache(long capacity, int maxEntries, Path file) {
+		if (capacity < 2 * MIN_SEGMENT)
+			throw new IllegalArgumentException("capacity must be at least " + 2 * MIN_SEGMENT + ": " + capacity);
+		if (maxEntries <= 0 || maxEntries > MAX_ENTRIES)
+			throw new IllegalArgumentException("maxEntries must be between 1 and " + MAX_ENTRIES + ": " + maxEntries);
+
+		this.segmentSize = (int) Math.max(MIN_SEGMENT, Math.min(MAX_SEGMENT, capacity / 16));
+		int count = (int) Math.max(2, capacity / segmentSize);
+		this.capacity = (long) count * segmentSize;
+		this.maxEntries = maxEntries;
+		this.file = file;
+
+		this.segments = new ByteBuffer[count];
+		this.segmentSequence = new long[count];
+		this.segmentEnd = new int[count];
+		if (file == null) {
+			for (int i = 0; i < count; i++) {
+				segments[i] = ByteBuffer.allocateDirect(segmentSize);
+			}
+		} else {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				for (int i = 0; i < count; i++) {
+					segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// At most half full, so the probes stay short: between 2 and 4 slots per entry
+		int slots = Integer.highestOneBit(maxEntries) << 2;
+		long indexBytes = (long) slots * SLOT;
+		if (indexBytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The index of " + maxEntries + " entries is too large: " + indexBytes + " bytes");
+		this.index = ByteBuffer.allocateDirect((int) indexBytes);
+		this.slotMask = slots - 1;
+
+		segmentSequence[head] = nextSequence++;
+		usedSegments = 1;
+	}
+
+	// ================ CACHE ================
+
+	/**
+	 * Adds a record, replacing the one with the same id.
+	 *
+	 * @return false if the record is larger than a segment, and was not cached
+	 */
+	public boolean put(PBRecord record) {
+		if (record.getId() == null)
+			throw new IllegalArgumentException("The record needs an id");
+
+		byte[] id = record.getId().getBytes(StandardCharsets.UTF_8);
+		byte[] data = encode(record);
+		int length = ENTRY_HEADER + id.length + data.length;
+		if (length > segmentSize)
+			return false;
+
+		ByteBuffer entry = ByteBuffer.allocate(length);
+		entry.putInt(length).putInt(id.length).putInt(data.length).put(id).put(data);
+
+		synchronized (this) {
+			checkOpen();
+			insert(id, hash(id), entry.array());
+		}
+		return true;
+	}
+
+	/**
+	 * Gets a record, decoded from the cache.
+	 *
+	 * @return a new record, null if the id is not cached
+	 */
+	public PBRecord get(String recordId) {
+		byte[] id = recordId.getBytes(StandardCharsets.UTF_8);
+		long hash = hash(id);
+		byte[] entry;
+
+		synchronized (this) {
+			checkOpen();
+			int slot = find(id, hash);
+			if (slot < 0) {
+				misses++;
+				return null;
+			}
+			hits++;
+
+			long location = index.getLong(slot * SLOT + 8);
+			entry = read(location);
+
+			// Recently used: moved to the newest segment before its segment is dropped
+			if (nextSequence - 1 - segmentSequence[segmentOf(location)] >= Math.max(1, usedSegments / 2))
+				insert(id, hash, entry);
+		}
+
+		int idLength = ByteBuffer.wrap(entry).getInt(4);
+		return decode(recordId, ByteBuffer.wrap(entry, ENTRY_HEADER + idLength, entry.length - ENTRY_HEADER - idLength));
+	}
+
+	/**
+	 * Checks if a record is cached, without reading it.
+	 */
+	public synchronized boolean contains(String recordId) {
+		checkOpen();
+		byte[] id = recordId.getBytes(StandardCharsets.UTF_8);
+		return find(id, hash(id)) >= 0;
+	}
+
+	/**
+	 * Removes a record.
+	 *
+	 * @return true if the record was cached
+	 */
+	public synchronized boolean remove(String recordId) {
+		checkOpen();
+		byte[] id = recordId.getBytes(StandardCharsets.UTF_8);
+		int slot = find(id, hash(id));
+		if (slot < 0)
+			return false;
+
+		liveBytes -= read(index.getLong(slot * SLOT + 8)).length;
+		delete(slot);
+		entries--;
+		return true;
+	}
+
+	/**
+	 * Removes all the records.
+	 */
+	public synchronized void clear() {
+		checkOpen();
+		for (int i = 0; i <= slotMask; i++) {
+			index.putLong(i * SLOT, 0);
+		}
+		for (int i = 0; i < segments.length; i++) {
+			segmentSequence[i] = 0;
+			segmentEnd[i] = 0;
+		}
+		entries = 0;
+		liveBytes = 0;
+		head = 0;
+		segmentSequence[head] = nextSequence++;
+		usedSegments = 1;
+	}
+
+	/**
+	 * Gets the number of records cached.
+	 */
+	public synchronized int size() {
+		return entries;
+	}
+
+	/**
+	 * Gets the bytes used by the records cached, without the space of the records replaced or removed, which is
+	 * reused when their segment is dropped.
+	 */
+	public synchronized long getLiveBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * Gets the bytes of memory for the records.
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of records dropped to make room for new ones.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Drops all the records and releases the memory. A memory-mapped file is deleted.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		segments = null;
+		index = null;
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// Left to the caller
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PBRecordCache{" +
+				"entries=" + entries +
+				", liveBytes=" + liveBytes +
+				", capacity=" + capacity +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("The cache is closed");
+	}
+
+	// ================ SEGMENTS ================
+
+	/**
+	 * Appends an entry and points the index at it, replacing the entry with the same id.
+	 */
+	private void insert(byte[] id, long hash, byte[] entry) {
+		int slot = find(id, hash);
+		if (slot >= 0) {
+			liveBytes -= read(index.getLong(slot * SLOT + 8)).length;
+			delete(slot);
+			entries--;
+		}
+
+		while (entries >= maxEntries) {
+			evictOldest();
+		}
+
+		long location = append(entry);
+		slot = (int) hash & slotMask;
+		while (index.getLong(slot * SLOT) != 0) {
+			slot = (slot + 1) & slotMask;
+		}
+		index.putLong(slot * SLOT, hash);
+		index.putLong(slot * SLOT + 8, location);
+		entries++;
+		liveBytes += entry.length;
+	}
+
+	private long append(byte[] entry) {
+		if (segmentEnd[head] + entry.length > segmentSize) {
+			head = (head + 1) % segments.length;
+			if (segmentSequence[head] != 0)
+				evict(head);
+			segmentSequence[head] = nextSequence++;
+			usedSegments++;
+		}
+
+		int offset = segmentEnd[head];
+		segments[head].put(offset, entry);
+		segmentEnd[head] = offset + entry.length;
+		return ((long) head << 32) | offset;
+	}
+
+	/**
+	 * Drops the oldest segment, or empties the only one used.
+	 */
+	private void evictOldest() {
+		for (int i = 1; i < segments.length; i++) {
+			int segment = (head + i) % segments.length;
+			if (segmentSequence[segment] != 0) {
+				evict(segment);
+				return;
+			}
+		}
+
+		evict(head);
+		segmentSequence[head] = nextSequence++;
+		usedSegments++;
+	}
+
+	/**
+	 * Drops a segment: removes from the index the entries that are still the current ones of their id.
+	 */
+	private void evict(int segment) {
+		ByteBuffer buffer = segments[segment];
+		int position = 0;
+		while (position < segmentEnd[segment]) {
+			int length = buffer.getInt(position);
+			byte[] id = new byte[buffer.getInt(position + 4)];
+			buffer.get(position + ENTRY_HEADER, id);
+
+			long location = ((long) segment << 32) | position;
+			int slot = find(id, hash(id));
+			if (slot >= 0 && index.getLong(slot * SLOT + 8) == location) {
+				delete(slot);
+				entries--;
+				liveBytes -= length;
+				evictions++;
+			}
+			position += length;
+		}
+
+		segmentSequence[segment] = 0;
+		segmentEnd[segment] = 0;
+		usedSegments--;
+	}
+
+	private byte[] read(long location) {
+		ByteBuffer buffer = segments[segmentOf(location)];
+		int offset = (int) location;
+		byte[] entry = new byte[buffer.getInt(offset)];
+		buffer.get(offset, entry);
+		return entry;
+	}
+
+	private static int segmentOf(long location) {
+		return (int) (location >>> 32);
+	}
+
+	// ================ INDEX ================
+
+	/**
+	 * Finds the slot of an id with linear probing.
+	 *
+	 * @return the slot, -1 if the id is not in the index
+	 */
+	private int find(byte[] id, long hash) {
+		int slot = (int) hash & slotMask;
+		while (true) {
+			long slotHash = index.getLong(slot * SLOT);
+			if (slotHash == 0)
+				return -1;
+			if (slotHash == hash && idEquals(index.getLong(slot * SLOT + 8), id))
+				return slot;
+			slot = (slot + 1) & slotMask;
+		}
+	}
+
+	private boolean idEquals(long location, byte[] id) {
+		ByteBuffer buffer = segments[segmentOf(location)];
+		int offset = (int) location;
+		if (buffer.getInt(offset + 4) != id.length)
+			return false;
+		for (int i = 0; i < id.length; i++) {
+			if (buffer.get(offset + ENTRY_HEADER + i) != id[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Empties a slot, moving back the entries after it that would not be found anymore, so no tombstones are needed.
+	 */
+	private void delete(int slot) {
+		int empty = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & slotMask;
+			long hash = index.getLong(next * SLOT);
+			if (hash == 0)
+				break;
+
+			// An entry can move back only if its home slot is not between the empty slot and its slot
+			int home = (int) hash & slotMask;
+			boolean between = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+			if (!between) {
+				index.putLong(empty * SLOT, hash);
+				index.putLong(empty * SLOT + 8, index.getLong(next * SLOT + 8));
+				empty = next;
+			}
+		}
+		index.putLong(empty * SLOT, 0);
+		index.putLong(empty * SLOT + 8, 0);
+	}
+
+	/**
+	 * A 64-bit hash of an id, never 0.
+	 */
+	private static long hash(byte[] id) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : id) {
+			hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+		}
+		// The low bits choose the slot, so they are mixed with the high ones
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash != 0 ? hash : 1;
+	}
+
+	// ================ ENCODING ================
+
+	private static byte[] encode(PBRecord record) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			writeString(output, record.getCollectionId());
+			writeString(output, record.getCollectionName());
+			writeString(output, record.getCreated());
+			writeString(output, record.getUpdated());
+
+			Map<String, PBValue> values = record.getValues();
+			output.writeInt(values.size());
+			for (Map.Entry<String, PBValue> entry : values.entrySet()) {
+				writeString(output, entry.getKey());
+				PBValue value = entry.getValue();
+				if (value == null) {
+					output.writeByte(NULL_VALUE);
+				} else if (value.getList() != null) {
+					output.writeByte(LIST_VALUE);
+					output.writeInt(value.getList().size());
+					for (String element : value.getList()) {
+						writeString(output, element);
+					}
+				} else {
+					output.writeByte(STRING_VALUE);
+					writeString(output, value.getString());
+				}
+			}
+		} catch (IOException e) {
+			// Never thrown by a byte array
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static PBRecord decode(String id, ByteBuffer data) {
+		String collectionId = readString(data);
+		String collectionName = readString(data);
+		String created = readString(data);
+		String updated = readString(data);
+		PBRecord record = new PBRecord(id, collectionId, collectionName, created, updated);
+
+		int count = data.getInt();
+		Map<String, PBValue> values = new HashMap<>(count * 2);
+		for (int i = 0; i < count; i++) {
+			String field = readString(data);
+			switch (data.get()) {
+				case LIST_VALUE:
+					int size = data.getInt();
+					List<String> list = new ArrayList<>(size);
+					for (int j = 0; j < size; j++) {
+						list.add(readString(data));
+					}
+					values.put(field, PBValue.loaded(list));
+					break;
+				case STRING_VALUE:
+					values.put(field, PBValue.loaded(readString(data)));
+					break;
+				default:
+					values.put(field, null);
+					break;
+			}
+		}
+		record.loadValues(values);
+		return record;
+	}
+
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+		if (string == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(ByteBuffer data) {
+		int length = data.getInt();
+		if (length < 0)
+			return null;
+		String string = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+		data.position(data.position() + length);
+		return string;
+	}
+}
@@ -0,0 +1,487 @@
+package connector;
+
+import com.google.gson.JsonParser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A local copy of a collection, kept on the disk and updated with the changes only.<br><br>
+ * The first time, all the records are downloaded into a snapshot file. Then {@link #sync()} fetches only the records
+ * with <code>updated</code> after the last one seen (the watermark), and {@link #reconcile()} compares the ids
+ * to find the deleted records. At the opening the snapshot file is memory-mapped and only its ids are read,
+ * the records are decoded when they are looked up.<br>
+ * The changes since the opening are kept in memory, until {@link #save()} rewrites the snapshot with them.
+ * Every lookup decodes a new {@link PBRecord}, so changing it does not change the replica.
+ * <pre>
+ * try (PBReplica countries = new PBReplica(pocketBase, "countries", Path.of("countries.snapshot"))) {
+ *     countries.startAutoSync(Duration.ofSeconds(30), Duration.ofMinutes(10));
+ *     PBRecord italy = countries.get("RECORD_ID");
+ * }
+ * </pre>
+ */
+public class PBReplica implements Closeable {
+	private static final int MAGIC = 0x50425250; // "PBRP"
+	private static final int VERSION = 1;
+	private static final int PER_PAGE = 500;
+	// A mapped buffer cannot be larger than 2 GB, so larger snapshots are mapped in chunks
+	private static final int CHUNK_SIZE = 1 << 30;
+
+	/**
+	 * A snapshot file, mapped in memory, with the position of every record.
+	 */
+	private static class Snapshot {
+		final MappedByteBuffer[] chunks;
+		final long size;
+		final String watermark;
+		// The position of the JSON of every record, by id; its length is the int before it
+		final Map<String, Long> index;
+
+		Snapshot(MappedByteBuffer[] chunks, long size, String watermark, Map<String, Long> index) {
+			this.chunks = chunks;
+			this.size = size;
+			this.watermark = watermark;
+			this.index = index;
+		}
+
+		/**
+		 * Reads some bytes, also across two chunks.
+		 */
+		byte[] read(long position, int length) {
+			byte[] bytes = new byte[length];
+			int done = 0;
+			while (done < length) {
+				long current = position + done;
+				MappedByteBuffer chunk = chunks[(int) (current / CHUNK_SIZE)];
+				int offset = (int) (current % CHUNK_SIZE);
+				int count = Math.min(length - done, chunk.limit() - offset);
+				chunk.get(offset, bytes, done, count);
+				done += count;
+			}
+			return bytes;
+		}
+
+		int readInt(long position) {
+			return ByteBuffer.wrap(read(position, 4)).getInt();
+		}
+
+		short readShort(long position) {
+			return ByteBuffer.wrap(read(position, 2)).getShort();
+		}
+
+		/**
+		 * Reads the JSON of a record.
+		 */
+		byte[] record(long position) {
+			return read(position, readInt(position - 4));
+		}
+	}
+
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private final Path file;
+	private final String authToken;
+
+	private volatile Snapshot snapshot;
+	private volatile String watermark;
+	// The JSON of the records changed, and the records deleted, after the snapshot
+	private final Map<String, byte[]> changed = new ConcurrentHashMap<>();
+	private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+	private ScheduledExecutorService scheduler;
+	private volatile Exception lastSyncError;
+
+	/**
+	 * Opens the replica of a collection, downloading all the records if the snapshot file does not exist.
+	 * Call {@link #sync()} to get the changes made after the snapshot.
+	 *
+	 * @param pocketBase     the connection used to download the records
+	 * @param collectionName the collection name
+	 * @param file           the snapshot file
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable, or the snapshot cannot be read or written
+	 */
+	public PBReplica(PocketBase pocketBase, String collectionName, Path file, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+		this.file = file;
+		this.authToken = authToken;
+
+		if (!Files.exists(file))
+			download();
+		this.snapshot = load(file);
+		this.watermark = snapshot.watermark;
+	}
+
+	/**
+	 * Opens the replica of a collection, downloading all the records if the snapshot file does not exist.
+	 *
+	 * @param pocketBase     the connection used to download the records
+	 * @param collectionName the collection name
+	 * @param file           the snapshot file
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable, or the snapshot cannot be read or written
+	 */
+	public PBReplica(PocketBase pocketBase, String collectionName, Path file) throws IOException, PocketBaseException, InterruptedException {
+		this(pocketBase, collectionName, file, null);
+	}
+
+	// ================ LOOKUPS ================
+
+	/**
+	 * Gets a record from the replica.
+	 *
+	 * @param recordId the id of the record
+	 * @return a new record, that can be changed without changing the replica, or null if it is not in the collection
+	 */
+	public PBRecord get(String recordId) {
+		if (deleted.contains(recordId))
+			return null;
+
+		byte[] json = changed.get(recordId);
+		if (json != null)
+			return decode(json);
+
+		Snapshot current = snapshot;
+		Long position = current.index.get(recordId);
+		return position != null ? decode(current.record(position)) : null;
+	}
+
+	public boolean contains(String recordId) {
+		if (deleted.contains(recordId))
+			return false;
+		return changed.containsKey(recordId) || snapshot.index.containsKey(recordId);
+	}
+
+	/**
+	 * Gets the number of records in the replica.
+	 */
+	public int size() {
+		Snapshot current = snapshot;
+		int size = current.index.size();
+		for (String id : changed.keySet()) {
+			if (!current.index.containsKey(id))
+				size++;
+		}
+		for (String id : deleted) {
+			if (current.index.containsKey(id))
+				size--;
+		}
+		return size;
+	}
+
+	/**
+	 * Gives all the records of the replica to an action, decoding one at a time.
+	 */
+	public void forEach(Consumer<PBRecord> action) {
+		Snapshot current = snapshot;
+		for (Map.Entry<String, Long> entry : current.index.entrySet()) {
+			String id = entry.getKey();
+			if (!deleted.contains(id) && !changed.containsKey(id))
+				action.accept(decode(current.record(entry.getValue())));
+		}
+		for (Map.Entry<String, byte[]> entry : changed.entrySet()) {
+			if (!deleted.contains(entry.getKey()))
+				action.accept(decode(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Gets the <code>updated</code> date of the last change received.
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Gets the error of the last automatic sync, null if it succeeded.
+	 */
+	public Exception getLastSyncError() {
+		return lastSyncError;
+	}
+
+	// ================ SYNC ================
+
+	/**
+	 * Fetches the records created or updated after the watermark.
+	 *
+	 * @return the number of records received
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public synchronized int sync() throws IOException, PocketBaseException, InterruptedException {
+		// Greater or equal: more records can have the same date, and receiving one again is harmless
+		PBFilter filter = watermark != null ? PBFilter.gte("updated", watermark) : null;
+		PBScanner scanner = new PBScanner(pocketBase, collectionName, authToken, filter, PER_PAGE, "updated");
+
+		int received = 0;
+		try {
+			while (scanner.hasNext()) {
+				PBRecord record = scanner.next();
+				changed.put(record.getId(), toJson(record));
+				deleted.remove(record.getId());
+				watermark = record.getUpdated();
+				received++;
+			}
+		} catch (UncheckedPocketBaseException e) {
+			throw e.getCause();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return received;
+	}
+
+	/**
+	 * Downloads the ids of all the records, and removes from the replica the ones that are not there anymore.
+	 *
+	 * @return the number of records removed
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public synchronized int reconcile() throws IOException, PocketBaseException, InterruptedException {
+		Set<String> ids = new HashSet<>();
+		PBScanner scanner = new PBScanner(pocketBase, collectionName, authToken, null, PER_PAGE, "id", "id");
+		try {
+			while (scanner.hasNext()) {
+				ids.add(scanner.next().getId());
+			}
+		} catch (UncheckedPocketBaseException e) {
+			throw e.getCause();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		int removed = 0;
+		for (String id : snapshot.index.keySet()) {
+			if (!ids.contains(id) && deleted.add(id))
+				removed++;
+		}
+		for (String id : changed.keySet()) {
+			if (!ids.contains(id) && deleted.add(id))
+				removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * Rewrites the snapshot file with the changes received, so they are not downloaded again at the next opening.
+	 *
+	 * @throws IOException the snapshot cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		if (changed.isEmpty() && deleted.isEmpty() && Objects.equals(watermark, snapshot.watermark))
+			return;
+
+		Snapshot current = snapshot;
+		Map<String, byte[]> changes = new HashMap<>(changed);
+		Set<String> deletions = new HashSet<>(deleted);
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+			writeHeader(output, watermark);
+
+			// The unchanged records are copied without decoding them
+			for (Map.Entry<String, Long> entry : current.index.entrySet()) {
+				String id = entry.getKey();
+				if (deletions.contains(id) || changes.containsKey(id))
+					continue;
+
+				writeRecord(output, id, current.record(entry.getValue()));
+			}
+			for (Map.Entry<String, byte[]> entry : changes.entrySet()) {
+				if (!deletions.contains(entry.getKey()))
+					writeRecord(output, entry.getKey(), entry.getValue());
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// The new snapshot first, so a lookup never misses a record between the two steps
+		snapshot = load(file);
+		changed.keySet().removeAll(changes.keySet());
+		deleted.removeAll(deletions);
+	}
+
+	/**
+	 * Syncs the replica in the background.
+	 *
+	 * @param syncInterval      the time between the calls to {@link #sync()}
+	 * @param reconcileInterval the time between the calls to {@link #reconcile()} and {@link #save()}
+	 */
+	public synchronized void startAutoSync(Duration syncInterval, Duration reconcileInterval) {
+		if (scheduler != null)
+			throw new IllegalStateException("The automatic sync is already started");
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pb-replica-" + collectionName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> runSync(false), syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(() -> runSync(true), reconcileInterval.toMillis(), reconcileInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private void runSync(boolean reconcile) {
+		try {
+			sync();
+			if (reconcile) {
+				reconcile();
+				save();
+			}
+			lastSyncError = null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | PocketBaseException e) {
+			// Tried again at the next round, the replica keeps answering with the last data received
+			lastSyncError = e;
+		}
+	}
+
+	/**
+	 * Stops the automatic sync and saves the changes received.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (scheduler != null)
+				scheduler.shutdownNow();
+		}
+		save();
+	}
+
+	// ================ SNAPSHOT FILE ================
+
+	/**
+	 * Downloads all the records into the snapshot file, without keeping them in memory.
+	 */
+	private void download() throws IOException, PocketBaseException, InterruptedException {
+		// The records are written before the watermark is known, so the header is written after them
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		// Read before the scan: a record updated during the scan may be scanned before its update, and then it is
+		// fetched by the next sync
+		String lastUpdated = readLastUpdated();
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			writeHeader(output, null);
+
+			PBScanner scanner = pocketBase.scanRecords(collectionName, authToken, null, PER_PAGE);
+			try {
+				while (scanner.hasNext()) {
+					PBRecord record = scanner.next();
+					writeRecord(output, record.getId(), toJson(record));
+				}
+			} catch (UncheckedPocketBaseException e) {
+				throw e.getCause();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			output.flush();
+
+			// The watermark has a fixed size in the header, see writeHeader
+			channel.write(ByteBuffer.wrap(header(lastUpdated)), 0);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the largest update date of the collection, null if it is empty.
+	 */
+	private String readLastUpdated() throws IOException, PocketBaseException, InterruptedException {
+		PBQuery query = new PBQuery().perPage(1).skipTotal(true).sort("-updated").fields("id", "updated");
+		List<PBRecord> items = pocketBase.readAllRecords(collectionName, authToken, query).getItems();
+		return items.isEmpty() ? null : items.get(0).getUpdated();
+	}
+
+	private static void writeHeader(DataOutputStream output, String watermark) throws IOException {
+		output.write(header(watermark));
+	}
+
+	/**
+	 * The header: magic, version and watermark, padded to 64 bytes so it can be rewritten in place.
+	 */
+	private static byte[] header(String watermark) {
+		byte[] date = watermark != null ? watermark.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		ByteBuffer header = ByteBuffer.allocate(64);
+		header.putInt(MAGIC).putInt(VERSION).putShort((short) date.length).put(date);
+		return header.array();
+	}
+
+	private static void writeRecord(DataOutputStream output, String id, byte[] json) throws IOException {
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		output.writeShort(idBytes.length);
+		output.write(idBytes);
+		output.writeInt(json.length);
+		output.write(json);
+	}
+
+	/**
+	 * Maps a snapshot file and reads the position of every record, without decoding them.
+	 */
+	private static Snapshot load(Path file) throws IOException {
+		MappedByteBuffer[] chunks;
+		long size;
+		try (FileChannel channel = FileChannel.open(file)) {
+			size = channel.size();
+			chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = (long) i * CHUNK_SIZE;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+			}
+		}
+
+		if (size < 64 || chunks[0].getInt(0) != MAGIC || chunks[0].getInt(4) != VERSION)
+			throw new IOException("Not a snapshot file: " + file);
+
+		byte[] date = new byte[chunks[0].getShort(8)];
+		chunks[0].get(10, date);
+		String watermark = date.length > 0 ? new String(date, StandardCharsets.UTF_8) : null;
+
+		Snapshot snapshot = new Snapshot(chunks, size, watermark, new ConcurrentHashMap<>());
+		long position = 64;
+		while (position < size) {
+			byte[] id = snapshot.read(position + 2, snapshot.readShort(position));
+			position += 2 + id.length;
+
+			int length = snapshot.readInt(position);
+			position += 4;
+			snapshot.index.put(new String(id, StandardCharsets.UTF_8), position);
+			position += length;
+		}
+
+		return snapshot;
+	}
+
+	private PBRecord decode(byte[] json) {
+		return pocketBase.buildRecord(JsonParser.parseString(new String(json, StandardCharsets.UTF_8)).getAsJsonObject());
+	}
+
+	private byte[] toJson(PBRecord record) {
+		return pocketBase.buildJson(record).toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
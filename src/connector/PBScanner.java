@@ -0,0 +1,185 @@
+package connector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over all the records of a collection using keyset (cursor) pagination.<br><br>
+ * Records are ordered by the stable key <code>(created, id)</code> and every page is requested
+ * with a filter on the last key seen, instead of a page number.
+ * This way the server never has to skip rows with an <code>OFFSET</code>, and the cost of a page
+ * stays the same however deep the scan is. The total count of the items is always skipped.
+ */
+public class PBScanner implements Iterator<PBRecord> {
+	private final PocketBase pocketBase;
+	private final String collectionName;
+	private final String authToken;
+	private final PBFilter filter;
+	private final PBQuery query;
+	private final String keyField;
+
+	private List<PBRecord> page = List.of();
+	private int index = 0;
+	private boolean lastPage = false;
+	private String lastKey;
+	private String lastId;
+	private int pagesFetched = 0;
+
+	/**
+	 * Instantiates a new scanner. Prefer {@link PocketBase#scanRecords(String, String, String, int)}.
+	 *
+	 * @param pocketBase     the connection used to fetch the pages
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param filter         filter by field, leave to null if not needed
+	 * @param perPage        number of records fetched with every request, lowered by the server to its maximum
+	 */
+	public PBScanner(PocketBase pocketBase, String collectionName, String authToken, String filter, int perPage) {
+		this(pocketBase, collectionName, authToken, filter != null ? PBFilter.raw(filter) : null, perPage, "created");
+	}
+
+	/**
+	 * Instantiates a new scanner ordered by another key.
+	 *
+	 * @param keyField the field of the order: <code>created</code>, <code>updated</code> or <code>id</code>
+	 * @param fields   the fields of the records returned, all if empty; they must include the key field and the id
+	 */
+	PBScanner(PocketBase pocketBase, String collectionName, String authToken, PBFilter filter, int perPage, String keyField, String... fields) {
+		if (perPage <= 0)
+			throw new IllegalArgumentException("perPage must be positive: " + perPage);
+
+		this.pocketBase = pocketBase;
+		this.collectionName = collectionName;
+		this.authToken = authToken;
+		this.filter = filter;
+		this.keyField = keyField;
+
+		PBQuery query = new PBQuery()
+				.perPage(perPage)
+				.skipTotal(true)
+				.sort(keyField.equals("id") ? "id" : keyField + ",id");
+		this.query = fields.length > 0 ? query.fields(fields) : query;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (index < page.size())
+			return true;
+		if (lastPage)
+			return false;
+
+		try {
+			fetchNextPage();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Scan of " + collectionName + " interrupted"));
+		} catch (PocketBaseException e) {
+			throw new UncheckedPocketBaseException(e);
+		}
+
+		return index < page.size();
+	}
+
+	@Override
+	public PBRecord next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return page.get(index++);
+	}
+
+	/**
+	 * Gets the number of requests sent so far.
+	 */
+	public int getPagesFetched() {
+		return pagesFetched;
+	}
+
+	private void fetchNextPage() throws IOException, PocketBaseException, InterruptedException {
+		accept(pocketBase.readAllRecords(collectionName, authToken, nextPageQuery()));
+	}
+
+	/**
+	 * Gets the query of the next page, for a caller that fetches the pages itself.
+	 */
+	PBQuery nextPageQuery() {
+		PBFilter pageFilter = pageFilter();
+		return pageFilter != null ? query.filter(pageFilter) : query;
+	}
+
+	/**
+	 * Sets the page fetched with {@link #nextPageQuery()}, returned by the next calls to {@link #next()}.
+	 */
+	void accept(PBCollection collection) {
+		page = collection.getItems();
+		index = 0;
+		pagesFetched++;
+
+		// A short page means there is nothing after it, so no empty request is needed to find the end.
+		// The server lowers a perPage above its maximum, so the size is compared with the perPage it returned
+		if (page.isEmpty() || page.size() < perPageOf(collection)) {
+			lastPage = true;
+		}
+
+		if (!page.isEmpty()) {
+			PBRecord last = page.get(page.size() - 1);
+			lastKey = keyOf(last);
+			lastId = last.getId();
+		}
+	}
+
+	private int perPageOf(PBCollection collection) {
+		try {
+			return Math.min(Integer.parseInt(collection.getPerPage()), query.getPerPage());
+		} catch (NumberFormatException e) {
+			// Without it only an empty page ends the scan
+			return 1;
+		}
+	}
+
+	/**
+	 * Checks if there are records of the last page not returned yet, without fetching a new page.
+	 */
+	boolean hasBuffered() {
+		return index < page.size();
+	}
+
+	/**
+	 * Checks if the last page was fetched.
+	 */
+	boolean isLastPage() {
+		return lastPage;
+	}
+
+	/**
+	 * Builds the filter of the next page: the user filter and the position after the last key seen.
+	 */
+	private PBFilter pageFilter() {
+		if (lastId == null)
+			return filter;
+
+		PBFilter keyset = keyField.equals("id")
+				? PBFilter.gt("id", lastId)
+				: PBFilter.gt(keyField, lastKey).or(PBFilter.eq(keyField, lastKey).and(PBFilter.gt("id", lastId)));
+
+		if (filter == null)
+			return keyset;
+		return filter.and(keyset);
+	}
+
+	private String keyOf(PBRecord record) {
+		switch (keyField) {
+			case "created":
+				return record.getCreated();
+			case "updated":
+				return record.getUpdated();
+			default:
+				return record.getId();
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package connector;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The schema of a collection, read with {@link PocketBase#readSchema(String, String)}.<br><br>
+ * It is used to check the values of a record before sending them, with the same rules of the server for the
+ * required fields, the lengths of the texts, the limits of the numbers, the values of the selects and the number and
+ * size of the files, and to decode the records of the collection knowing the type of every field.
+ * Both the <code>schema</code> format of PocketBase up to 0.22 and the <code>fields</code> format of the later versions are read.
+ */
+public class PBSchema {
+	/**
+	 * How the value of a field is decoded.
+	 */
+	enum Kind {
+		TEXT, NUMBER, BOOL, LIST, JSON
+	}
+
+	/**
+	 * A field of the collection.
+	 */
+	public static class Field {
+		private final String name;
+		private final String type;
+		private final boolean required;
+		private final Double min;
+		private final Double max;
+		private final Integer maxSelect;
+		private final Long maxSize;
+		private final Set<String> values;
+		final Kind kind;
+
+		Field(String name, String type, boolean required, JsonObject options) {
+			this.name = name;
+			this.type = type;
+			this.required = required;
+			this.min = number(options, "min");
+			this.max = number(options, "max");
+			Double maxSelect = number(options, "maxSelect");
+			this.maxSelect = maxSelect != null ? maxSelect.intValue() : null;
+			Double maxSize = number(options, "maxSize");
+			this.maxSize = maxSize != null && maxSize > 0 ? maxSize.longValue() : null;
+
+			JsonElement values = options.get("values");
+			if (values != null && values.isJsonArray()) {
+				Set<String> set = new HashSet<>();
+				for (JsonElement value : values.getAsJsonArray()) {
+					set.add(value.getAsString());
+				}
+				this.values = Collections.unmodifiableSet(set);
+			} else {
+				this.values = null;
+			}
+
+			this.kind = kindOf(type, this.maxSelect);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the type of the field, like <code>text</code>, <code>number</code>, <code>select</code> or <code>file</code>.
+		 */
+		public String getType() {
+			return type;
+		}
+
+		public boolean isRequired() {
+			return required;
+		}
+
+		/**
+		 * Gets the minimum length of a text or the minimum of a number, null if there is no limit.
+		 */
+		public Double getMin() {
+			return min;
+		}
+
+		/**
+		 * Gets the maximum length of a text or the maximum of a number, null if there is no limit.
+		 */
+		public Double getMax() {
+			return max;
+		}
+
+		/**
+		 * Gets the maximum number of values of a select, relation or file field, null if not set.
+		 */
+		public Integer getMaxSelect() {
+			return maxSelect;
+		}
+
+		/**
+		 * Gets the maximum size in bytes of a file or json field, null if there is no limit.
+		 */
+		public Long getMaxSize() {
+			return maxSize;
+		}
+
+		/**
+		 * Gets the values allowed in a select field, null for the other fields.
+		 */
+		public Set<String> getValues() {
+			return values;
+		}
+
+		@Override
+		public String toString() {
+			return name + ":" + type + (required ? " (required)" : "");
+		}
+
+		private static Double number(JsonObject options, String name) {
+			JsonElement value = options.get(name);
+			return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber() ? value.getAsDouble() : null;
+		}
+
+		private static Kind kindOf(String type, Integer maxSelect) {
+			switch (type) {
+				case "number":
+					return Kind.NUMBER;
+				case "bool":
+					return Kind.BOOL;
+				case "json":
+					return Kind.JSON;
+				case "select":
+				case "file":
+					return maxSelect != null && maxSelect > 1 ? Kind.LIST : Kind.TEXT;
+				case "relation":
+					// Up to 0.22 a relation without maxSelect has no limit
+					return maxSelect == null || maxSelect > 1 ? Kind.LIST : Kind.TEXT;
+				default:
+					return Kind.TEXT;
+			}
+		}
+	}
+
+	private final String id;
+	private final String name;
+	private final String type;
+	private final Map<String, Field> fields;
+
+	PBSchema(String id, String name, String type, Map<String, Field> fields) {
+		this.id = id;
+		this.name = name;
+		this.type = type;
+		this.fields = Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * Builds a schema from the JSON of a collection.
+	 */
+	static PBSchema fromJson(JsonObject collection) {
+		Map<String, Field> fields = new LinkedHashMap<>();
+
+		// Up to 0.22 the fields are in "schema", with the options in an object, then in "fields", with the options in the field
+		JsonArray array = collection.has("schema") ? collection.getAsJsonArray("schema") : collection.getAsJsonArray("fields");
+		if (array != null) {
+			for (JsonElement element : array) {
+				JsonObject field = element.getAsJsonObject();
+				// The system fields, like the id and the dates, are set by the server
+				if (isTrue(field, "system") || isTrue(field, "primaryKey") || isTrue(field, "hidden"))
+					continue;
+
+				JsonObject options = field.has("options") && field.get("options").isJsonObject() ? field.getAsJsonObject("options") : field;
+				String name = field.get("name").getAsString();
+				fields.put(name, new Field(name, field.get("type").getAsString(), isTrue(field, "required"), options));
+			}
+		}
+
+		return new PBSchema(
+				string(collection, "id"),
+				string(collection, "name"),
+				string(collection, "type"),
+				fields
+		);
+	}
+
+	private static boolean isTrue(JsonObject object, String name) {
+		JsonElement value = object.get(name);
+		return value != null && value.isJsonPrimitive() && value.getAsBoolean();
+	}
+
+	private static String string(JsonObject object, String name) {
+		JsonElement value = object.get(name);
+		return value != null && !value.isJsonNull() ? value.getAsString() : null;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the type of the collection: <code>base</code>, <code>auth</code> or <code>view</code>.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the fields of the collection, without the system ones, by name.
+	 */
+	public Map<String, Field> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Gets a field of the collection.
+	 *
+	 * @return the field, null if the collection has no such field
+	 */
+	public Field getField(String name) {
+		return fields.get(name);
+	}
+
+	// ================ VALIDATION ================
+
+	/**
+	 * Checks the values of a record with the rules of the server. The fields not in the schema are ignored, like the server does.
+	 *
+	 * @param values the values to send
+	 * @param create true for a new record, which must have all the required fields,
+	 *               false for an update, where only the fields sent are checked
+	 * @return the errors found, empty if the values are valid
+	 */
+	public List<ErrorInformationWrapper> validate(Map<String, PBValue> values, boolean create) {
+		List<ErrorInformationWrapper> errors = new ArrayList<>();
+
+		for (Field field : fields.values()) {
+			PBValue value = values.get(field.name);
+			if (value == null && !values.containsKey(field.name)) {
+				if (create && field.required)
+					errors.add(new ErrorInformationWrapper(field.name, "validation_required", "Missing required value."));
+				continue;
+			}
+
+			List<String> list = valuesOf(value);
+			if (list.isEmpty() || (list.size() == 1 && isZero(field, list.get(0)))) {
+				if (field.required)
+					errors.add(new ErrorInformationWrapper(field.name, "validation_required", "Missing required value."));
+				continue;
+			}
+
+			ErrorInformationWrapper error = check(field, list);
+			if (error != null)
+				errors.add(error);
+		}
+
+		return errors;
+	}
+
+	/**
+	 * Checks the values of a record and throws the same exception of the server if they are not valid.
+	 */
+	void check(Map<String, PBValue> values, boolean create) throws PocketBaseException {
+		List<ErrorInformationWrapper> errors = validate(values, create);
+		if (!errors.isEmpty())
+			throw new PocketBaseException(400, create ? "Failed to create record." : "Failed to update record.", errors);
+	}
+
+	private static List<String> valuesOf(PBValue value) {
+		if (value == null)
+			return List.of();
+		if (value.getList() != null) {
+			List<String> list = new ArrayList<>();
+			for (String element : value.getList()) {
+				if (element != null && !element.isEmpty())
+					list.add(element);
+			}
+			return list;
+		}
+		return value.getString() == null || value.getString().isEmpty() ? List.of() : List.of(value.getString());
+	}
+
+	/**
+	 * Checks if a value is the zero value of its type, that the server considers missing for a required field.
+	 */
+	private static boolean isZero(Field field, String value) {
+		switch (field.kind) {
+			case NUMBER:
+				try {
+					return Double.parseDouble(value) == 0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			case BOOL:
+				return !Boolean.parseBoolean(value);
+			default:
+				return false;
+		}
+	}
+
+	private static ErrorInformationWrapper check(Field field, List<String> values) {
+		switch (field.type) {
+			case "text":
+			case "editor":
+			case "email":
+			case "url":
+				int length = values.get(0).codePointCount(0, values.get(0).length());
+				if (field.max != null && field.max > 0 && length > field.max)
+					return new ErrorInformationWrapper(field.name, "validation_length_too_long", "The length must be no more than " + field.max.intValue() + ".");
+				if (field.min != null && field.min > 0 && length < field.min)
+					return new ErrorInformationWrapper(field.name, "validation_length_too_short", "The length must be no less than " + field.min.intValue() + ".");
+				return null;
+			case "number":
+				double number;
+				try {
+					number = Double.parseDouble(values.get(0));
+				} catch (NumberFormatException e) {
+					return new ErrorInformationWrapper(field.name, "validation_invalid_number", "Must be a valid number.");
+				}
+				if (field.min != null && number < field.min)
+					return new ErrorInformationWrapper(field.name, "validation_min_number_constraint", "Must be larger than " + format(field.min) + ".");
+				if (field.max != null && number > field.max)
+					return new ErrorInformationWrapper(field.name, "validation_max_number_constraint", "Must be less than " + format(field.max) + ".");
+				return null;
+			case "select":
+				for (String value : values) {
+					if (field.values != null && !field.values.contains(value))
+						return new ErrorInformationWrapper(field.name, "validation_invalid_value", "Invalid value " + value + ".");
+				}
+				return checkMaxSelect(field, values);
+			case "relation":
+				return checkMaxSelect(field, values);
+			case "file":
+				ErrorInformationWrapper error = checkMaxSelect(field, values);
+				if (error != null || field.maxSize == null)
+					return error;
+				for (String value : values) {
+					long size = localFileSize(value);
+					if (size > field.maxSize)
+						return new ErrorInformationWrapper(field.name, "validation_file_size_limit",
+								"Failed to upload " + Path.of(value).getFileName() + " - the maximum allowed file size is " + field.maxSize + " bytes.");
+				}
+				return null;
+			case "json":
+				if (field.maxSize != null && values.get(0).getBytes(StandardCharsets.UTF_8).length > field.maxSize)
+					return new ErrorInformationWrapper(field.name, "validation_json_size_limit", "The maximum allowed JSON size is " + field.maxSize + " bytes.");
+				return null;
+			default:
+				return null;
+		}
+	}
+
+	private static ErrorInformationWrapper checkMaxSelect(Field field, List<String> values) {
+		if (field.maxSelect != null && field.maxSelect > 0 && values.size() > field.maxSelect)
+			return new ErrorInformationWrapper(field.name, "validation_too_many_values", "Select no more than " + field.maxSelect + ".");
+		return null;
+	}
+
+	/**
+	 * Gets the size of a file to upload, -1 if the value is not a local file, like the name of a file already uploaded.
+	 */
+	private static long localFileSize(String value) {
+		try {
+			Path path = Path.of(value);
+			return Files.isRegularFile(path) ? Files.size(path) : -1;
+		} catch (InvalidPathException | IOException e) {
+			return -1;
+		}
+	}
+
+	private static String format(double number) {
+		return number == Math.rint(number) ? String.valueOf((long) number) : String.valueOf(number);
+	}
+
+	@Override
+	public String toString() {
+		return "PBSchema{" +
+				"name='" + name + '\'' +
+				", type='" + type + '\'' +
+				", fields=" + fields.values() +
+				'}';
+	}
+}
@@ -0,0 +1,109 @@
+package connector;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the schemas of the collections for a time, so they are read from the server only once in a while.<br><br>
+ * Set on a connection with {@link PocketBase#setSchemaCache(PBSchemaCache)}, the records created and updated are
+ * checked against the schema of their collection before they are sent, and the records read are decoded knowing
+ * the type of every field. The schemas can only be read by the admins, so the cache needs an admin token;
+ * a collection whose schema cannot be read is not checked, and is asked again only when the time expires.
+ * <pre>
+ * String token = pocketBase.adminAuthentication("admin@example.com", "password").getToken();
+ * pocketBase.setSchemaCache(new PBSchemaCache(pocketBase, token, Duration.ofMinutes(5)));
+ * </pre>
+ */
+public class PBSchemaCache {
+	private final PocketBase pocketBase;
+	private final String authToken;
+	private final long ttlNanos;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * A schema and when it expires, the schema is null if the collection cannot be read.
+	 */
+	private static final class Entry {
+		final PBSchema schema;
+		final long expires;
+
+		Entry(PBSchema schema, long expires) {
+			this.schema = schema;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Instantiates a new cache of schemas.
+	 *
+	 * @param pocketBase the connection used to read the schemas
+	 * @param authToken  the authorization token of an admin
+	 * @param ttl        how long a schema is kept
+	 */
+	public PBSchemaCache(PocketBase pocketBase, String authToken, Duration ttl) {
+		if (ttl.isNegative() || ttl.isZero())
+			throw new IllegalArgumentException("ttl must be positive: " + ttl);
+
+		this.pocketBase = pocketBase;
+		this.authToken = authToken;
+		this.ttlNanos = ttl.toNanos();
+	}
+
+	/**
+	 * Gets the schema of a collection, reading it if it is not cached or expired.
+	 *
+	 * @param collectionName the collection name
+	 * @return the schema
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBSchema get(String collectionName) throws IOException, PocketBaseException, InterruptedException {
+		Entry entry = entries.get(collectionName);
+		if (entry != null && entry.expires - System.nanoTime() > 0 && entry.schema != null)
+			return entry.schema;
+
+		PBSchema schema = pocketBase.readSchema(collectionName, authToken);
+		entries.put(collectionName, new Entry(schema, System.nanoTime() + ttlNanos));
+		return schema;
+	}
+
+	/**
+	 * Gets the schema of a collection, reading it if needed, or null if it cannot be read.
+	 * A collection that cannot be read is asked again only when the time expires, a server not reachable is asked again at the next call.
+	 */
+	PBSchema find(String collectionName) throws InterruptedException {
+		Entry entry = entries.get(collectionName);
+		if (entry != null && entry.expires - System.nanoTime() > 0)
+			return entry.schema;
+
+		try {
+			return get(collectionName);
+		} catch (PocketBaseException e) {
+			entries.put(collectionName, new Entry(null, System.nanoTime() + ttlNanos));
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the schema of a collection only if it is cached, never reading it.
+	 */
+	PBSchema peek(String collectionName) {
+		Entry entry = entries.get(collectionName);
+		return entry != null && entry.expires - System.nanoTime() > 0 ? entry.schema : null;
+	}
+
+	/**
+	 * Removes the schema of a collection, that will be read again when needed. Call it after changing the collection.
+	 */
+	public void invalidate(String collectionName) {
+		entries.remove(collectionName);
+	}
+
+	public void invalidateAll() {
+		entries.clear();
+	}
+}
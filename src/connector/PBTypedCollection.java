@@ -0,0 +1,69 @@
+package connector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of records decoded into objects of a user class, see {@link PocketBase#readAllObjects(String, String, PBQuery, Class)}.
+ */
+public class PBTypedCollection<T> {
+	private String page;
+	private String perPage;
+	private String totalPages;
+	private String totalItems;
+	private List<T> items = new ArrayList<>();
+
+	public PBTypedCollection() {
+	}
+
+	public String getPage() {
+		return page;
+	}
+
+	public void setPage(String page) {
+		this.page = page;
+	}
+
+	public String getPerPage() {
+		return perPage;
+	}
+
+	public void setPerPage(String perPage) {
+		this.perPage = perPage;
+	}
+
+	public String getTotalPages() {
+		return totalPages;
+	}
+
+	public void setTotalPages(String totalPages) {
+		this.totalPages = totalPages;
+	}
+
+	public String getTotalItems() {
+		return totalItems;
+	}
+
+	public void setTotalItems(String totalItems) {
+		this.totalItems = totalItems;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public void setItems(List<T> items) {
+		this.items = items;
+	}
+
+	@Override
+	public String toString() {
+		return "PBTypedCollection{" +
+				"page='" + page + '\'' +
+				", perPage='" + perPage + '\'' +
+				", totalPages='" + totalPages + '\'' +
+				", totalItems='" + totalItems + '\'' +
+				", items=" + items +
+				'}';
+	}
+}
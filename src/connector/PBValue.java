@@ -1,20 +1,29 @@
 package connector;
 
+import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * This class is used to store the possible values of a record.
  * The value can be a String or a List of Strings.
- * Only one of these values can be set at a time.
+ * Only one of these values can be set at a time.<br>
+ * A value remembers if it was changed after it was read from the server, with a setter or through the list returned
+ * by {@link #getList()}, so {@link PocketBase#updateRecord(PBRecord, String)} sends only the changed fields.
  */
 public class PBValue {
 	private String string;
 	private List<String> stringList;
+	// The view of the list given to the callers, that marks the value as changed
+	private List<String> trackedList;
+	private boolean changed = false;
 
 	// TODO: Add support for relations
 
@@ -23,12 +32,32 @@ public class PBValue {
 		stringList = null;
 	}
 
+	/**
+	 * Builds a string value read from the server, not changed.
+	 */
+	static PBValue loaded(String string) {
+		PBValue value = new PBValue();
+		value.string = string;
+		return value;
+	}
+
+	/**
+	 * Builds a list value read from the server, not changed.
+	 */
+	static PBValue loaded(List<String> stringList) {
+		PBValue value = new PBValue();
+		value.stringList = stringList;
+		return value;
+	}
+
 	/**
 	 * Set the value of this object to a String.
 	 */
 	public PBValue setString(String string) {
 		this.stringList = null;
+		this.trackedList = null;
 		this.string = string;
+		this.changed = true;
 		return this;
 	}
 
@@ -37,7 +66,9 @@ public class PBValue {
 	 */
 	public PBValue setList(List<String> stringList) {
 		this.string = null;
+		this.trackedList = null;
 		this.stringList = stringList;
+		this.changed = true;
 		return this;
 	}
 
@@ -50,9 +81,67 @@ public class PBValue {
 
 	/**
 	 * Get the value of this object as a List of Strings.
+	 * The changes to the list are changes to the value.
 	 */
 	public List<String> getList() {
-		return stringList;
+		if (stringList == null)
+			return null;
+		if (trackedList == null)
+			trackedList = new TrackedList();
+		return trackedList;
+	}
+
+	/**
+	 * Checks if the value was changed after it was read from the server. A value built by the caller is always changed.
+	 */
+	public boolean isChanged() {
+		return changed;
+	}
+
+	/**
+	 * Marks the value as equal to the one on the server, after it was sent.
+	 */
+	void markUnchanged() {
+		changed = false;
+	}
+
+	/**
+	 * The list of the value, marking it as changed when it is modified.
+	 */
+	private final class TrackedList extends AbstractList<String> implements RandomAccess {
+		@Override
+		public String get(int index) {
+			return stringList.get(index);
+		}
+
+		@Override
+		public int size() {
+			return stringList.size();
+		}
+
+		@Override
+		public String set(int index, String element) {
+			changed = true;
+			return stringList.set(index, element);
+		}
+
+		@Override
+		public void add(int index, String element) {
+			changed = true;
+			stringList.add(index, element);
+		}
+
+		@Override
+		public String remove(int index) {
+			changed = true;
+			return stringList.remove(index);
+		}
+
+		@Override
+		public void clear() {
+			changed = true;
+			stringList.clear();
+		}
 	}
 
 	public static boolean isString(PBValue value) {
@@ -91,6 +180,9 @@ public class PBValue {
 						out.value(str);
 					}
 					out.endArray();
+				} else {
+					// NULL, like a field read as null
+					out.nullValue();
 				}
 			} else {
 				out.nullValue();
@@ -99,7 +191,41 @@ public class PBValue {
 
 		@Override
 		public PBValue read(JsonReader in) throws IOException {
-			return null;
+			switch (in.peek()) {
+				case NULL:
+					in.nextNull();
+					return null;
+				case BEGIN_ARRAY:
+					// STRING LIST
+					List<String> list = new ArrayList<>();
+					in.beginArray();
+					while (in.hasNext()) {
+						list.add(readString(in));
+					}
+					in.endArray();
+					return loaded(list);
+				default:
+					// STRING
+					return loaded(readString(in));
+			}
+		}
+
+		/**
+		 * Reads a value as a string: numbers and booleans as their text, objects as JSON.
+		 */
+		private static String readString(JsonReader in) throws IOException {
+			switch (in.peek()) {
+				case NULL:
+					in.nextNull();
+					return null;
+				case BOOLEAN:
+					return String.valueOf(in.nextBoolean());
+				case BEGIN_OBJECT:
+				case BEGIN_ARRAY:
+					return JsonParser.parseReader(in).toString();
+				default:
+					return in.nextString();
+			}
 		}
 	}
 }
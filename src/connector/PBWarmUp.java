@@ -0,0 +1,203 @@
+package connector;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Prepares a connection for its first requests: the classes used are loaded, the address is resolved and the
+ * connections are opened before they are needed, which matters for short-lived processes.<br><br>
+ * The warm-up runs the encoding and decoding of the records with a sample response, opens the connections with
+ * concurrent health checks, then optionally authenticates and reads one record of a collection.
+ * The connections stay open in the pool of the connection while they are used, and are closed by the JDK
+ * after they are idle for <code>jdk.httpclient.keepalive.timeout</code> seconds.
+ * Over HTTP/2 all the requests share a single connection.
+ * <pre>
+ * PBWarmUp.Result warmUp = new PBWarmUp(pocketBase)
+ *         .connections(4)
+ *         .adminAuthentication("admin@example.com", "password")
+ *         .collection("posts")
+ *         .run();
+ *
+ * String token = warmUp.getToken();
+ * </pre>
+ */
+public class PBWarmUp {
+	private final PocketBase pocketBase;
+	private int connections = 1;
+	private String collectionName = null;
+	private Class<?>[] types = {};
+
+	// The authentication, identity null if not needed
+	private boolean admin = false;
+	private String usersCollectionName = null;
+	private String identity = null;
+	private String password = null;
+
+	/**
+	 * Instantiates a new warm-up of a connection, that only opens one connection. Prefer {@link PocketBase#warmUp(int)}
+	 * if there is nothing else to configure.
+	 *
+	 * @param pocketBase the connection to warm up
+	 */
+	public PBWarmUp(PocketBase pocketBase) {
+		this.pocketBase = pocketBase;
+	}
+
+	/**
+	 * Sets the number of connections opened, default 1.
+	 */
+	public PBWarmUp connections(int connections) {
+		if (connections <= 0)
+			throw new IllegalArgumentException("connections must be positive: " + connections);
+		this.connections = connections;
+		return this;
+	}
+
+	/**
+	 * Authenticates as an admin, the token is in the result.
+	 */
+	public PBWarmUp adminAuthentication(String identity, String password) {
+		this.admin = true;
+		this.usersCollectionName = null;
+		this.identity = identity;
+		this.password = password;
+		return this;
+	}
+
+	/**
+	 * Authenticates as a user, the token is in the result.
+	 */
+	public PBWarmUp userAuthentication(String usersCollectionName, String identity, String password) {
+		this.admin = false;
+		this.usersCollectionName = usersCollectionName;
+		this.identity = identity;
+		this.password = password;
+		return this;
+	}
+
+	/**
+	 * Reads one record of a collection, with the token if authenticated, to run the whole path of a request.
+	 */
+	public PBWarmUp collection(String collectionName) {
+		this.collectionName = collectionName;
+		return this;
+	}
+
+	/**
+	 * Builds the mapping of the classes used with the typed methods, like {@link PocketBase#readAllObjects(String, PBQuery, Class)}.
+	 */
+	public PBWarmUp types(Class<?>... types) {
+		this.types = types.clone();
+		return this;
+	}
+
+	/**
+	 * Runs the warm-up.
+	 *
+	 * @return the result of the warm-up
+	 * @throws PocketBaseException the server is not healthy, or the authentication or the read failed
+	 * @throws IOException         the database is unreachable
+	 */
+	public Result run() throws IOException, PocketBaseException, InterruptedException {
+		long start = System.nanoTime();
+
+		pocketBase.exerciseCodecs();
+		for (Class<?> type : types) {
+			PBMapper.of(type);
+		}
+
+		// The first request resolves the address and chooses the protocol, the others open the remaining connections
+		pocketBase.health();
+		if (connections > 1) {
+			CompletableFuture<?>[] checks = new CompletableFuture<?>[connections];
+			for (int i = 0; i < connections; i++) {
+				checks[i] = pocketBase.healthAsync();
+			}
+			join(CompletableFuture.allOf(checks));
+		}
+
+		// The replicas receive reads too, a replica that is down is left to the health checks
+		PBEndpoints endpoints = pocketBase.getEndpoints();
+		if (endpoints != null) {
+			List<CompletableFuture<?>> checks = new ArrayList<>();
+			for (PBEndpoints.Endpoint endpoint : endpoints.getEndpoints()) {
+				for (int i = 0; i < connections && !endpoint.isPrimary(); i++) {
+					checks.add(pocketBase.healthAsync(endpoint.getAddress(), null).exceptionally(error -> null));
+				}
+			}
+			join(CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])));
+		}
+
+		String token = null;
+		if (identity != null) {
+			token = admin
+					? pocketBase.adminAuthentication(identity, password).getToken()
+					: pocketBase.userAuthentication(usersCollectionName, identity, password).getToken();
+		}
+
+		if (collectionName != null)
+			pocketBase.readAllRecords(collectionName, token, new PBQuery().perPage(1).skipTotal(true));
+
+		return new Result(connections, token, Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	private static void join(CompletableFuture<?> future) throws IOException, PocketBaseException, InterruptedException {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof PocketBaseException)
+				throw (PocketBaseException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * The result of a warm-up.
+	 */
+	public static class Result {
+		private final int connections;
+		private final String token;
+		private final Duration elapsed;
+
+		Result(int connections, String token, Duration elapsed) {
+			this.connections = connections;
+			this.token = token;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Gets the number of connections requested. Fewer can be opened, if a health check ended before another started.
+		 */
+		public int getConnections() {
+			return connections;
+		}
+
+		/**
+		 * Gets the authorization token, null if the warm-up did not authenticate.
+		 */
+		public String getToken() {
+			return token;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return "Result{" +
+					"connections=" + connections +
+					", authenticated=" + (token != null) +
+					", elapsed=" + elapsed +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,557 @@
+package connector;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Writes records in the background: the mutations are appended to a journal on the disk and the methods return immediately,
+ * then they are sent to PocketBase in batches, also after a network failure or a restart of the application.<br><br>
+ * The mutations of the same record are always sent in the order they were queued, the ones of different records
+ * are sent by <code>concurrency</code> threads at the same time. A mutation is sent at least once: after a crash,
+ * the ones not yet checkpointed are sent again, and the creation of a record that already exists or the deletion
+ * of a missing one are considered done.<br>
+ * The mutations refused by PocketBase, for example because of a failed validation or a missing record (400, 404 and
+ * the other 4xx codes), are given to the {@link RejectListener} and removed from the journal. The unreachable or overloaded
+ * server (429 and 5xx) and the authorization failures (401 and 403) are not permanent: the lane pauses and sends the same
+ * mutations again, with the token given by the supplier at that time, so an expired token can be replaced without losing them.
+ * <pre>
+ * try (PBWriteBehindQueue queue = new PBWriteBehindQueue(pocketBase, Path.of("pb-journal"))) {
+ *     String id = queue.createRecord("posts", values);
+ *     queue.updateRecord("posts", id, updatedValues);
+ *     queue.flush(Duration.ofSeconds(10));
+ * }
+ * </pre>
+ */
+public class PBWriteBehindQueue implements Closeable {
+	private static final Type VALUES_TYPE = new TypeToken<Map<String, PBValue>>() {}.getType();
+	private static final String ID_ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+	private static final long MIN_BACKOFF_MILLIS = 250;
+	private static final long MAX_BACKOFF_MILLIS = 30_000;
+	private static final long MAINTENANCE_MILLIS = 1000;
+
+	/**
+	 * Receives the mutations refused by PocketBase, that are not sent again.
+	 */
+	@FunctionalInterface
+	public interface RejectListener {
+		/**
+		 * Called by a background thread.
+		 *
+		 * @param request   the refused mutation
+		 * @param exception the error returned by PocketBase
+		 */
+		void onReject(PBBatchRequest request, PocketBaseException exception);
+	}
+
+	/**
+	 * The mutations waiting to be sent by one thread, in order.
+	 */
+	private class Lane implements Runnable {
+		private final ArrayDeque<PBJournal.Entry> entries = new ArrayDeque<>();
+
+		synchronized void add(PBJournal.Entry entry) {
+			entries.addLast(entry);
+			notifyAll();
+		}
+
+		/**
+		 * Waits for some mutations and returns the first ones, without removing them.
+		 */
+		synchronized List<PBJournal.Entry> peek(int count) throws InterruptedException {
+			while (entries.isEmpty()) {
+				wait();
+			}
+
+			List<PBJournal.Entry> first = new ArrayList<>(Math.min(count, entries.size()));
+			for (PBJournal.Entry entry : entries) {
+				if (first.size() == count)
+					break;
+				first.add(entry);
+			}
+			return first;
+		}
+
+		/**
+		 * Removes the first mutation, that is done.
+		 */
+		void done(PBJournal.Entry entry) {
+			synchronized (this) {
+				entries.removeFirst();
+			}
+			completed(entry.sequence);
+		}
+
+		@Override
+		public void run() {
+			long backoff = MIN_BACKOFF_MILLIS;
+			int attempt = 1;
+			try {
+				while (!closed) {
+					List<PBJournal.Entry> entries = peek(batchSize);
+					try {
+						send(this, entries);
+						backoff = MIN_BACKOFF_MILLIS;
+						attempt = 1;
+					} catch (IOException | PocketBaseException | RuntimeException e) {
+						// PocketBase unreachable or overloaded, the token refused, or an unexpected error: the same mutations are sent again later.
+						// A mutation that cannot be sent is rejected by send, so the lane never stops with mutations pending
+						attempt++;
+						PBJournal.Entry first = entries.get(0);
+						PBEvents.retry(operationOf(first.type), first.collectionName, attempt, e.getClass().getSimpleName());
+						Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+						backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+					}
+				}
+			} catch (InterruptedException e) {
+				// Closed, the mutations not sent stay in the journal
+			}
+		}
+	}
+
+	private final PocketBase pocketBase;
+	private final Supplier<String> authToken;
+	private final int batchSize;
+	private final PBJournal journal;
+	private final Lane[] lanes;
+	private final Thread[] threads;
+	private final ScheduledExecutorService maintenance;
+	private volatile RejectListener rejectListener = (request, exception) -> {};
+	private volatile boolean syncWrites = false;
+	private volatile boolean batchSupported = true;
+	private volatile boolean closed = false;
+
+	// The sequences done after the watermark, that is the last sequence with all the previous ones done
+	private final Object progress = new Object();
+	private final TreeSet<Long> done = new TreeSet<>();
+	private long watermark;
+	private long pending = 0;
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Opens a queue, sending again the mutations left in the journal by a previous run.
+	 *
+	 * @param pocketBase  the connection used to send the mutations
+	 * @param directory   the directory of the journal, one for each queue
+	 * @param authToken   gives the authorization token, or null for none, before every request; called by the sending
+	 *                    threads, it can return a refreshed token after a 401 or 403
+	 * @param concurrency the number of threads sending the mutations
+	 * @param batchSize   the maximum number of mutations in a batch request, 1 to never use batches
+	 * @throws IOException the journal cannot be read or written
+	 */
+	public PBWriteBehindQueue(PocketBase pocketBase, Path directory, Supplier<String> authToken, int concurrency, int batchSize) throws IOException {
+		if (concurrency < 1 || batchSize < 1)
+			throw new IllegalArgumentException("The concurrency and the batch size must be at least 1");
+
+		this.pocketBase = pocketBase;
+		this.authToken = authToken;
+		this.batchSize = batchSize;
+		this.journal = new PBJournal(directory, PBJournal.DEFAULT_SEGMENT_SIZE);
+		this.watermark = journal.getCheckpoint();
+
+		this.lanes = new Lane[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			lanes[i] = new Lane();
+		}
+		for (PBJournal.Entry entry : journal.recovered()) {
+			pending++;
+			laneOf(entry.collectionName, entry.recordId).add(entry);
+		}
+
+		this.threads = new Thread[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			threads[i] = new Thread(lanes[i], "pb-write-behind-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+
+		this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pb-write-behind-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maintenance.scheduleWithFixedDelay(this::checkpoint, MAINTENANCE_MILLIS, MAINTENANCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens a queue with a fixed token. When it expires the mutations wait in the journal, see
+	 * {@link #PBWriteBehindQueue(PocketBase, Path, Supplier, int, int)} to refresh it.
+	 *
+	 * @param pocketBase  the connection used to send the mutations
+	 * @param directory   the directory of the journal, one for each queue
+	 * @param authToken   the authorization token, null for none
+	 * @param concurrency the number of threads sending the mutations
+	 * @param batchSize   the maximum number of mutations in a batch request, 1 to never use batches
+	 * @throws IOException the journal cannot be read or written
+	 */
+	public PBWriteBehindQueue(PocketBase pocketBase, Path directory, String authToken, int concurrency, int batchSize) throws IOException {
+		this(pocketBase, directory, () -> authToken, concurrency, batchSize);
+	}
+
+	/**
+	 * Opens a queue without authorization, with 4 threads and batches of 50 mutations.
+	 *
+	 * @param pocketBase the connection used to send the mutations
+	 * @param directory  the directory of the journal, one for each queue
+	 * @throws IOException the journal cannot be read or written
+	 */
+	public PBWriteBehindQueue(PocketBase pocketBase, Path directory) throws IOException {
+		this(pocketBase, directory, (String) null, 4, 50);
+	}
+
+	public void setRejectListener(RejectListener rejectListener) {
+		this.rejectListener = rejectListener;
+	}
+
+	/**
+	 * Sets if every mutation is written to the disk before returning, default false.<br>
+	 * Without it the queued mutations survive a crash of the application, but not a crash of the operating system.
+	 */
+	public void setSyncWrites(boolean syncWrites) {
+		this.syncWrites = syncWrites;
+	}
+
+	/**
+	 * Queues the creation of a record. The id is generated here, unless it is in the values,
+	 * so the record can be updated or deleted before it is sent.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordValues   the map containing the values to insert
+	 * @return the id of the new record
+	 * @throws IOException the journal cannot be written
+	 */
+	public String createRecord(String collectionName, Map<String, PBValue> recordValues) throws IOException {
+		Map<String, PBValue> values = new HashMap<>(recordValues);
+		PBValue id = values.get("id");
+		if (id == null || id.getString() == null) {
+			id = new PBValue().setString(newId());
+			values.put("id", id);
+		}
+
+		enqueue(PBJournal.Type.CREATE, collectionName, id.getString(), pocketBase.gson.toJson(values, VALUES_TYPE));
+		return id.getString();
+	}
+
+	/**
+	 * Queues the update of a record.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param updatedValues  the updated values of the record
+	 * @throws IOException the journal cannot be written
+	 */
+	public void updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues) throws IOException {
+		enqueue(PBJournal.Type.UPDATE, collectionName, recordId, pocketBase.gson.toJson(updatedValues, VALUES_TYPE));
+	}
+
+	/**
+	 * Queues the deletion of a record.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record to delete
+	 * @throws IOException the journal cannot be written
+	 */
+	public void deleteRecord(String collectionName, String recordId) throws IOException {
+		enqueue(PBJournal.Type.DELETE, collectionName, recordId, null);
+	}
+
+	private synchronized void enqueue(PBJournal.Type type, String collectionName, String recordId, String body) throws IOException {
+		if (closed)
+			throw new IllegalStateException("The write-behind queue is closed");
+
+		// Synchronized, so the lanes get the mutations of a record in the order of the journal
+		PBJournal.Entry entry = journal.append(type, collectionName, recordId, body, syncWrites);
+		synchronized (progress) {
+			pending++;
+		}
+		laneOf(collectionName, recordId).add(entry);
+	}
+
+	/**
+	 * Waits until all the queued mutations are sent or rejected.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @return true if the queue is empty, false if the time ran out
+	 */
+	public boolean flush(Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		synchronized (progress) {
+			while (pending > 0) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0)
+					return false;
+				progress.wait(remaining);
+			}
+		}
+		checkpoint();
+		return true;
+	}
+
+	/**
+	 * Waits until all the queued mutations are sent or rejected.
+	 */
+	public void flush() throws InterruptedException {
+		synchronized (progress) {
+			while (pending > 0) {
+				progress.wait();
+			}
+		}
+		checkpoint();
+	}
+
+	/**
+	 * Gets the number of mutations queued and not sent yet.
+	 */
+	public long getPending() {
+		synchronized (progress) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Gets the number of mutations sent since the opening.
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * Gets the number of mutations refused by PocketBase since the opening.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Stops the threads and closes the journal. The mutations not sent yet are sent when the queue is opened again,
+	 * call {@link #flush()} before to send them now.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+
+		maintenance.shutdownNow();
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		checkpoint();
+		journal.close();
+	}
+
+	private Lane laneOf(String collectionName, String recordId) {
+		int hash = 31 * collectionName.hashCode() + recordId.hashCode();
+		return lanes[Math.floorMod(hash, lanes.length)];
+	}
+
+	/**
+	 * Sends some mutations, in a batch if possible, removing them from the lane once done.
+	 *
+	 * @throws IOException         PocketBase is unreachable, the remaining mutations must be sent again
+	 * @throws PocketBaseException PocketBase is overloaded, the remaining mutations must be sent again
+	 */
+	private void send(Lane lane, List<PBJournal.Entry> entries) throws IOException, PocketBaseException, InterruptedException {
+		if (entries.size() > 1 && batchSupported) {
+			try {
+				List<PBBatchRequest> requests = new ArrayList<>(entries.size());
+				for (PBJournal.Entry entry : entries) {
+					requests.add(toRequest(entry));
+				}
+
+				pocketBase.batch(requests, authToken.get());
+				for (PBJournal.Entry entry : entries) {
+					sent.increment();
+					lane.done(entry);
+				}
+				return;
+			} catch (PocketBaseException e) {
+				if (isRetryable(e) || e.getCode() == 401)
+					throw e;
+				// Batches disabled, or not allowed to this token: the single requests tell which one
+				if (e.getCode() == 403 || e.getCode() == 404)
+					batchSupported = false;
+				// Otherwise one of the mutations is refused, and the batch is rolled back: they are sent one by one to find it
+			} catch (RuntimeException e) {
+				// A journal body that cannot be decoded, or an unexpected response: sent one by one to find the culprit
+			}
+		}
+
+		for (PBJournal.Entry entry : entries) {
+			sendOne(entry);
+			lane.done(entry);
+		}
+	}
+
+	private void sendOne(PBJournal.Entry entry) throws IOException, PocketBaseException, InterruptedException {
+		String token = authToken.get();
+		try {
+			switch (entry.type) {
+				case CREATE:
+					pocketBase.createRecord(entry.collectionName, values(entry), token);
+					break;
+				case UPDATE:
+					pocketBase.updateRecord(entry.collectionName, entry.recordId, values(entry), token);
+					break;
+				case DELETE:
+					pocketBase.deleteRecord(entry.collectionName, entry.recordId, token);
+					break;
+			}
+			sent.increment();
+		} catch (PocketBaseException e) {
+			// PocketBase refuses a rule with 400 or 404, so a 403 is the token: it waits for a valid one like a 401
+			if (isRetryable(e) || e.getCode() == 401 || e.getCode() == 403)
+				throw e;
+			if (!alreadyApplied(entry, e))
+				reject(entry, e);
+		} catch (RuntimeException e) {
+			// Sending it again would fail the same way, and block the mutations after it
+			reject(entry, new PocketBaseException(400, "The mutation cannot be sent: " + e.getClass().getSimpleName() + "."));
+		}
+	}
+
+	/**
+	 * Gives a refused mutation to the listener, it is then removed from the journal like the sent ones.
+	 */
+	private void reject(PBJournal.Entry entry, PocketBaseException exception) {
+		rejected.increment();
+		try {
+			rejectListener.onReject(toRejectedRequest(entry), exception);
+		} catch (RuntimeException e) {
+			// A failing listener must not stop the lane
+		}
+	}
+
+	/**
+	 * Checks if a refused mutation was already applied, by a send interrupted by a crash before the checkpoint.
+	 */
+	private boolean alreadyApplied(PBJournal.Entry entry, PocketBaseException exception) throws IOException, InterruptedException {
+		switch (entry.type) {
+			case CREATE:
+				if (exception.getCode() != 400)
+					return false;
+				try {
+					pocketBase.readOneRecord(entry.collectionName, entry.recordId, authToken.get());
+					return true;
+				} catch (PocketBaseException e) {
+					return false;
+				}
+			case DELETE:
+				return exception.getCode() == 404;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isRetryable(PocketBaseException exception) {
+		return exception.getCode() == 429 || exception.getCode() >= 500;
+	}
+
+	private void completed(long sequence) {
+		synchronized (progress) {
+			done.add(sequence);
+			while (!done.isEmpty() && done.first() == watermark + 1) {
+				watermark = done.pollFirst();
+			}
+			pending--;
+			progress.notifyAll();
+		}
+	}
+
+	/**
+	 * Saves the progress and deletes the journal segments already sent.
+	 */
+	private void checkpoint() {
+		long sequence;
+		synchronized (progress) {
+			sequence = watermark;
+		}
+
+		try {
+			journal.checkpoint(sequence);
+			journal.compact(sequence);
+		} catch (IOException e) {
+			// Tried again at the next round, in the meantime a crash would only send some mutations again
+		}
+	}
+
+	private Map<String, PBValue> values(PBJournal.Entry entry) {
+		return pocketBase.gson.fromJson(entry.body, VALUES_TYPE);
+	}
+
+	private PBBatchRequest toRequest(PBJournal.Entry entry) {
+		switch (entry.type) {
+			case CREATE:
+				return PBBatchRequest.create(entry.collectionName, values(entry));
+			case UPDATE:
+				return PBBatchRequest.update(entry.collectionName, entry.recordId, values(entry));
+			default:
+				return PBBatchRequest.delete(entry.collectionName, entry.recordId);
+		}
+	}
+
+	/**
+	 * Builds the request of a refused mutation, without the values if its body cannot be decoded.
+	 */
+	private PBBatchRequest toRejectedRequest(PBJournal.Entry entry) {
+		try {
+			return toRequest(entry);
+		} catch (RuntimeException e) {
+			return entry.type == PBJournal.Type.CREATE
+					? PBBatchRequest.create(entry.collectionName, null)
+					: entry.type == PBJournal.Type.UPDATE
+					? PBBatchRequest.update(entry.collectionName, entry.recordId, null)
+					: PBBatchRequest.delete(entry.collectionName, entry.recordId);
+		}
+	}
+
+	private static PBOperation operationOf(PBJournal.Type type) {
+		switch (type) {
+			case CREATE:
+				return PBOperation.CREATE;
+			case UPDATE:
+				return PBOperation.UPDATE;
+			default:
+				return PBOperation.DELETE;
+		}
+	}
+
+	/**
+	 * Generates an id like the ones of PocketBase: 15 lowercase letters and digits. Also used by {@link PBImporter}.
+	 */
+	static String newId() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		char[] id = new char[15];
+		for (int i = 0; i < id.length; i++) {
+			id[i] = ID_ALPHABET.charAt(random.nextInt(ID_ALPHABET.length()));
+		}
+		return new String(id);
+	}
+}
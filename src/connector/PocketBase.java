@@ -1,20 +1,34 @@
 package connector;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,12 +36,24 @@ import java.util.regex.Pattern;
  * A class with all the methods to operate on <a href="https://pocketbase.io/">PocketBase</a> collections and records.
  */
 public class PocketBase {
+	// Keeps the filter of a prefetch request well below the URL length limit of most servers
+	private static final int PREFETCH_IDS_PER_REQUEST = 100;
+
 	private final String address;
-	private final Gson gson = new GsonBuilder()
+	// Shared by all the requests, so the connections are kept open and reused
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+	// Package-private, like the decoding methods below, for the benchmarks
+	final Gson gson = new GsonBuilder()
 			.setPrettyPrinting()
 			.registerTypeAdapter(PBValue.class, new PBValue.PBValuesTypeAdapter())
 			.serializeNulls()
 			.create();
+	private volatile PBMetrics metrics = PBMetrics.NONE;
+	private volatile boolean lazyRecords = false;
+	private volatile PBSchemaCache schemaCache = null;
+	private volatile PBHedging hedging = null;
+	private volatile PBQueryCache queryCache = null;
+	private final PBEndpoints endpoints;
 
 	/**
 	 * Instantiates a new PocketBase connection.
@@ -36,14 +62,110 @@ public class PocketBase {
 	 */
 	public PocketBase(String address) {
 		this.address = address;
+		this.endpoints = null;
+	}
+
+	/**
+	 * Instantiates a new PocketBase connection to a primary and its replicas: the writes go to the primary,
+	 * the reads to the fastest healthy endpoint. See {@link PBEndpoints}.
+	 *
+	 * @param endpoints the endpoints of the database
+	 */
+	public PocketBase(PBEndpoints endpoints) {
+		this.address = endpoints.getPrimary().getAddress();
+		this.endpoints = endpoints;
+		endpoints.start(this);
 	}
 
 	// ================  METHODS ================
 
+	/**
+	 * Gets the address of the database, the primary one if there are replicas.
+	 */
 	public String getAddress() {
 		return address;
 	}
 
+	/**
+	 * Gets the endpoints of the database, null if there is only one address.
+	 */
+	public PBEndpoints getEndpoints() {
+		return endpoints;
+	}
+
+	public PBMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics that receive a measurement for every exchange with the server.
+	 *
+	 * @param metrics the metrics, null to disable them
+	 */
+	public void setMetrics(PBMetrics metrics) {
+		this.metrics = metrics != null ? metrics : PBMetrics.NONE;
+	}
+
+	public boolean isLazyRecords() {
+		return lazyRecords;
+	}
+
+	/**
+	 * Sets if the values of the records read are decoded only when they are requested, default false.<br><br>
+	 * A lazy record keeps the response and the position of every value in it, and {@link PBRecord#getValues()}
+	 * decodes a value the first time it is read: reading only a few fields of wide records costs much less.
+	 * The response is kept until all the records of the page are unreachable or changed, since changing
+	 * or iterating over the values decodes all of them.
+	 *
+	 * @param lazyRecords true to decode the values when they are requested
+	 */
+	public void setLazyRecords(boolean lazyRecords) {
+		this.lazyRecords = lazyRecords;
+	}
+
+	public PBSchemaCache getSchemaCache() {
+		return schemaCache;
+	}
+
+	/**
+	 * Sets the cache of the schemas of the collections. With a cache the values of the records are checked before they are
+	 * sent, throwing the same {@link PocketBaseException} of the server without sending them if they are not valid,
+	 * and the records read are decoded knowing the type of every field. Lazy records, if set, are still lazy.
+	 *
+	 * @param schemaCache the cache, null to stop checking the records
+	 */
+	public void setSchemaCache(PBSchemaCache schemaCache) {
+		this.schemaCache = schemaCache;
+	}
+
+	public PBHedging getHedging() {
+		return hedging;
+	}
+
+	/**
+	 * Sets the hedging of the reads: a <code>readAllRecords</code> or <code>readOneRecord</code> slower than usual is sent again,
+	 * and the first answer is taken. See {@link PBHedging}.
+	 *
+	 * @param hedging the hedging, null to send every read once
+	 */
+	public void setHedging(PBHedging hedging) {
+		this.hedging = hedging;
+	}
+
+	public PBQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the cache of the pages read: a <code>readAllRecords</code> or <code>count</code> asked again with the same query
+	 * and token is answered without the server, until its collection is changed by this connection. See {@link PBQueryCache}.
+	 *
+	 * @param queryCache the cache, null to read every page from the server
+	 */
+	public void setQueryCache(PBQueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
 	/**
 	 * Extracts all the words from a string that match a regex.
 	 *
@@ -70,31 +192,237 @@ public class PocketBase {
 	}
 
 	/**
-	 * Handles and returns the response of the HTTP request.
+	 * Sends the HTTP request, handles the response and decodes it.<br>
+	 * Every exchange is reported to the {@link PBMetrics} of this connection and to the flight recorder, see {@link PBEvents}.
 	 *
+	 * @param operation      the operation, for the metrics
+	 * @param collectionName the collection name, for the metrics
 	 * @param requestBuilder the request builder
-	 * @return the json string response of the HTTP request
+	 * @param decoder        decodes the json string response, a successful delete request gets "204"
+	 * @return the decoded response of the HTTP request
 	 */
-	private String handleResponse(HttpRequest.Builder requestBuilder) throws IOException, InterruptedException, PocketBaseException {
-		// Build the request
-		HttpRequest request = requestBuilder.build();
+	private <T> T handleResponse(PBOperation operation, String collectionName, HttpRequest.Builder requestBuilder, Function<String, T> decoder) throws IOException, InterruptedException, PocketBaseException {
+		// Inside a call the request is sent without blocking, so another thread can abort it
+		PBCall call = PBCall.current();
+		if (call != null)
+			return call.await(handleResponseAsync(operation, collectionName, requestBuilder, decoder));
+
+		Exchange exchange = new Exchange(operation, collectionName, requestBuilder.build());
 
 		// Send the request and get the response
-		HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+		HttpResponse<byte[]> response;
+		try {
+			response = httpClient.send(exchange.request, exchange.bodyHandler());
+		} catch (IOException | InterruptedException e) {
+			exchange.failed(e);
+			throw e;
+		}
+
+		return exchange.decode(response, decoder);
+	}
+
+	/**
+	 * Sends the HTTP request without waiting, like {@link #handleResponse(PBOperation, String, HttpRequest.Builder, Function)}.<br>
+	 * Cancelling the future aborts the HTTP exchange, and so does the end of the current {@link PBCall}.
+	 *
+	 * @return the future decoded response, completed exceptionally with a {@link PocketBaseException} or an {@link IOException} in case of error
+	 */
+	private <T> CompletableFuture<T> handleResponseAsync(PBOperation operation, String collectionName, HttpRequest.Builder requestBuilder, Function<String, T> decoder) {
+		PBCall call = PBCall.current();
+		if (call != null) {
+			try {
+				call.timeout(requestBuilder);
+			} catch (IOException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+
+		Exchange exchange = new Exchange(operation, collectionName, requestBuilder.build());
+		CompletableFuture<HttpResponse<byte[]>> sent = httpClient.sendAsync(exchange.request, exchange.bodyHandler());
+
+		CompletableFuture<T> result = new CompletableFuture<>();
+		sent.whenComplete((response, error) -> {
+			if (error != null) {
+				exchange.failed(error);
+				result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+				return;
+			}
+			try {
+				result.complete(exchange.decode(response, decoder));
+			} catch (PocketBaseException | RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		result.whenComplete((value, error) -> {
+			if (result.isCancelled())
+				sent.cancel(true);
+		});
+
+		if (call != null) {
+			Runnable canceller = () -> {
+				result.completeExceptionally(call.failure());
+				sent.cancel(true);
+			};
+			if (call.register(canceller))
+				result.whenComplete((value, error) -> call.unregister(canceller));
+			else
+				canceller.run();
+		}
+		return result;
+	}
+
+	/**
+	 * Sends a request that is safe to send twice, like {@link #handleResponse(PBOperation, String, HttpRequest.Builder, Function)},
+	 * hedged if {@link #setHedging(PBHedging)} is set.
+	 */
+	private <T> T handleRead(PBOperation operation, String collectionName, HttpRequest.Builder requestBuilder, Function<String, T> decoder) throws IOException, InterruptedException, PocketBaseException {
+		PBHedging hedging = this.hedging;
+		if (hedging == null)
+			return handleResponse(operation, collectionName, requestBuilder, decoder);
+		return hedging.read(operation, collectionName, () -> handleResponseAsync(operation, collectionName, requestBuilder, decoder));
+	}
+
+	/**
+	 * Chooses the endpoint of a request: a read goes to the best endpoint, everything else to the primary.
+	 *
+	 * @return the endpoint, null with a single address or for a request to a specific endpoint
+	 */
+	private PBEndpoints.Endpoint route(PBOperation operation, HttpRequest request) {
+		if (endpoints == null || !request.uri().toString().startsWith(address))
+			return null;
+		switch (operation) {
+			case READ_ALL:
+			case READ_ONE:
+			case SCHEMA:
+				return endpoints.chooseRead();
+			case HEALTH:
+				return null;
+			default:
+				return endpoints.getPrimary();
+		}
+	}
+
+	/**
+	 * Copies a request to the primary, sending it to another endpoint.
+	 */
+	private HttpRequest redirect(HttpRequest request, String endpointAddress) {
+		URI uri = URI.create(endpointAddress + request.uri().toString().substring(address.length()));
+		return HttpRequest.newBuilder(request, (name, value) -> true).uri(uri).build();
+	}
 
-		int statusCode = response.statusCode();
+	/**
+	 * The state of an HTTP exchange, measured for the metrics and the flight recorder.
+	 */
+	private final class Exchange {
+		final PBOperation operation;
+		final String collectionName;
+		final HttpRequest request;
+		final long requestBytes;
+
+		// Flight recorder events, almost free when the recorder is off
+		final PBEvents.Send sendEvent = new PBEvents.Send();
+		final PBEvents.Receive receiveEvent = new PBEvents.Receive();
+		final long start;
+		volatile long firstByte;
+
+		// The endpoint that receives the request, null with a single address
+		final PBEndpoints.Endpoint endpoint;
+
+		Exchange(PBOperation operation, String collectionName, HttpRequest request) {
+			this.operation = operation;
+			this.collectionName = collectionName;
+			this.endpoint = route(operation, request);
+			this.request = endpoint == null || endpoint.isPrimary() ? request : redirect(request, endpoint.getAddress());
+			this.requestBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+			this.start = System.nanoTime();
+			if (endpoint != null)
+				endpoints.onStart(endpoint);
+			sendEvent.begin();
+		}
+
+		/**
+		 * The body handler is called as soon as the headers are received.
+		 */
+		HttpResponse.BodyHandler<byte[]> bodyHandler() {
+			return responseInfo -> {
+				firstByte = System.nanoTime();
+				sendEvent.end();
+				receiveEvent.begin();
+				return HttpResponse.BodySubscribers.ofByteArray();
+			};
+		}
 
-		// If there is an error, throw an exception
-		if (statusCode >= 400) {
-			handleResponseError(response.body());
+		/**
+		 * Reports an exchange without a response.
+		 */
+		void failed(Throwable error) {
+			long failed = System.nanoTime() - start;
+			if (endpoint != null) {
+				// A cancelled or interrupted request, like the slower attempt of a hedged read, says nothing about the server
+				boolean cancelled = error instanceof CancellationException || error instanceof InterruptedException;
+				endpoints.onEnd(endpoint, failed, true, cancelled);
+			}
+			PBEvents.commit(sendEvent, operation, collectionName, request.method(), requestBytes, -1);
+			metrics.onExchange(operation, collectionName, -1, failed, failed, 0, requestBytes, 0);
+			// The change may have been made even without a response
+			invalidateQueries();
 		}
 
-		// Used for a successful delete request
-		if (statusCode == 204) {
-			return "204";
+		/**
+		 * Reports the exchange and decodes the response.
+		 */
+		<T> T decode(HttpResponse<byte[]> response, Function<String, T> decoder) throws PocketBaseException {
+			int statusCode = response.statusCode();
+			byte[] body = response.body();
+			if (endpoint != null)
+				endpoints.onEnd(endpoint, System.nanoTime() - start, statusCode >= 500, false);
+			PBEvents.commit(sendEvent, operation, collectionName, request.method(), requestBytes, statusCode);
+			PBEvents.commit(receiveEvent, operation, collectionName, body.length, statusCode);
+
+			PBEvents.Decode decodeEvent = new PBEvents.Decode();
+			decodeEvent.begin();
+			long decodeStart = System.nanoTime();
+
+			try {
+				// If there is an error, throw an exception
+				if (statusCode >= 400) {
+					handleResponseError(new String(body, StandardCharsets.UTF_8));
+				}
+
+				// Used for a successful delete request
+				if (statusCode == 204) {
+					return decoder.apply("204");
+				}
+
+				return decoder.apply(new String(body, StandardCharsets.UTF_8));
+			} finally {
+				long end = System.nanoTime();
+				PBEvents.commit(decodeEvent, operation, collectionName, body.length, statusCode);
+				metrics.onExchange(operation, collectionName, statusCode,
+						firstByte - start, end - start, end - decodeStart,
+						requestBytes, body.length);
+				invalidateQueries();
+			}
 		}
 
-		return response.body();
+		/**
+		 * Invalidates the cached pages of the collection after a change, see {@link PBQueryCache}.
+		 */
+		void invalidateQueries() {
+			PBQueryCache cache = queryCache;
+			if (cache == null || collectionName == null)
+				return;
+			switch (operation) {
+				case CREATE:
+				case UPDATE:
+				case DELETE:
+				case UPLOAD:
+					cache.invalidate(collectionName);
+					break;
+				default:
+					break;
+			}
+		}
 	}
 
 	/**
@@ -102,7 +430,7 @@ public class PocketBase {
 	 *
 	 * @param body the json string of the response
 	 */
-	private void handleResponseError(String body) throws PocketBaseException {
+	void handleResponseError(String body) throws PocketBaseException {
 		JsonObject errorJson = gson.fromJson(body, JsonObject.class);
 
 		// Get the error code and message
@@ -146,10 +474,67 @@ public class PocketBase {
 	 * @param object the JSON object
 	 * @return the record built
 	 */
-	private PBRecord buildRecord(JsonObject object) {
+	PBRecord buildRecord(JsonObject object) {
+		return buildRecord(object, new HashMap<>());
+	}
+
+	/**
+	 * Builds a record from the json string of a response, lazy if {@link #setLazyRecords(boolean)} is set.
+	 *
+	 * @param response the json string of the response
+	 * @return the record built
+	 */
+	PBRecord decodeRecord(String response) {
+		return decodeRecord(response, null);
+	}
+
+	/**
+	 * Builds a record from the json string of a response, with the types of the schema if there is one.
+	 *
+	 * @param response the json string of the response
+	 * @param schema   the schema of the collection, null if not known
+	 * @return the record built
+	 */
+	private PBRecord decodeRecord(String response, PBSchema schema) {
+		if (lazyRecords)
+			return buildLazyRecord(new PBLazyValues.Cursor(response), new PBLazyValues.Indexer(response), new HashMap<>());
+		if (schema == null)
+			return buildRecord(gson.fromJson(response, JsonObject.class));
+
+		try (JsonReader in = new JsonReader(new StringReader(response))) {
+			return buildRecord(in, schema, new HashMap<>());
+		} catch (IOException e) {
+			throw new JsonParseException(e);
+		}
+	}
+
+	/**
+	 * Builds the JSON object of a record, the opposite of {@link #buildRecord(JsonObject)}. The expanded relations are not included.
+	 *
+	 * @param record the record
+	 * @return the JSON object built
+	 */
+	JsonObject buildJson(PBRecord record) {
+		JsonObject object = new JsonObject();
+		object.addProperty("id", record.getId());
+		object.addProperty("collectionId", record.getCollectionId());
+		object.addProperty("collectionName", record.getCollectionName());
+		object.addProperty("created", record.getCreated());
+		object.addProperty("updated", record.getUpdated());
+		record.getValues().forEach((field, value) -> object.add(field, gson.toJsonTree(value, PBValue.class)));
+		return object;
+	}
+
+	/**
+	 * Builds a record from a JSON object, sharing the expanded records with the other records of the same response.
+	 *
+	 * @param object   the JSON object
+	 * @param expanded the expanded records already built in the response, by collection and id
+	 * @return the record built
+	 */
+	private PBRecord buildRecord(JsonObject object, Map<String, PBRecord> expanded) {
 		PBRecord record = new PBRecord();
 
-		//System.out.println("object = " + object);
 		// Iterate through the JSON object and set the values of the record
 		object.entrySet().forEach(entry -> {
 			switch (entry.getKey()) {
@@ -169,26 +554,14 @@ public class PocketBase {
 				case "updated":
 					record.setUpdated(entry.getValue().getAsString());
 					break;
+				// Relations requested with the expand parameter
+				case "expand":
+					if (entry.getValue().isJsonObject())
+						buildExpand(record, entry.getValue().getAsJsonObject(), expanded);
+					break;
 				// Record fields (PBValue)
 				default:
-					List<String> stringList = null;
-
-					// If the field is a multi-value, then it is also an array
-					// even if there is only one file.
-					if (entry.getValue().toString().charAt(0) == '[') {
-						stringList = new ArrayList<>();
-						for (JsonElement element : entry.getValue().getAsJsonArray()) {
-							stringList.add(element.getAsString());
-						}
-					}
-
-					if (stringList != null) {
-						// String Array
-						record.getValues().put(entry.getKey(), new PBValue().setList(stringList));
-					} else {
-						// Single Non-Array value
-						record.getValues().put(entry.getKey(), new PBValue().setString(entry.getValue().getAsString()));
-					}
+					record.getValues().put(entry.getKey(), buildValue(entry.getValue()));
 					break;
 			}
 		});
@@ -197,20 +570,167 @@ public class PocketBase {
 	}
 
 	/**
-	 * Encodes a string to be used in a URL.
+	 * Builds the value of a field from a JSON element.
+	 */
+	private static PBValue buildValue(JsonElement value) {
+		// If the field is a multi-value, then it is also an array
+		// even if there is only one file.
+		if (value.isJsonArray()) {
+			List<String> stringList = new ArrayList<>();
+			for (JsonElement element : value.getAsJsonArray()) {
+				stringList.add(asString(element));
+			}
+			// String Array
+			return PBValue.loaded(stringList);
+		} else {
+			// Single Non-Array value
+			return PBValue.loaded(asString(value));
+		}
+	}
+
+	/**
+	 * Builds a record at the position of a reader, decoding the values with the type of their field in the schema.
+	 * The values that do not match the type, and the fields not in the schema, are decoded like in {@link #buildRecord(JsonObject)}.
+	 *
+	 * @param in       the reader, at the beginning of the record
+	 * @param schema   the schema of the collection
+	 * @param expanded the expanded records already built in the response, by collection and id
+	 * @return the record built
+	 */
+	private PBRecord buildRecord(JsonReader in, PBSchema schema, Map<String, PBRecord> expanded) throws IOException {
+		PBRecord record = new PBRecord();
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			switch (name) {
+				case "id":
+					record.setId(nextString(in));
+					break;
+				case "collectionId":
+					record.setCollectionId(nextString(in));
+					break;
+				case "collectionName":
+					record.setCollectionName(nextString(in));
+					break;
+				case "created":
+					record.setCreated(nextString(in));
+					break;
+				case "updated":
+					record.setUpdated(nextString(in));
+					break;
+				case "expand":
+					JsonElement expand = JsonParser.parseReader(in);
+					if (expand.isJsonObject())
+						buildExpand(record, expand.getAsJsonObject(), expanded);
+					break;
+				default:
+					PBSchema.Field field = schema.getField(name);
+					record.getValues().put(name, field != null ? readValue(in, field.kind) : buildValue(JsonParser.parseReader(in)));
+					break;
+			}
+		}
+		in.endObject();
+
+		return record;
+	}
+
+	private static String nextString(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return in.nextString();
+	}
+
+	/**
+	 * Reads a value knowing its type, without building the JSON tree.
+	 */
+	private static PBValue readValue(JsonReader in, PBSchema.Kind kind) throws IOException {
+		JsonToken token = in.peek();
+		switch (kind) {
+			case TEXT:
+				if (token == JsonToken.STRING)
+					return PBValue.loaded(in.nextString());
+				break;
+			case NUMBER:
+				// The number is kept as it was written
+				if (token == JsonToken.NUMBER)
+					return PBValue.loaded(in.nextString());
+				break;
+			case BOOL:
+				if (token == JsonToken.BOOLEAN)
+					return PBValue.loaded(String.valueOf(in.nextBoolean()));
+				break;
+			case LIST:
+				if (token == JsonToken.BEGIN_ARRAY) {
+					List<String> list = new ArrayList<>();
+					in.beginArray();
+					while (in.hasNext()) {
+						list.add(in.peek() == JsonToken.STRING ? in.nextString() : asString(JsonParser.parseReader(in)));
+					}
+					in.endArray();
+					return PBValue.loaded(list);
+				}
+				break;
+			default:
+				break;
+		}
+		return buildValue(JsonParser.parseReader(in));
+	}
+
+	/**
+	 * Builds the expanded relations of a record.<br>
+	 * A record expanded more than once in the same response is built only once and shared.
 	 *
-	 * @param s the string to encode
-	 * @return the encoded string
+	 * @param record     the record that owns the relations
+	 * @param expandJson the <code>expand</code> JSON object, with the relation fields as keys
+	 * @param expanded   the expanded records already built in the response, by collection and id
 	 */
-	private String urlEncode(String s) {
-		return s.replace(" ", "%20")
-				.replace("&&", "%26%26")
-				.replace("|", "%7C")
-				.replace("<", "%3C")
-				.replace(">", "%3E")
-				.replace("-", "%2D")
-				.replace("\"", "%22");
+	private void buildExpand(PBRecord record, JsonObject expandJson, Map<String, PBRecord> expanded) {
+		for (Map.Entry<String, JsonElement> entry : expandJson.entrySet()) {
+			JsonElement value = entry.getValue();
+			List<PBRecord> related = new ArrayList<>();
+
+			if (value.isJsonArray()) {
+				// Multiple relation
+				for (JsonElement element : value.getAsJsonArray()) {
+					if (element.isJsonObject())
+						related.add(buildExpandedRecord(element.getAsJsonObject(), expanded));
+				}
+			} else if (value.isJsonObject()) {
+				// Single relation
+				related.add(buildExpandedRecord(value.getAsJsonObject(), expanded));
+			}
+
+			record.getExpand().put(entry.getKey(), related);
+		}
+	}
+
+	private PBRecord buildExpandedRecord(JsonObject object, Map<String, PBRecord> expanded) {
+		String key = asString(object.get("collectionId")) + "/" + asString(object.get("id"));
+
+		PBRecord record = expanded.get(key);
+		if (record == null) {
+			record = buildRecord(object, expanded);
+			expanded.put(key, record);
+		} else if (object.has("expand") && object.get("expand").isJsonObject()) {
+			// The same record can be expanded with different nested relations
+			buildExpand(record, object.getAsJsonObject("expand"), expanded);
+		}
+
+		return record;
+	}
 
+	/**
+	 * Gets a JSON element as a string. JSON objects and arrays, like the ones of json fields, are kept as JSON.
+	 */
+	static String asString(JsonElement element) {
+		if (element == null || element.isJsonNull())
+			return null;
+		if (element.isJsonPrimitive())
+			return element.getAsString();
+		return element.toString();
 	}
 
 	/**
@@ -242,152 +762,912 @@ public class PocketBase {
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord createRecord(String collectionName, Map<String, PBValue> recordValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
-		// Create the URL
-		String url = address + "/api/collections/" + collectionName + "/records";
-
-		String inputJson = gson.toJson(recordValues);
+	public PBRecord createRecord(String collectionName, Map<String, PBValue> recordValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		checkValues(collectionName, recordValues, true);
+
+		// Send the request and get the response json
+		return handleResponse(PBOperation.CREATE, collectionName, createRequest(collectionName, gson.toJson(recordValues), authToken),
+				this::decodeRecord);
+	}
+
+	/**
+	 * Creates a new record inside a protected collection from an object, using an authorization token.
+	 * The fields of the object are mapped like in {@link #readAllObjects(String, String, PBQuery, Class)}, the null ones are not sent.
+	 *
+	 * @param collectionName the collection name
+	 * @param object         the object with the values to insert, the id is sent if not null
+	 * @param authToken      the authorization token
+	 * @return the record created, decoded into the class of the object
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public <T> T createObject(String collectionName, T object, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		PBMapper<T> mapper = mapperOf(object);
+		String inputJson = mapper.write(object, gson, true);
+		checkJson(collectionName, inputJson, true);
+
+		return handleResponse(PBOperation.CREATE, collectionName, createRequest(collectionName, inputJson, authToken),
+				response -> mapper.read(response, gson));
+	}
+
+	/**
+	 * Creates a new record inside a collection from an object.
+	 *
+	 * @param collectionName the collection name
+	 * @param object         the object with the values to insert, the id is sent if not null
+	 * @return the record created, decoded into the class of the object
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public <T> T createObject(String collectionName, T object) throws IOException, PocketBaseException, InterruptedException {
+		return createObject(collectionName, object, null);
+	}
+
+	/**
+	 * Gets the mapping of the class of an object to write. The values of a {@link PBRecord} or a {@link Map}
+	 * are not fields, they are written by the methods that take them.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> PBMapper<T> mapperOf(T object) {
+		if (object instanceof PBRecord || object instanceof Map)
+			throw new IllegalArgumentException("A " + object.getClass().getSimpleName()
+					+ " is not mapped like an object, use createRecord or updateRecord with its values");
+		return PBMapper.of((Class<T>) object.getClass());
+	}
+
+	private HttpRequest.Builder createRequest(String collectionName, String inputJson, String authToken) {
+		// Create the URL
+		String url = address + "/api/collections/" + collectionName + "/records";
+
+		// Open HTTP connection
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+				.uri(URI.create(url))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(inputJson));
+
+		// Add the authorization token if present
+		if (authToken != null) {
+			requestBuilder = requestBuilder.header("Authorization", authToken);
+		}
+		return requestBuilder;
+	}
+
+	/**
+	 * Creates a new record inside a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordValues   the map containing the values to insert
+	 * @return the record created
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBRecord createRecord(String collectionName, Map<String, PBValue> recordValues) throws IOException, PocketBaseException, InterruptedException {
+		return createRecord(collectionName, recordValues, null);
+	}
+
+	/**
+	 * Gets all the records from a protected collection with the authorization token and query options.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token
+	 * @param queryOptions   the options for the query of the records
+	 * @return a page with the records and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBCollection readAllRecords(String collectionName, String authToken, PBQuery queryOptions) throws IOException, PocketBaseException, InterruptedException {
+		// Send the request and get the response json
+		PBSchema schema = findSchema(collectionName);
+		return readPage(collectionName, authToken, queryOptions, response -> buildCollection(response, schema));
+	}
+
+	/**
+	 * Gets a page of records without waiting for the response. Cancelling the future aborts the request.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param queryOptions   the options for the query of the records
+	 * @return the future page, completed exceptionally with a {@link PocketBaseException} or an {@link IOException} in case of error
+	 */
+	public CompletableFuture<PBCollection> readAllRecordsAsync(String collectionName, String authToken, PBQuery queryOptions) {
+		// The schema is not read here, not to block
+		PBSchemaCache cache = schemaCache;
+		PBSchema schema = cache != null ? cache.peek(collectionName) : null;
+		return readPageAsync(collectionName, authToken, queryOptions, response -> buildCollection(response, schema));
+	}
+
+	/**
+	 * Gets a page of records from a protected collection, decoded directly into objects of a class, without building {@link PBRecord}s.<br><br>
+	 * Classes need a constructor without arguments and are filled field by field, records are built with their canonical constructor.
+	 * The JSON fields without a matching field are skipped, use {@link PBField} to map a different name.
+	 * The mapping of a class is computed once and then reused, see {@link PBMapper}.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param queryOptions   the options for the query of the records
+	 * @param type           the class of the objects
+	 * @return a page with the objects and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public <T> PBTypedCollection<T> readAllObjects(String collectionName, String authToken, PBQuery queryOptions, Class<T> type) throws IOException, PocketBaseException, InterruptedException {
+		return readPage(collectionName, authToken, queryOptions, response -> buildTypedCollection(response, type));
+	}
+
+	/**
+	 * Gets a page of records from a collection, decoded directly into objects of a class.
+	 *
+	 * @param collectionName the collection name
+	 * @param queryOptions   the options for the query of the records
+	 * @param type           the class of the objects, see {@link #readAllObjects(String, String, PBQuery, Class)}
+	 * @return a page with the objects and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public <T> PBTypedCollection<T> readAllObjects(String collectionName, PBQuery queryOptions, Class<T> type) throws IOException, PocketBaseException, InterruptedException {
+		return readAllObjects(collectionName, null, queryOptions, type);
+	}
+
+	/**
+	 * Builds a page of objects from the json string of a list response, reading it as a stream.
+	 *
+	 * @param response the json string of the response
+	 * @param type     the class of the objects
+	 * @return the page built
+	 */
+	<T> PBTypedCollection<T> buildTypedCollection(String response, Class<T> type) {
+		PBMapper<T> mapper = PBMapper.of(type);
+		PBTypedCollection<T> collectionPage = new PBTypedCollection<>();
+
+		try (JsonReader in = new JsonReader(new StringReader(response))) {
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "page":
+						collectionPage.setPage(in.nextString());
+						break;
+					case "perPage":
+						collectionPage.setPerPage(in.nextString());
+						break;
+					case "totalPages":
+						collectionPage.setTotalPages(in.nextString());
+						break;
+					case "totalItems":
+						collectionPage.setTotalItems(in.nextString());
+						break;
+					case "items":
+						in.beginArray();
+						while (in.hasNext()) {
+							collectionPage.getItems().add(mapper.read(in, gson));
+						}
+						in.endArray();
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+		} catch (IOException e) {
+			throw new JsonParseException(e);
+		}
+
+		return collectionPage;
+	}
+
+	private HttpRequest.Builder readAllRequest(String collectionName, String authToken, PBQuery queryOptions) {
+		// Create the URL
+		String url = address + "/api/collections/" + collectionName + "/records";
+
+		// Add the options if present, they are already encoded
+		if (queryOptions != null)
+			url = url + "?" + queryOptions;
+
+		// Open HTTP connection
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+				.uri(URI.create(url))
+				.GET();
+
+		// Add the authorization token if present
+		if (authToken != null) {
+			requestBuilder = requestBuilder
+					.header("Content-Type", "application/json")
+					.header("Authorization", authToken);
+		}
+		return requestBuilder;
+	}
+
+	/**
+	 * Builds a page of records from the json string of a list response.
+	 *
+	 * @param response the json string of the response
+	 * @return the page built
+	 */
+	PBCollection buildCollection(String response) {
+		return buildCollection(response, null);
+	}
+
+	/**
+	 * Builds a page of records from the json string of a list response, with the types of the schema if there is one.
+	 *
+	 * @param response the json string of the response
+	 * @param schema   the schema of the collection, null if not known
+	 * @return the page built
+	 */
+	PBCollection buildCollection(String response, PBSchema schema) {
+		if (lazyRecords)
+			return buildLazyCollection(response);
+		if (schema != null)
+			return buildSchemaCollection(response, schema);
+
+		// Create the collection page
+		JsonObject jsonObject = gson.fromJson(response, JsonObject.class);
+		PBCollection collectionPage = new PBCollection(
+				jsonObject.get("page").getAsString(),
+				jsonObject.get("perPage").getAsString(),
+				jsonObject.get("totalPages").getAsString(),
+				jsonObject.get("totalItems").getAsString()
+		);
+
+		// Put items in the collection page, the expanded records are shared by the whole page
+		Map<String, PBRecord> expanded = new HashMap<>();
+		JsonArray items = jsonObject.getAsJsonArray("items");
+		items.forEach(item -> {
+			JsonObject itemObject = item.getAsJsonObject();
+			PBRecord record = buildRecord(itemObject, expanded);
+			collectionPage.getItems().add(record);
+		});
+
+		return collectionPage;
+	}
+
+	/**
+	 * Builds a page of records from the json string of a list response, reading it as a stream and decoding
+	 * the values with the types of the schema.
+	 *
+	 * @param response the json string of the response
+	 * @param schema   the schema of the collection
+	 * @return the page built
+	 */
+	private PBCollection buildSchemaCollection(String response, PBSchema schema) {
+		Map<String, PBRecord> expanded = new HashMap<>();
+		PBCollection collectionPage = new PBCollection();
+
+		try (JsonReader in = new JsonReader(new StringReader(response))) {
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "page":
+						collectionPage.setPage(in.nextString());
+						break;
+					case "perPage":
+						collectionPage.setPerPage(in.nextString());
+						break;
+					case "totalPages":
+						collectionPage.setTotalPages(in.nextString());
+						break;
+					case "totalItems":
+						collectionPage.setTotalItems(in.nextString());
+						break;
+					case "items":
+						in.beginArray();
+						while (in.hasNext()) {
+							collectionPage.getItems().add(buildRecord(in, schema, expanded));
+						}
+						in.endArray();
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+		} catch (IOException e) {
+			throw new JsonParseException(e);
+		}
+
+		return collectionPage;
+	}
+
+	/**
+	 * Builds a page of lazy records from the json string of a list response, see {@link #setLazyRecords(boolean)}.
+	 * The response is only walked to find the values, which are decoded when they are read.
+	 *
+	 * @param response the json string of the response
+	 * @return the page built
+	 */
+	PBCollection buildLazyCollection(String response) {
+		PBLazyValues.Cursor cursor = new PBLazyValues.Cursor(response);
+		PBLazyValues.Indexer indexer = new PBLazyValues.Indexer(response);
+		Map<String, PBRecord> expanded = new HashMap<>();
+		PBCollection collectionPage = new PBCollection();
+
+		cursor.begin('{');
+		while (cursor.hasNext()) {
+			cursor.name();
+			if (cursor.nameIs("items")) {
+				cursor.begin('[');
+				while (cursor.hasNext()) {
+					collectionPage.getItems().add(buildLazyRecord(cursor, indexer, expanded));
+				}
+				continue;
+			}
+
+			int start = cursor.position();
+			cursor.skipValue();
+			String value = PBLazyValues.string(response, start, cursor.position());
+			if (cursor.nameIs("page"))
+				collectionPage.setPage(value);
+			else if (cursor.nameIs("perPage"))
+				collectionPage.setPerPage(value);
+			else if (cursor.nameIs("totalPages"))
+				collectionPage.setTotalPages(value);
+			else if (cursor.nameIs("totalItems"))
+				collectionPage.setTotalItems(value);
+		}
+
+		return collectionPage;
+	}
+
+	/**
+	 * Builds the lazy record at the position of the cursor. Only the system fields and the expanded relations are decoded.
+	 */
+	private PBRecord buildLazyRecord(PBLazyValues.Cursor cursor, PBLazyValues.Indexer indexer, Map<String, PBRecord> expanded) {
+		String json = cursor.json();
+		PBRecord record = new PBRecord();
+
+		cursor.begin('{');
+		while (cursor.hasNext()) {
+			cursor.name();
+			int start = cursor.position();
+			cursor.skipValue();
+			int end = cursor.position();
+
+			if (cursor.nameIs("id"))
+				record.setId(PBLazyValues.string(json, start, end));
+			else if (cursor.nameIs("collectionId"))
+				record.setCollectionId(PBLazyValues.string(json, start, end));
+			else if (cursor.nameIs("collectionName"))
+				record.setCollectionName(PBLazyValues.string(json, start, end));
+			else if (cursor.nameIs("created"))
+				record.setCreated(PBLazyValues.string(json, start, end));
+			else if (cursor.nameIs("updated"))
+				record.setUpdated(PBLazyValues.string(json, start, end));
+			else if (cursor.nameIs("expand")) {
+				// The relations are few, and shared with the other records of the page
+				if (json.charAt(start) == '{')
+					buildExpand(record, JsonParser.parseString(json.substring(start, end)).getAsJsonObject(), expanded);
+			} else
+				indexer.add(cursor.nameStart(), cursor.nameEnd(), start, end);
+		}
+
+		record.loadValues(indexer.build());
+		return record;
+	}
+
+	/**
+	 * Gets all the records from a protected collection with the authorization token.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token
+	 * @return a page with the records and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBCollection readAllRecords(String collectionName, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		return readAllRecords(collectionName, authToken, null);
+	}
+
+	/**
+	 * Gets all the records from a collection with query options.
+	 *
+	 * @param collectionName the collection name
+	 * @param queryOptions   the options for the query of the records
+	 * @return a page with the records and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBCollection readAllRecords(String collectionName, PBQuery queryOptions) throws IOException, PocketBaseException, InterruptedException {
+		return readAllRecords(collectionName, null, queryOptions);
+	}
+
+	/**
+	 * Gets all the records from a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @return a page with the records and info about the page
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBCollection readAllRecords(String collectionName) throws IOException, PocketBaseException, InterruptedException {
+		return readAllRecords(collectionName, null, null);
+	}
+
+	/**
+	 * Counts the records of a protected collection that match a filter, asking for a page of one record with only its id.
+	 *
+	 * @param collectionName the collection name
+	 * @param filter         filter by field, all the records if null
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @return the number of records
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public long count(String collectionName, String filter, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		PBQuery query = new PBQuery().perPage(1).fields("id");
+		if (filter != null)
+			query = query.filter(filter);
+
+		// The record itself is not needed, only the total
+		return readPage(collectionName, authToken, query, response -> Long.parseLong(buildLazyCollection(response).getTotalItems()));
+	}
+
+	/**
+	 * Counts the records of a collection that match a filter.
+	 *
+	 * @param collectionName the collection name
+	 * @param filter         filter by field, all the records if null
+	 * @return the number of records
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public long count(String collectionName, String filter) throws IOException, PocketBaseException, InterruptedException {
+		return count(collectionName, filter, null);
+	}
+
+	/**
+	 * Gets a page of lazy records without waiting, whatever {@link #setLazyRecords(boolean)} is, for {@link PBAggregator}.
+	 */
+	CompletableFuture<PBCollection> readLazyPageAsync(String collectionName, String authToken, PBQuery queryOptions) {
+		return readPageAsync(collectionName, authToken, queryOptions, this::buildLazyCollection);
+	}
+
+	/**
+	 * Reads a page, from the {@link PBQueryCache} if it is set and has the page.
+	 */
+	private <T> T readPage(String collectionName, String authToken, PBQuery queryOptions, Function<String, T> decoder) throws IOException, PocketBaseException, InterruptedException {
+		PBQueryCache cache = queryCache;
+		if (cache == null)
+			return handleRead(PBOperation.READ_ALL, collectionName, readAllRequest(collectionName, authToken, queryOptions), decoder);
+
+		PBQueryCache.Key key = PBQueryCache.key(collectionName, authToken, queryOptions);
+		String cached = cache.get(key);
+		if (cached != null)
+			return decoder.apply(cached);
+
+		// The version before sending, so a change made in the meantime is not missed
+		long version = cache.version(collectionName);
+		return handleRead(PBOperation.READ_ALL, collectionName, readAllRequest(collectionName, authToken, queryOptions), response -> {
+			cache.put(key, version, response);
+			return decoder.apply(response);
+		});
+	}
+
+	/**
+	 * Reads a page without waiting, from the {@link PBQueryCache} if it is set and has the page.
+	 */
+	private <T> CompletableFuture<T> readPageAsync(String collectionName, String authToken, PBQuery queryOptions, Function<String, T> decoder) {
+		PBQueryCache cache = queryCache;
+		if (cache == null)
+			return handleResponseAsync(PBOperation.READ_ALL, collectionName, readAllRequest(collectionName, authToken, queryOptions), decoder);
+
+		PBQueryCache.Key key = PBQueryCache.key(collectionName, authToken, queryOptions);
+		String cached = cache.get(key);
+		if (cached != null) {
+			try {
+				return CompletableFuture.completedFuture(decoder.apply(cached));
+			} catch (RuntimeException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+
+		long version = cache.version(collectionName);
+		return handleResponseAsync(PBOperation.READ_ALL, collectionName, readAllRequest(collectionName, authToken, queryOptions), response -> {
+			cache.put(key, version, response);
+			return decoder.apply(response);
+		});
+	}
+
+	/**
+	 * Iterates over all the records of a protected collection with the authorization token, using keyset pagination.<br><br>
+	 * The pages are fetched lazily while iterating, ordered by <code>(created, id)</code> and without counting the total items,
+	 * so every page costs the same no matter how deep the scan is.
+	 * Errors are thrown as {@link java.io.UncheckedIOException} or {@link UncheckedPocketBaseException}.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token
+	 * @param filter         filter by field, leave to null if not needed
+	 * @param perPage        number of records fetched with every request
+	 * @return an iterator over the records
+	 */
+	public PBScanner scanRecords(String collectionName, String authToken, String filter, int perPage) {
+		return new PBScanner(this, collectionName, authToken, filter, perPage);
+	}
+
+	/**
+	 * Iterates over all the records of a collection that match a filter, using keyset pagination with 500 records per page.
+	 *
+	 * @param collectionName the collection name
+	 * @param filter         filter by field, leave to null if not needed
+	 * @return an iterator over the records
+	 */
+	public PBScanner scanRecords(String collectionName, String filter) {
+		return scanRecords(collectionName, null, filter, 500);
+	}
+
+	/**
+	 * Iterates over all the records of a collection, using keyset pagination with 500 records per page.
+	 *
+	 * @param collectionName the collection name
+	 * @return an iterator over the records
+	 */
+	public PBScanner scanRecords(String collectionName) {
+		return scanRecords(collectionName, null, null, 500);
+	}
+
+	/**
+	 * Publishes all the records of a protected collection to reactive subscribers, using keyset pagination.<br><br>
+	 * The pages are fetched asynchronously and only when the subscriber requests more records, see {@link PBPublisher}.
+	 *
+	 * @param collectionName the collection name
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param filter         filter by field, leave to null if not needed
+	 * @param perPage        number of records fetched with every request
+	 * @return a publisher of the records, that starts a new scan for every subscriber
+	 */
+	public PBPublisher publishRecords(String collectionName, String authToken, String filter, int perPage) {
+		return new PBPublisher(this, collectionName, authToken, filter, perPage);
+	}
+
+	/**
+	 * Publishes all the records of a collection to reactive subscribers, with 500 records per page.
+	 *
+	 * @param collectionName the collection name
+	 * @return a publisher of the records, that starts a new scan for every subscriber
+	 */
+	public PBPublisher publishRecords(String collectionName) {
+		return publishRecords(collectionName, null, null, 500);
+	}
+
+	/**
+	 * Gets one record from a protected collection using an authorization token, expanding its relations.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param authToken      the authorization token
+	 * @param expand         the relations to expand, leave to null if not needed
+	 * @return the record found
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBRecord readOneRecord(String collectionName, String recordId, String authToken, String expand) throws IOException, PocketBaseException, InterruptedException {
+		// Send the request and get the response json
+		PBSchema schema = findSchema(collectionName);
+		return handleRead(PBOperation.READ_ONE, collectionName, readOneRequest(collectionName, recordId, authToken, expand),
+				response -> decodeRecord(response, schema));
+	}
+
+	/**
+	 * Gets one record from a protected collection using an authorization token, decoded into an object of a class.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @param type           the class of the object, see {@link #readAllObjects(String, String, PBQuery, Class)}
+	 * @return the record found
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public <T> T readOneObject(String collectionName, String recordId, String authToken, Class<T> type) throws IOException, PocketBaseException, InterruptedException {
+		PBMapper<T> mapper = PBMapper.of(type);
+		return handleRead(PBOperation.READ_ONE, collectionName, readOneRequest(collectionName, recordId, authToken, null),
+				response -> mapper.read(response, gson));
+	}
+
+	private HttpRequest.Builder readOneRequest(String collectionName, String recordId, String authToken, String expand) {
+		// Create the URL
+		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
+
+		if (expand != null)
+			url += "?expand=" + URLEncoder.encode(expand, StandardCharsets.UTF_8);
+
+		// Open HTTP connection
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+				.uri(URI.create(url))
+				.GET();
+
+		// Add the authorization token if present
+		if (authToken != null) {
+			requestBuilder = requestBuilder
+					.header("Content-Type", "application/json")
+					.header("Authorization", authToken);
+		}
+		return requestBuilder;
+	}
+
+	/**
+	 * Gets one record from a protected collection using an authorization token.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param authToken      the authorization token
+	 * @return the record found
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBRecord readOneRecord(String collectionName, String recordId, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		return readOneRecord(collectionName, recordId, authToken, null);
+	}
+
+	/**
+	 * Gets one record from a collection.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @return the record found
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBRecord readOneRecord(String collectionName, String recordId) throws IOException, PocketBaseException, InterruptedException {
+		return readOneRecord(collectionName, recordId, null);
+	}
+
+	/**
+	 * Loads the related records of a relation field for a list of records, like a page of {@link #readAllRecords}.<br><br>
+	 * Instead of reading every related record with {@link #readOneRecord}, all the distinct ids are fetched together
+	 * with a filter on the id, {@value #PREFETCH_IDS_PER_REQUEST} ids per request.
+	 * The related records are put in the expand of each record, see {@link PBRecord#getExpandedList(String)}.
+	 *
+	 * @param records           the records with the relation field
+	 * @param relationField     the relation field of the records
+	 * @param relatedCollection the collection name of the related records
+	 * @param authToken         the authorization token, leave to null if not needed
+	 * @return the related records found, by id
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public Map<String, PBRecord> prefetchRelation(List<PBRecord> records, String relationField, String relatedCollection, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		// Collect the distinct ids referenced by the records
+		Set<String> ids = new LinkedHashSet<>();
+		for (PBRecord record : records) {
+			ids.addAll(relationIds(record, relationField));
+		}
+
+		// Fetch the related records in chunks
+		Map<String, PBRecord> related = new HashMap<>();
+		List<String> chunk = new ArrayList<>(PREFETCH_IDS_PER_REQUEST);
+		for (Iterator<String> iterator = ids.iterator(); iterator.hasNext(); ) {
+			chunk.add(iterator.next());
+
+			if (chunk.size() == PREFETCH_IDS_PER_REQUEST || !iterator.hasNext()) {
+				PBFilter filter = null;
+				for (String id : chunk) {
+					PBFilter idFilter = PBFilter.eq("id", id);
+					filter = filter == null ? idFilter : filter.or(idFilter);
+				}
+
+				PBQuery query = new PBQuery()
+						.perPage(chunk.size())
+						.skipTotal(true)
+						.filter(filter);
+
+				for (PBRecord record : readAllRecords(relatedCollection, authToken, query).getItems()) {
+					related.put(record.getId(), record);
+				}
+				chunk.clear();
+			}
+		}
+
+		// Link the related records to each record, missing ones are skipped
+		for (PBRecord record : records) {
+			List<PBRecord> expanded = new ArrayList<>();
+			for (String id : relationIds(record, relationField)) {
+				PBRecord relatedRecord = related.get(id);
+				if (relatedRecord != null)
+					expanded.add(relatedRecord);
+			}
+			record.getExpand().put(relationField, expanded);
+		}
+
+		return related;
+	}
+
+	/**
+	 * Loads the related records of a relation field for a list of records.
+	 *
+	 * @param records           the records with the relation field
+	 * @param relationField     the relation field of the records
+	 * @param relatedCollection the collection name of the related records
+	 * @return the related records found, by id
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public Map<String, PBRecord> prefetchRelation(List<PBRecord> records, String relationField, String relatedCollection) throws IOException, PocketBaseException, InterruptedException {
+		return prefetchRelation(records, relationField, relatedCollection, null);
+	}
+
+	/**
+	 * Gets the ids of a single or multiple relation field.
+	 */
+	private static List<String> relationIds(PBRecord record, String relationField) {
+		PBValue value = record.getValues().get(relationField);
+		List<String> ids = new ArrayList<>();
+
+		if (value == null)
+			return ids;
+
+		if (PBValue.isStringList(value)) {
+			for (String id : value.getList()) {
+				if (id != null && !id.isEmpty())
+					ids.add(id);
+			}
+		} else if (PBValue.isString(value) && !value.getString().isEmpty()) {
+			ids.add(value.getString());
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Updates an existing record inside a protected collection using an authorization token.
+	 *
+	 * @param collectionName the collection name
+	 * @param updatedValues  the updated values of the record
+	 * @param authToken      the authorization token
+	 * @return the updated record
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBRecord updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		checkValues(collectionName, updatedValues, false);
 
-		// Open HTTP connection
-		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-				.uri(URI.create(url))
-				.header("Content-Type", "application/json")
-				.POST(HttpRequest.BodyPublishers.ofString(inputJson));
+		return handleResponse(PBOperation.UPDATE, collectionName, updateRequest(collectionName, recordId, gson.toJson(updatedValues), authToken),
+				this::decodeRecord);
+	}
 
-		// Add the authorization token if present
-		if (authToken != null) {
-			requestBuilder = requestBuilder.header("Authorization", authToken);
+	/**
+	 * Updates an existing record without waiting for the response. Cancelling the future aborts the request.
+	 *
+	 * @param collectionName the collection name
+	 * @param recordId       the id of the record
+	 * @param updatedValues  the updated values of the record
+	 * @param authToken      the authorization token, leave to null if not needed
+	 * @return the future updated record, completed exceptionally with a {@link PocketBaseException} or an {@link IOException} in case of error
+	 */
+	public CompletableFuture<PBRecord> updateRecordAsync(String collectionName, String recordId, Map<String, PBValue> updatedValues, String authToken) {
+		// The values are checked only if the schema is already cached, not to block
+		PBSchemaCache cache = schemaCache;
+		PBSchema schema = cache != null ? cache.peek(collectionName) : null;
+		if (schema != null) {
+			try {
+				schema.check(updatedValues, false);
+			} catch (PocketBaseException e) {
+				return CompletableFuture.failedFuture(e);
+			}
 		}
 
-		// Send the request and get the response json
-		String response = handleResponse(requestBuilder);
-
-		JsonObject jsonObject = gson.fromJson(response, JsonObject.class);
-		return buildRecord(jsonObject);
+		return handleResponseAsync(PBOperation.UPDATE, collectionName, updateRequest(collectionName, recordId, gson.toJson(updatedValues), authToken),
+				this::decodeRecord);
 	}
 
 	/**
-	 * Creates a new record inside a collection.
+	 * Updates an existing record inside a protected collection from an object, using an authorization token.
+	 * The null fields of the object are not sent, so they are not changed; the primitive fields are always sent.
 	 *
 	 * @param collectionName the collection name
-	 * @param recordValues   the map containing the values to insert
-	 * @return the record created
+	 * @param recordId       the id of the record
+	 * @param object         the object with the updated values
+	 * @param authToken      the authorization token
+	 * @return the updated record, decoded into the class of the object
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord createRecord(String collectionName, Map<String, PBValue> recordValues) throws IOException, PocketBaseException, InterruptedException {
-		return createRecord(collectionName, recordValues, null);
+	public <T> T updateObject(String collectionName, String recordId, T object, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		PBMapper<T> mapper = mapperOf(object);
+		String inputJson = mapper.write(object, gson, false);
+		checkJson(collectionName, inputJson, false);
+
+		return handleResponse(PBOperation.UPDATE, collectionName, updateRequest(collectionName, recordId, inputJson, authToken),
+				response -> mapper.read(response, gson));
 	}
 
 	/**
-	 * Gets all the records from a protected collection with the authorization token and query options.
+	 * Updates an existing record inside a collection from an object.
 	 *
 	 * @param collectionName the collection name
-	 * @param authToken      the authorization token
-	 * @param queryOptions   the options for the query of the records
-	 * @return a page with the records and info about the page
+	 * @param recordId       the id of the record
+	 * @param object         the object with the updated values
+	 * @return the updated record, decoded into the class of the object
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBCollection readAllRecords(String collectionName, String authToken, PBQuery queryOptions) throws IOException, PocketBaseException, InterruptedException {
-		// Create the URL
-		String url = address + "/api/collections/" + collectionName + "/records";
+	public <T> T updateObject(String collectionName, String recordId, T object) throws IOException, PocketBaseException, InterruptedException {
+		return updateObject(collectionName, recordId, object, null);
+	}
 
-		// Add the options if present
-		if (queryOptions != null)
-			url = url + "?" + queryOptions;
+	private HttpRequest.Builder updateRequest(String collectionName, String recordId, String inputJson, String authToken) {
+		// Create the URL
+		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
 
 		// Open HTTP connection
 		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-				.uri(URI.create(urlEncode(url)))
-				.GET();
+				.uri(URI.create(url))
+				.header("Content-Type", "application/json")
+				.method("PATCH", HttpRequest.BodyPublishers.ofString(inputJson));
 
 		// Add the authorization token if present
 		if (authToken != null) {
-			requestBuilder = requestBuilder
-					.header("Content-Type", "application/json")
-					.header("Authorization", authToken);
+			requestBuilder = requestBuilder.header("Authorization", authToken);
 		}
-
-		// Send the request and get the response json
-		String response = handleResponse(requestBuilder);
-
-		// Create the collection page
-		JsonObject jsonObject = gson.fromJson(response, JsonObject.class);
-		PBCollection collectionPage = new PBCollection(
-				jsonObject.get("page").getAsString(),
-				jsonObject.get("perPage").getAsString(),
-				jsonObject.get("totalPages").getAsString(),
-				jsonObject.get("totalItems").getAsString()
-		);
-
-		// Put items in the collection page
-		JsonArray items = jsonObject.getAsJsonArray("items");
-		items.forEach(item -> {
-			JsonObject itemObject = item.getAsJsonObject();
-			PBRecord record = buildRecord(itemObject);
-			collectionPage.getItems().add(record);
-		});
-
-		return collectionPage;
+		return requestBuilder;
 	}
 
 	/**
-	 * Gets all the records from a protected collection with the authorization token.
+	 * Updates an existing record inside a collection.
 	 *
 	 * @param collectionName the collection name
-	 * @param authToken      the authorization token
-	 * @return a page with the records and info about the page
+	 * @param updatedValues  the updated values of the record
+	 * @return the updated record
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBCollection readAllRecords(String collectionName, String authToken) throws IOException, PocketBaseException, InterruptedException {
-		return readAllRecords(collectionName, authToken, null);
+	public PBRecord updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues) throws IOException, PocketBaseException, InterruptedException {
+		return updateRecord(collectionName, recordId, updatedValues, null);
 	}
 
 	/**
-	 * Gets all the records from a collection with query options.
+	 * Updates a record read from a protected collection, sending only the values changed after it was read,
+	 * see {@link PBRecord#getChangedValues()}. Nothing is sent if no value changed.<br>
+	 * After the update the values of the record are not changed anymore. The file fields need {@link #updateRecordWithFiles(String, String, Map, String)}.
 	 *
-	 * @param collectionName the collection name
-	 * @param queryOptions   the options for the query of the records
-	 * @return a page with the records and info about the page
+	 * @param record    the record, with its id and collection name
+	 * @param authToken the authorization token
+	 * @return the updated record, or the same record if nothing changed
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBCollection readAllRecords(String collectionName, PBQuery queryOptions) throws IOException, PocketBaseException, InterruptedException {
-		return readAllRecords(collectionName, null, queryOptions);
+	public PBRecord updateRecord(PBRecord record, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		if (record.getId() == null || record.getCollectionName() == null)
+			throw new IllegalArgumentException("The record needs an id and a collection name: " + record.getId() + ", " + record.getCollectionName());
+
+		Map<String, PBValue> changed = record.getChangedValues();
+		if (changed.isEmpty())
+			return record;
+
+		PBRecord updated = updateRecord(record.getCollectionName(), record.getId(), changed, authToken);
+		record.markUnchanged();
+		record.setUpdated(updated.getUpdated());
+		return updated;
 	}
 
 	/**
-	 * Gets all the records from a collection.
+	 * Updates a record read from a collection, sending only the values changed after it was read.
 	 *
-	 * @param collectionName the collection name
-	 * @return a page with the records and info about the page
+	 * @param record the record, with its id and collection name
+	 * @return the updated record, or the same record if nothing changed
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBCollection readAllRecords(String collectionName) throws IOException, PocketBaseException, InterruptedException {
-		return readAllRecords(collectionName, null, null);
+	public PBRecord updateRecord(PBRecord record) throws IOException, PocketBaseException, InterruptedException {
+		return updateRecord(record, null);
 	}
 
 	/**
-	 * Gets one record from a protected collection using an authorization token.
+	 * Deletes an existing record inside a protected collection using an authorization token.
 	 *
 	 * @param collectionName the collection name
-	 * @param recordId       the id of the record
+	 * @param recordId       the id of the record to delete
 	 * @param authToken      the authorization token
-	 * @return the record found
+	 * @return true if the record has been deleted, otherwise an exception is thrown
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord readOneRecord(String collectionName, String recordId, String authToken) throws IOException, PocketBaseException, InterruptedException {
+	public boolean deleteRecord(String collectionName, String recordId, String authToken) throws IOException, PocketBaseException, InterruptedException {
 		// Create the URL
 		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
 
 		// Open HTTP connection
 		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
 				.uri(URI.create(url))
-				.GET();
+				.DELETE();
 
 		// Add the authorization token if present
 		if (authToken != null) {
@@ -396,114 +1676,289 @@ public class PocketBase {
 					.header("Authorization", authToken);
 		}
 
-		// Send the request and get the response json
-		String response = handleResponse(requestBuilder);
-		return buildRecord(gson.fromJson(response, JsonObject.class));
+		return handleResponse(PBOperation.DELETE, collectionName, requestBuilder, response -> response.equals("204"));
 	}
 
 	/**
-	 * Gets one record from a collection.
+	 * Deletes an existing record inside a collection.
 	 *
 	 * @param collectionName the collection name
-	 * @param recordId       the id of the record
-	 * @return the record found
+	 * @param recordId       the id of the record to delete
+	 * @return true if the record has been deleted, otherwise an exception is thrown
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord readOneRecord(String collectionName, String recordId) throws IOException, PocketBaseException, InterruptedException {
-		return readOneRecord(collectionName, recordId, null);
+	public boolean deleteRecord(String collectionName, String recordId) throws IOException, PocketBaseException, InterruptedException {
+		return deleteRecord(collectionName, recordId, null);
 	}
 
 	/**
-	 * Updates an existing record inside a protected collection using an authorization token.
+	 * Sends many create, update and delete requests in a single transactional batch, using an authorization token.<br><br>
+	 * If one request fails, none of them is applied. Batch requests must be enabled in the settings of PocketBase.
 	 *
-	 * @param collectionName the collection name
-	 * @param updatedValues  the updated values of the record
-	 * @param authToken      the authorization token
-	 * @return the updated record
+	 * @param requests  the requests, executed in order
+	 * @param authToken the authorization token
+	 * @return the records created or updated, in the same order of the requests, null for the deletes
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
+	public List<PBRecord> batch(List<PBBatchRequest> requests, String authToken) throws IOException, PocketBaseException, InterruptedException {
 		// Create the URL
-		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
+		String url = address + "/api/batch";
+
+		JsonArray requestsJson = new JsonArray();
+		for (PBBatchRequest request : requests) {
+			JsonObject requestJson = new JsonObject();
+			requestJson.addProperty("method", request.getMethod());
+			requestJson.addProperty("url", request.getUrl());
+			if (request.getValues() != null)
+				requestJson.add("body", gson.toJsonTree(request.getValues()));
+			requestsJson.add(requestJson);
+		}
 
-		String inputJson = gson.toJson(updatedValues);
+		JsonObject inputJson = new JsonObject();
+		inputJson.add("requests", requestsJson);
 
 		// Open HTTP connection
 		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
 				.uri(URI.create(url))
 				.header("Content-Type", "application/json")
-				.method("PATCH", HttpRequest.BodyPublishers.ofString(inputJson));
+				.POST(HttpRequest.BodyPublishers.ofString(inputJson.toString()));
 
 		// Add the authorization token if present
 		if (authToken != null) {
 			requestBuilder = requestBuilder.header("Authorization", authToken);
 		}
 
-		String response = handleResponse(requestBuilder);
-		return buildRecord(gson.fromJson(response, JsonObject.class));
+		// Send the request and get the response json
+		try {
+			return handleResponse(PBOperation.BATCH, null, requestBuilder, response -> {
+				List<PBRecord> records = new ArrayList<>();
+				for (JsonElement result : gson.fromJson(response, JsonArray.class)) {
+					JsonElement body = result.getAsJsonObject().get("body");
+					records.add(body != null && body.isJsonObject() ? buildRecord(body.getAsJsonObject()) : null);
+				}
+				return records;
+			});
+		} finally {
+			// Even a failed batch may have been committed before the response was lost
+			PBQueryCache cache = queryCache;
+			if (cache != null) {
+				for (PBBatchRequest request : requests) {
+					cache.invalidate(request.getCollectionName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends many create, update and delete requests in a single transactional batch.
+	 *
+	 * @param requests the requests, executed in order
+	 * @return the records created or updated, in the same order of the requests, null for the deletes
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public List<PBRecord> batch(List<PBBatchRequest> requests) throws IOException, PocketBaseException, InterruptedException {
+		return batch(requests, null);
 	}
 
+
+
+	// ==================== BULK METHODS ====================
+
 	/**
-	 * Updates an existing record inside a collection.
+	 * Deletes all the records of a protected collection that match a filter, with batch requests sent by 4 threads.
+	 * See {@link PBBulk} for the other options.
 	 *
 	 * @param collectionName the collection name
-	 * @param updatedValues  the updated values of the record
-	 * @return the updated record
-	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @param filter         the filter of the records to delete, all the records if null
+	 * @param authToken      the authorization token
+	 * @return the ids deleted, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
 	 * @throws IOException         the database is unreachable
 	 */
-	public PBRecord updateRecord(String collectionName, String recordId, Map<String, PBValue> updatedValues) throws IOException, PocketBaseException, InterruptedException {
-		return updateRecord(collectionName, recordId, updatedValues, null);
+	public PBBulk.Result deleteWhere(String collectionName, String filter, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		return new PBBulk(this, collectionName).authToken(authToken).delete(filter);
 	}
 
 	/**
-	 * Deletes an existing record inside a protected collection using an authorization token.
+	 * Deletes all the records of a collection that match a filter.
 	 *
 	 * @param collectionName the collection name
-	 * @param recordId       the id of the record to delete
+	 * @param filter         the filter of the records to delete, all the records if null
+	 * @return the ids deleted, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBBulk.Result deleteWhere(String collectionName, String filter) throws IOException, PocketBaseException, InterruptedException {
+		return deleteWhere(collectionName, filter, null);
+	}
+
+	/**
+	 * Updates all the records of a protected collection that match a filter with the same values, with batch requests
+	 * sent by 4 threads. See {@link PBBulk} for the other options.
+	 *
+	 * @param collectionName the collection name
+	 * @param filter         the filter of the records to update, all the records if null
+	 * @param updatedValues  the values to set
 	 * @param authToken      the authorization token
-	 * @return true if the record has been deleted, otherwise an exception is thrown
-	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @return the ids updated, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
 	 * @throws IOException         the database is unreachable
 	 */
-	public boolean deleteRecord(String collectionName, String recordId, String authToken) throws IOException, PocketBaseException, InterruptedException {
-		// Create the URL
-		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
+	public PBBulk.Result updateWhere(String collectionName, String filter, Map<String, PBValue> updatedValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		return new PBBulk(this, collectionName).authToken(authToken).update(filter, updatedValues);
+	}
+
+	/**
+	 * Updates all the records of a collection that match a filter with the same values.
+	 *
+	 * @param collectionName the collection name
+	 * @param filter         the filter of the records to update, all the records if null
+	 * @param updatedValues  the values to set
+	 * @return the ids updated, missing and failed
+	 * @throws PocketBaseException the scan of the ids failed
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBBulk.Result updateWhere(String collectionName, String filter, Map<String, PBValue> updatedValues) throws IOException, PocketBaseException, InterruptedException {
+		return updateWhere(collectionName, filter, updatedValues, null);
+	}
 
-		// Open HTTP connection
-		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-				.uri(URI.create(url))
-				.DELETE();
 
-		// Add the authorization token if present
-		if (authToken != null) {
-			requestBuilder = requestBuilder
-					.header("Content-Type", "application/json")
-					.header("Authorization", authToken);
-		}
 
-		return handleResponse(requestBuilder).equals("204");
+	// ==================== CONNECTION METHODS ====================
+
+	/**
+	 * Checks if the server is reachable and healthy.
+	 *
+	 * @throws PocketBaseException the server is not healthy
+	 * @throws IOException         the database is unreachable
+	 */
+	public void health() throws IOException, PocketBaseException, InterruptedException {
+		handleResponse(PBOperation.HEALTH, null, healthRequest(), response -> null);
 	}
 
 	/**
-	 * Deletes an existing record inside a collection.
+	 * Checks if the server is reachable and healthy, without waiting for the response.
 	 *
-	 * @param collectionName the collection name
-	 * @param recordId       the id of the record to delete
-	 * @return true if the record has been deleted, otherwise an exception is thrown
-	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @return the future completed when the server answered, exceptionally with a {@link PocketBaseException} or an {@link IOException} in case of error
+	 */
+	public CompletableFuture<Void> healthAsync() {
+		return handleResponseAsync(PBOperation.HEALTH, null, healthRequest(), response -> null);
+	}
+
+	/**
+	 * Checks if a specific endpoint of the database is healthy, giving up after a timeout if not null.
+	 */
+	CompletableFuture<Void> healthAsync(String endpointAddress, Duration timeout) {
+		HttpRequest.Builder request = healthRequest(endpointAddress);
+		if (timeout != null)
+			request.timeout(timeout);
+		return handleResponseAsync(PBOperation.HEALTH, null, request, response -> null);
+	}
+
+	private HttpRequest.Builder healthRequest() {
+		return healthRequest(address);
+	}
+
+	private HttpRequest.Builder healthRequest(String endpointAddress) {
+		return HttpRequest.newBuilder()
+				.uri(URI.create(endpointAddress + "/api/health"))
+				.GET();
+	}
+
+	/**
+	 * Opens connections to the server and runs the encoding and decoding once, so the first requests are not slowed down
+	 * by the class loading, the DNS lookup and the connection setup. See {@link PBWarmUp} to also authenticate.
+	 *
+	 * @param connections the number of connections to open
+	 * @return the result of the warm-up
+	 * @throws PocketBaseException the server is not healthy
 	 * @throws IOException         the database is unreachable
 	 */
-	public boolean deleteRecord(String collectionName, String recordId) throws IOException, PocketBaseException, InterruptedException {
-		return deleteRecord(collectionName, recordId, null);
+	public PBWarmUp.Result warmUp(int connections) throws IOException, PocketBaseException, InterruptedException {
+		return new PBWarmUp(this).connections(connections).run();
+	}
+
+	/**
+	 * Runs once the decoding and encoding of the records, the queries and the errors, with a sample response.
+	 */
+	void exerciseCodecs() {
+		String item = "{\"id\":\"warmup000000001\",\"collectionId\":\"warmup\",\"collectionName\":\"warmup\","
+				+ "\"created\":\"2024-01-01 00:00:00.000Z\",\"updated\":\"2024-01-01 00:00:00.000Z\","
+				+ "\"title\":\"Warm up\",\"views\":1,\"tags\":[\"a\",\"b\"],\"data\":{\"key\":\"value\"}}";
+		String page = "{\"page\":1,\"perPage\":1,\"totalPages\":1,\"totalItems\":1,\"items\":[" + item + "]}";
+
+		// Decoding, eager and lazy
+		PBRecord record = buildRecord(gson.fromJson(item, JsonObject.class));
+		buildLazyCollection(page).getItems().get(0).getValues().get("tags");
+		buildCollection(page);
+
+		// Encoding
+		gson.toJson(record.getValues());
+		buildJson(record).toString();
+		new PBQuery().perPage(1).skipTotal(true).sort("-created").filter(PBFilter.eq("title", "Warm up")).toString();
+
+		// Errors
+		try {
+			handleResponseError("{\"code\":400,\"message\":\"Warm up.\",\"data\":{\"title\":{\"code\":\"validation_required\",\"message\":\"Missing required value.\"}}}");
+		} catch (PocketBaseException expected) {
+			// Always thrown
+		}
 	}
 
+	// ==================== SCHEMA METHODS ====================
+
+	/**
+	 * Reads the schema of a collection. Only the admins can read it.
+	 *
+	 * @param collectionName the collection name or id
+	 * @param authToken      the authorization token of an admin
+	 * @return the schema of the collection
+	 * @throws PocketBaseException in case of error throws a message with the details of the error
+	 * @throws IOException         the database is unreachable
+	 */
+	public PBSchema readSchema(String collectionName, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+				.uri(URI.create(address + "/api/collections/" + collectionName))
+				.GET();
+
+		if (authToken != null) {
+			requestBuilder = requestBuilder.header("Authorization", authToken);
+		}
 
+		return handleResponse(PBOperation.SCHEMA, collectionName, requestBuilder,
+				response -> PBSchema.fromJson(gson.fromJson(response, JsonObject.class)));
+	}
 
+	/**
+	 * Gets the schema of a collection from the cache, null if there is no cache or the schema cannot be read.
+	 */
+	private PBSchema findSchema(String collectionName) throws InterruptedException {
+		PBSchemaCache cache = schemaCache;
+		return cache != null ? cache.find(collectionName) : null;
+	}
 
+	/**
+	 * Checks the values of a record with the schema of the collection, if known.
+	 *
+	 * @throws PocketBaseException the values are not valid, like the server would answer
+	 */
+	private void checkValues(String collectionName, Map<String, PBValue> values, boolean create) throws PocketBaseException, InterruptedException {
+		PBSchema schema = findSchema(collectionName);
+		if (schema != null)
+			schema.check(values, create);
+	}
 
+	/**
+	 * Checks the JSON body of a create or update request with the schema of the collection, if known.
+	 */
+	private void checkJson(String collectionName, String inputJson, boolean create) throws PocketBaseException, InterruptedException {
+		PBSchema schema = findSchema(collectionName);
+		if (schema != null)
+			schema.check(buildRecord(gson.fromJson(inputJson, JsonObject.class)).getValues(), create);
+	}
 
 	// ==================== AUTHENTICATION METHODS ====================
 	/**
@@ -512,8 +1967,10 @@ public class PocketBase {
 	 * @param identity       the identity (email)
 	 * @param password       the password
 	 * @param userOrAdminUrl the url for the user or the admin
+	 * @param collectionName the users collection name, null for the admins
+	 * @param decoder        decodes the json string response
 	 */
-	private String authorize(String identity, String password, String userOrAdminUrl) throws IOException, InterruptedException, PocketBaseException {
+	private <T> T authorize(String identity, String password, String userOrAdminUrl, String collectionName, Function<String, T> decoder) throws IOException, InterruptedException, PocketBaseException {
 		// Create the input JSON
 		JsonObject inputJson = new JsonObject();
 		inputJson.addProperty("identity", identity);
@@ -525,7 +1982,7 @@ public class PocketBase {
 				.header("Content-Type", "application/json")
 				.POST(HttpRequest.BodyPublishers.ofString(inputJson.toString()));
 
-		return handleResponse(requestBuilder);
+		return handleResponse(PBOperation.AUTH, collectionName, requestBuilder, decoder);
 	}
 	/**
 	 * Authenticates a regular user.
@@ -539,8 +1996,16 @@ public class PocketBase {
 	public UserData userAuthentication(String usersCollectionName, String identity, String password) throws IOException, PocketBaseException, InterruptedException {
 		String usersUrl = address + "/api/collections/" + usersCollectionName + "/auth-with-password";
 
-		String response = authorize(identity, password, usersUrl);
+		return authorize(identity, password, usersUrl, usersCollectionName, this::buildUserData);
+	}
 
+	/**
+	 * Builds the user data from the json string of an authentication response.
+	 *
+	 * @param response the json string of the response
+	 * @return the user data
+	 */
+	private UserData buildUserData(String response) {
 		JsonObject json = gson.fromJson(response, JsonObject.class);
 		JsonObject record = json.getAsJsonObject("record");
 		String token = json.get("token").getAsString();
@@ -597,8 +2062,16 @@ public class PocketBase {
 	public AdminData adminAuthentication(String identity, String password) throws IOException, PocketBaseException, InterruptedException {
 		String adminsUrl = address + "/api/admins/auth-with-password";
 
-		String response = authorize(identity, password, adminsUrl);
+		return authorize(identity, password, adminsUrl, null, this::buildAdminData);
+	}
 
+	/**
+	 * Builds the admin data from the json string of an authentication response.
+	 *
+	 * @param response the json string of the response
+	 * @return the admin data
+	 */
+	private AdminData buildAdminData(String response) {
 		JsonObject json = gson.fromJson(response, JsonObject.class);
 		JsonObject admin = json.getAsJsonObject("admin");
 		String token = json.get("token").getAsString();
@@ -652,15 +2125,64 @@ public class PocketBase {
 					.header("Authorization", authToken);
 		}
 
-		HttpResponse<InputStream> response = HttpClient.newHttpClient().send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		PBCall call = PBCall.current();
+		if (call != null)
+			call.timeout(requestBuilder);
+
+		PBEvents.Send sendEvent = new PBEvents.Send();
+		long start = System.nanoTime();
+		sendEvent.begin();
+		HttpResponse<InputStream> response;
+		try {
+			response = call != null
+					? call.await(httpClient.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream()))
+					: httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		} catch (IOException | InterruptedException e) {
+			long failed = System.nanoTime() - start;
+			PBEvents.commit(sendEvent, PBOperation.DOWNLOAD, collectionName, "GET", 0, -1);
+			metrics.onExchange(PBOperation.DOWNLOAD, collectionName, -1, failed, failed, 0, 0, 0);
+			throw e;
+		}
+		// The input stream is returned as soon as the headers are received
+		long firstByte = System.nanoTime() - start;
+		PBEvents.commit(sendEvent, PBOperation.DOWNLOAD, collectionName, "GET", 0, response.statusCode());
+
+		PBEvents.Receive receiveEvent = new PBEvents.Receive();
+		receiveEvent.begin();
+		long responseBytes = 0;
+
+		// The end of the call closes the stream, a copy stuck in the body fails at once
+		InputStream in = response.body();
+		Runnable canceller = () -> closeQuietly(in);
+		if (call != null && !call.register(canceller))
+			canceller.run();
 
-		try (InputStream in = response.body()) {
+		try (in) {
 			Path outputPath = Path.of(savePath);
-			Files.copy(in, outputPath, StandardCopyOption.REPLACE_EXISTING);
+			responseBytes = Files.copy(in, outputPath, StandardCopyOption.REPLACE_EXISTING);
 
 			return outputPath.toFile();
+		} catch (IOException e) {
+			if (call != null && call.isDone())
+				throw call.failure();
+			throw e;
+		} finally {
+			if (call != null)
+				call.unregister(canceller);
+			PBEvents.commit(receiveEvent, PBOperation.DOWNLOAD, collectionName, responseBytes, response.statusCode());
+			metrics.onExchange(PBOperation.DOWNLOAD, collectionName, response.statusCode(),
+					firstByte, System.nanoTime() - start, 0, 0, responseBytes);
+		}
+	}
+
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			// The download fails anyway
 		}
 	}
+
 	/**
 	 * Downloads a file to the local machine from a record inside a collection.
 	 *
@@ -702,6 +2224,8 @@ public class PocketBase {
 	 * @throws PocketBaseException in case of error throws a message with the details of the error
 	 */
 	public PBRecord createRecordWithFiles(String collectionName, Map<String, PBValue> recordValues, String authToken) throws IOException, PocketBaseException, InterruptedException {
+		checkValues(collectionName, recordValues, true);
+
 		// Create the URL
 		String url = address + "/api/collections/" + collectionName + "/records";
 
@@ -738,10 +2262,8 @@ public class PocketBase {
 		}
 
 		// Send the request and get the response json
-		String response = handleResponse(requestBuilder);
-
-		JsonObject jsonObject = gson.fromJson(response, JsonObject.class);
-		return buildRecord(jsonObject);
+		return handleResponse(PBOperation.UPLOAD, collectionName, requestBuilder,
+				this::decodeRecord);
 	}
 
 	/**
@@ -768,6 +2290,8 @@ public class PocketBase {
 	 * @throws IOException         the database is unreachable
 	 */
 	public PBRecord updateRecordWithFiles(String collectionName, String recordId, Map<String, PBValue> updatedValues , String authToken) throws IOException, PocketBaseException, InterruptedException {
+		checkValues(collectionName, updatedValues, false);
+
 		// Create the URL
 		String url = address + "/api/collections/" + collectionName + "/records/" + recordId;
 
@@ -804,10 +2328,8 @@ public class PocketBase {
 		}
 
 		// Send the request and get the response json
-		String response = handleResponse(requestBuilder);
-
-		JsonObject jsonObject = gson.fromJson(response, JsonObject.class);
-		return buildRecord(jsonObject);
+		return handleResponse(PBOperation.UPLOAD, collectionName, requestBuilder,
+				this::decodeRecord);
 	}
 
 	/**
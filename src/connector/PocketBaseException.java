@@ -3,14 +3,24 @@ package connector;
 import java.util.List;
 
 public class PocketBaseException extends Exception {
+	private final int code;
 
 	public PocketBaseException(int errorCode, String errorMessage) {
 		super(errorMessage.replace(".", " ("+ errorCode + ").\n"));
+		this.code = errorCode;
 	}
 
 	public PocketBaseException(int errorCode, String errorMessage, List<ErrorInformationWrapper> errors) {
 		super(errorMessage.replace(".", " ("+ errorCode + ").")
 				+ " Errors: " + errors.toString().replace("[", "").replace("]", "") + "\n"
 		);
+		this.code = errorCode;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Gets the error code of the response, usually the HTTP status code.
+	 */
+	public int getCode() {
+		return code;
+	}
+}
@@ -0,0 +1,17 @@
+package connector;
+
+/**
+ * Wraps a {@link PocketBaseException} where a checked exception cannot be thrown, like inside an {@link java.util.Iterator}.
+ */
+public class UncheckedPocketBaseException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedPocketBaseException(PocketBaseException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public PocketBaseException getCause() {
+		return (PocketBaseException) super.getCause();
+	}
+}
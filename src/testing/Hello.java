@@ -30,7 +30,8 @@ public class Hello {
 		types.remove(1);
 		types.add("panorama");
 
-		pb.updateRecord(COLLECTION, RECORD, values);
+		// Only the changed field is sent
+		pb.updateRecord(record);
 
 		System.out.println("types = " + types);
 
@@ -0,0 +1,251 @@
+package testing;
+
+import connector.PBFilter;
+import connector.PBHistogram;
+import connector.PBQuery;
+import connector.PBRecord;
+import connector.PBValue;
+import connector.PocketBase;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a read/write mix through the connector at a given concurrency and reports throughput and latency percentiles.<br><br>
+ * Without an address, an in-process {@link StubPocketBase} is started and seeded.
+ * <pre>
+ * java testing.LoadTest --threads=32 --duration=30 --mix=readAll:20,readOne:60,create:10,update:10 --latency=2 --errorRate=0.01
+ * java testing.LoadTest --address=http://127.0.0.1:8090 --collection=posts --threads=8
+ * </pre>
+ * Arguments: address, collection, threads, duration and warmup (seconds), mix, perPage, and for the stub
+ * records, latency and jitter (milliseconds), errorRate and payloadSize.
+ */
+public class LoadTest {
+	// Records read with every request while loading the ids
+	private static final int ID_PAGE = 500;
+
+	/**
+	 * The operations of the mix.
+	 */
+	enum Operation {
+		READ_ALL, READ_ONE, CREATE, UPDATE, DELETE
+	}
+
+	private final PocketBase pocketBase;
+	private final String collection;
+	private final int perPage;
+	private final Map<Operation, Integer> mix;
+	private final int totalWeight;
+	// Ids of existing records, for the reads, updates and deletes
+	private final List<String> ids;
+
+	private final Map<Operation, PBHistogram> latencies = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private volatile boolean recording = false;
+
+	LoadTest(PocketBase pocketBase, String collection, int perPage, Map<Operation, Integer> mix, List<String> ids) {
+		this.pocketBase = pocketBase;
+		this.collection = collection;
+		this.perPage = perPage;
+		this.mix = mix;
+		this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+		this.ids = ids;
+
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new PBHistogram());
+			errors.put(operation, new LongAdder());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseArguments(args);
+
+		String collection = options.getOrDefault("collection", "posts");
+		int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+		int duration = Integer.parseInt(options.getOrDefault("duration", "20"));
+		int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+		int perPage = Integer.parseInt(options.getOrDefault("perPage", "30"));
+		Map<Operation, Integer> mix = parseMix(options.getOrDefault("mix", "readAll:20,readOne:60,create:10,update:10"));
+
+		StubPocketBase stub = null;
+		String address = options.get("address");
+		if (address == null) {
+			stub = new StubPocketBase()
+					.latency(Long.parseLong(options.getOrDefault("latency", "0")), Long.parseLong(options.getOrDefault("jitter", "0")))
+					.errorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")))
+					.payloadSize(Integer.parseInt(options.getOrDefault("payloadSize", "256")));
+			stub.seed(collection, Integer.parseInt(options.getOrDefault("records", "10000")));
+			stub.start();
+			address = stub.getAddress();
+		}
+
+		try {
+			PocketBase pocketBase = new PocketBase(address);
+			List<String> ids = loadIds(pocketBase, collection);
+			LoadTest loadTest = new LoadTest(pocketBase, collection, perPage, mix, ids);
+
+			System.out.println("Load test on " + address + "/" + collection + ": " + threads + " threads, " + mix
+					+ ", " + warmup + "s warmup, " + duration + "s measured, " + ids.size() + " known records");
+			loadTest.run(threads, warmup, duration);
+		} finally {
+			if (stub != null)
+				stub.stop();
+		}
+	}
+
+	/**
+	 * Reads the ids of all the records, ordered by id and paged after the last one, so every record can be picked.
+	 */
+	private static List<String> loadIds(PocketBase pocketBase, String collection) throws Exception {
+		List<String> ids = new ArrayList<>();
+		List<PBRecord> page;
+		do {
+			PBQuery query = new PBQuery().perPage(ID_PAGE).sort("id").fields("id").skipTotal(true);
+			if (!ids.isEmpty())
+				query = query.filter(PBFilter.gt("id", ids.get(ids.size() - 1)));
+
+			page = pocketBase.readAllRecords(collection, query).getItems();
+			for (PBRecord record : page) {
+				ids.add(record.getId());
+			}
+		} while (page.size() == ID_PAGE);
+		return ids;
+	}
+
+	/**
+	 * Runs the mix, first without recording for the warmup and then recording.
+	 */
+	void run(int threads, int warmupSeconds, int durationSeconds) throws InterruptedException {
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds + durationSeconds);
+		long recordFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(() -> {
+				try {
+					while (System.nanoTime() < end) {
+						if (!recording && System.nanoTime() >= recordFrom)
+							recording = true;
+						runOne(pickOperation());
+					}
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		done.await();
+		executor.shutdown();
+		report(durationSeconds);
+	}
+
+	private Operation pickOperation() {
+		int choice = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			choice -= entry.getValue();
+			if (choice < 0)
+				return entry.getKey();
+		}
+		return Operation.READ_ONE;
+	}
+
+	private void runOne(Operation operation) {
+		long start = System.nanoTime();
+		try {
+			switch (operation) {
+				case READ_ALL:
+					int page = 1 + ThreadLocalRandom.current().nextInt(Math.max(1, ids.size() / perPage));
+					pocketBase.readAllRecords(collection, new PBQuery().page(page).perPage(perPage));
+					break;
+				case READ_ONE:
+					pocketBase.readOneRecord(collection, randomId());
+					break;
+				case CREATE:
+					pocketBase.createRecord(collection, values());
+					break;
+				case UPDATE:
+					pocketBase.updateRecord(collection, randomId(), values());
+					break;
+				case DELETE:
+					// Deletes only records created by the test, so the reads keep working
+					PBRecord created = pocketBase.createRecord(collection, values());
+					start = System.nanoTime();
+					pocketBase.deleteRecord(collection, created.getId());
+					break;
+			}
+		} catch (Exception e) {
+			if (recording)
+				errors.get(operation).increment();
+			return;
+		}
+		if (recording)
+			latencies.get(operation).record(System.nanoTime() - start);
+	}
+
+	private String randomId() {
+		return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+	}
+
+	private static Map<String, PBValue> values() {
+		Map<String, PBValue> values = new HashMap<>();
+		values.put("title", new PBValue().setString("Load test " + ThreadLocalRandom.current().nextInt()));
+		values.put("views", new PBValue().setString(String.valueOf(ThreadLocalRandom.current().nextInt(100_000))));
+		return values;
+	}
+
+	private void report(int durationSeconds) {
+		System.out.printf("%-9s %10s %10s %8s %10s %10s %10s %10s%n", "operation", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+		long total = 0;
+		for (Operation operation : Operation.values()) {
+			PBHistogram.Snapshot snapshot = latencies.get(operation).snapshot();
+			long failed = errors.get(operation).sum();
+			if (snapshot.getCount() == 0 && failed == 0)
+				continue;
+
+			total += snapshot.getCount();
+			System.out.printf("%-9s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n",
+					operation, snapshot.getCount(), (double) snapshot.getCount() / durationSeconds, failed,
+					millis(snapshot.getPercentile(50)), millis(snapshot.getPercentile(99)),
+					millis(snapshot.getPercentile(99.9)), millis(snapshot.getMax()));
+		}
+		System.out.printf("%-9s %10d %10.1f%n", "TOTAL", total, (double) total / durationSeconds);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static Map<String, String> parseArguments(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("="))
+				throw new IllegalArgumentException("Arguments must be like --name=value: " + arg);
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * Parses a mix like <code>readAll:20,readOne:60,create:10,update:10,delete:0</code>.
+	 */
+	private static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.split(":");
+			String name = parts[0].trim().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+			weights.put(Operation.valueOf(name), Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,54 @@
+package testing;
+
+import connector.PBBatchRequest;
+import connector.PBRecord;
+import connector.PBValue;
+import connector.PocketBase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that a field read as null can be sent back: created, read, updated and batched without losing the null.<br><br>
+ * Runs against an in-process {@link StubPocketBase}, and fails with an exception at the first wrong value.
+ * <pre>
+ * java testing.NullFieldRoundTrip
+ * </pre>
+ */
+public class NullFieldRoundTrip {
+	private static final String COLLECTION = "posts";
+
+	public static void main(String[] args) throws Exception {
+		StubPocketBase stub = new StubPocketBase().start();
+		try {
+			PocketBase pb = new PocketBase(stub.getAddress());
+
+			// A value without a string or a list is sent as null
+			Map<String, PBValue> values = new HashMap<>();
+			values.put("title", new PBValue().setString("null author"));
+			values.put("author", new PBValue());
+			PBRecord created = pb.createRecord(COLLECTION, values);
+			check(created, "create");
+
+			// The record read has a value with both null, sent back as it is
+			PBRecord read = pb.readOneRecord(COLLECTION, created.getId());
+			check(read, "read");
+			check(pb.updateRecord(COLLECTION, read.getId(), read.getValues()), "update");
+			check(pb.updateRecordAsync(COLLECTION, read.getId(), read.getValues(), null).get(), "async update");
+
+			List<PBRecord> batched = pb.batch(List.of(PBBatchRequest.update(COLLECTION, read.getId(), read.getValues())));
+			check(batched.get(0), "batch update");
+
+			System.out.println("The null field survived create, read, update, async update and batch update");
+		} finally {
+			stub.stop();
+		}
+	}
+
+	private static void check(PBRecord record, String step) {
+		PBValue author = record.getValues().get("author");
+		if (author == null || author.getString() != null || author.getList() != null)
+			throw new IllegalStateException("After the " + step + " the author should be null: " + author);
+	}
+}
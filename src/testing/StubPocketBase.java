@@ -0,0 +1,1032 @@
+package testing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for a PocketBase server, to test and load-test the connector without a real database.<br><br>
+ * It keeps the records in memory and implements the endpoints used by the connector: records CRUD with
+ * page, perPage, skipTotal, sort, filter and fields, password authentication, files, batch requests, realtime events
+ * and the schema of the collections.
+ * Latency, errors and the size of the generated records can be configured.
+ * <pre>{@code
+ * StubPocketBase stub = new StubPocketBase().latency(2, 1).errorRate(0.01).payloadSize(512);
+ * stub.seed("posts", 10_000);
+ * stub.start();
+ *
+ * PocketBase pb = new PocketBase(stub.getAddress());
+ * ...
+ * stub.stop();
+ * }</pre>
+ */
+public class StubPocketBase {
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+	private static final String ID_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
+	// The default maxRequests of the batch settings of PocketBase
+	private static final int MAX_BATCH_REQUESTS = 50;
+	private static final String[] TYPES = {"nature", "city", "panorama", "portrait", "night", "sea", "mountain"};
+
+	private final Gson gson = new Gson();
+	private final Map<String, Map<String, JsonObject>> collections = new ConcurrentHashMap<>();
+	private final Map<String, RealtimeClient> realtimeClients = new ConcurrentHashMap<>();
+	private final AtomicLong tokens = new AtomicLong();
+	// Keeps the created dates increasing, even for records created in the same millisecond
+	private final AtomicLong lastMillis = new AtomicLong();
+
+	private final int port;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private volatile long latencyMillis = 0;
+	private volatile long jitterMillis = 0;
+	private volatile double stallRate = 0;
+	private volatile long stallMillis = 0;
+	private volatile double errorRate = 0;
+	private volatile int errorStatus = 500;
+	private volatile int payloadSize = 0;
+	private volatile int fileSize = 64 * 1024;
+
+	/**
+	 * Instantiates a stub on a free port.
+	 */
+	public StubPocketBase() {
+		this(0);
+	}
+
+	/**
+	 * Instantiates a stub on a port.
+	 *
+	 * @param port the port, 0 for a free one
+	 */
+	public StubPocketBase(int port) {
+		this.port = port;
+	}
+
+	// ================  CONFIGURATION ================
+
+	/**
+	 * Delays every response.
+	 *
+	 * @param latencyMillis the fixed delay
+	 * @param jitterMillis  a random delay added to the fixed one, up to this value
+	 */
+	public StubPocketBase latency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+		return this;
+	}
+
+	/**
+	 * Delays a fraction of the responses much more than the others, like a server in a GC pause.
+	 *
+	 * @param stallRate   the fraction of delayed responses, from 0 to 1
+	 * @param stallMillis the delay added to those responses
+	 */
+	public StubPocketBase stalls(double stallRate, long stallMillis) {
+		this.stallRate = stallRate;
+		this.stallMillis = stallMillis;
+		return this;
+	}
+
+	/**
+	 * Fails a fraction of the requests with an error status, 500 by default.
+	 *
+	 * @param errorRate the fraction of failed requests, from 0 to 1
+	 */
+	public StubPocketBase errorRate(double errorRate) {
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/**
+	 * Sets the status of the injected errors.
+	 */
+	public StubPocketBase errorStatus(int errorStatus) {
+		this.errorStatus = errorStatus;
+		return this;
+	}
+
+	/**
+	 * Sets the length of the text "payload" field of the records generated by {@link #seed(String, int)}.
+	 */
+	public StubPocketBase payloadSize(int payloadSize) {
+		this.payloadSize = payloadSize;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the downloaded files.
+	 */
+	public StubPocketBase fileSize(int fileSize) {
+		this.fileSize = fileSize;
+		return this;
+	}
+
+	// ================  LIFECYCLE ================
+
+	/**
+	 * Starts the server.
+	 *
+	 * @return this stub
+	 * @throws IOException the port cannot be used
+	 */
+	public StubPocketBase start() throws IOException {
+		// Without it the responses on a reused connection wait for the delayed ack of the client, about 40 ms
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "stub-pocketbase");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Stops the server and closes the realtime connections.
+	 */
+	public void stop() {
+		realtimeClients.values().forEach(RealtimeClient::close);
+		realtimeClients.clear();
+		if (server != null)
+			server.stop(0);
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * Gets the address to give to the connector, e.g. <code>http://127.0.0.1:54321</code>.
+	 */
+	public String getAddress() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	// ================  DATA ================
+
+	/**
+	 * Generates posts with title, views, type, author and payload fields.
+	 *
+	 * @param collectionName the collection name
+	 * @param count          the number of records
+	 */
+	public void seed(String collectionName, int count) {
+		Random random = new Random(collectionName.hashCode());
+		for (int i = 0; i < count; i++) {
+			JsonObject values = new JsonObject();
+			values.addProperty("title", "Post " + i);
+			values.addProperty("views", random.nextInt(100_000));
+
+			JsonArray type = new JsonArray();
+			type.add(TYPES[random.nextInt(TYPES.length)]);
+			values.add("type", type);
+
+			values.addProperty("author", randomId());
+			values.addProperty("payload", "x".repeat(payloadSize));
+			insert(collectionName, values);
+		}
+	}
+
+	/**
+	 * Gets the number of records of a collection.
+	 */
+	public int size(String collectionName) {
+		return records(collectionName).size();
+	}
+
+	/**
+	 * Gets a copy of a record, null if it does not exist.
+	 */
+	public JsonObject get(String collectionName, String id) {
+		JsonObject record = records(collectionName).get(id);
+		return record != null ? record.deepCopy() : null;
+	}
+
+	private Map<String, JsonObject> records(String collectionName) {
+		return collections.computeIfAbsent(collectionName, k -> new ConcurrentHashMap<>());
+	}
+
+	private JsonObject insert(String collectionName, JsonObject values) {
+		JsonObject record = new JsonObject();
+		String id = values.has("id") ? values.get("id").getAsString() : randomId();
+		String now = now();
+
+		record.addProperty("id", id);
+		record.addProperty("collectionId", "pbc_" + Integer.toUnsignedString(collectionName.hashCode()));
+		record.addProperty("collectionName", collectionName);
+		record.addProperty("created", now);
+		record.addProperty("updated", now);
+		values.entrySet().forEach(entry -> {
+			if (!entry.getKey().equals("id"))
+				record.add(entry.getKey(), entry.getValue());
+		});
+
+		records(collectionName).put(id, record);
+		return record;
+	}
+
+	private String now() {
+		long millis = lastMillis.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+		return DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+	}
+
+	private static String randomId() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		char[] id = new char[15];
+		for (int i = 0; i < id.length; i++) {
+			id[i] = ID_CHARS.charAt(random.nextInt(ID_CHARS.length()));
+		}
+		return new String(id);
+	}
+
+	// ================  HTTP ================
+
+	/**
+	 * A response of the stub.
+	 */
+	private static class Response {
+		final int status;
+		final byte[] body;
+		final String contentType;
+
+		Response(int status, byte[] body, String contentType) {
+			this.status = status;
+			this.body = body;
+			this.contentType = contentType;
+		}
+
+		static Response json(int status, JsonElement json) {
+			return new Response(status, json.toString().getBytes(StandardCharsets.UTF_8), "application/json");
+		}
+
+		static Response error(int status, String message) {
+			JsonObject error = new JsonObject();
+			error.addProperty("code", status);
+			error.addProperty("message", message);
+			error.add("data", new JsonObject());
+			return json(status, error);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		boolean keepOpen = false;
+		try {
+			delay();
+
+			URI uri = exchange.getRequestURI();
+			String method = exchange.getRequestMethod();
+
+			// Realtime keeps the connection open
+			if (uri.getPath().equals("/api/realtime") && method.equals("GET")) {
+				openRealtime(exchange);
+				keepOpen = true;
+				return;
+			}
+
+			Response response;
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				response = Response.error(errorStatus, "Injected error.");
+			} else {
+				byte[] body = exchange.getRequestBody().readAllBytes();
+				response = dispatch(method, uri.getPath(), parseQuery(uri.getRawQuery()), body,
+						exchange.getRequestHeaders().getFirst("Content-Type"));
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", response.contentType);
+			if (response.status == 204) {
+				exchange.sendResponseHeaders(204, -1);
+			} else {
+				exchange.sendResponseHeaders(response.status, response.body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(response.body);
+				}
+			}
+		} catch (Exception e) {
+			Response response = Response.error(500, "Something went wrong while processing your request.");
+			exchange.sendResponseHeaders(response.status, response.body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response.body);
+			}
+		} finally {
+			if (!keepOpen)
+				exchange.close();
+		}
+	}
+
+	private void delay() throws InterruptedException {
+		long millis = latencyMillis;
+		if (jitterMillis > 0)
+			millis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+		if (stallRate > 0 && ThreadLocalRandom.current().nextDouble() < stallRate)
+			millis += stallMillis;
+		if (millis > 0)
+			Thread.sleep(millis);
+	}
+
+	/**
+	 * Routes a request, also used for the requests inside a batch.
+	 */
+	private Response dispatch(String method, String path, Map<String, String> query, byte[] body, String contentType) {
+		String[] parts = path.split("/");
+		// parts[0] is empty, parts[1] is "api"
+		if (parts.length < 3 || !parts[1].equals("api"))
+			return Response.error(404, "The requested resource wasn't found.");
+
+		switch (parts[2]) {
+			case "health":
+				return Response.json(200, message(200, "API is healthy."));
+			case "batch":
+				return method.equals("POST") ? batch(body) : Response.error(405, "Method not allowed.");
+			case "realtime":
+				return method.equals("POST") ? subscribe(body) : Response.error(405, "Method not allowed.");
+			case "admins":
+				if (parts.length == 4 && parts[3].equals("auth-with-password"))
+					return adminAuth(body);
+				break;
+			case "files":
+				if (parts.length == 6 && method.equals("GET"))
+					return file(parts[3], parts[4]);
+				break;
+			case "collections":
+				if (parts.length == 4 && method.equals("GET"))
+					return schema(parts[3]);
+				if (parts.length == 5 && parts[4].equals("records"))
+					return records(method, parts[3], query, body, contentType);
+				if (parts.length == 6 && parts[4].equals("records"))
+					return record(method, parts[3], parts[5], query, body, contentType);
+				if (parts.length == 5 && parts[4].equals("auth-with-password"))
+					return userAuth(parts[3], body);
+				break;
+		}
+		return Response.error(404, "The requested resource wasn't found.");
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null)
+			return query;
+
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	private static JsonObject message(int code, String message) {
+		JsonObject json = new JsonObject();
+		json.addProperty("code", code);
+		json.addProperty("message", message);
+		json.add("data", new JsonObject());
+		return json;
+	}
+
+	// ================  SCHEMA ================
+
+	/**
+	 * The schema of a collection, in the format of PocketBase 0.22, with the fields of the generated posts.
+	 * The token is not checked.
+	 */
+	private Response schema(String collectionName) {
+		if (!collections.containsKey(collectionName))
+			return Response.error(404, "The requested resource wasn't found.");
+
+		JsonArray fields = new JsonArray();
+		fields.add(schemaField("title", "text", true, options("max", 200)));
+		fields.add(schemaField("views", "number", false, options("min", 0)));
+		JsonObject typeOptions = options("maxSelect", 3);
+		JsonArray values = new JsonArray();
+		for (String type : TYPES) {
+			values.add(type);
+		}
+		typeOptions.add("values", values);
+		fields.add(schemaField("type", "select", false, typeOptions));
+		fields.add(schemaField("author", "relation", false, options("maxSelect", 1)));
+		fields.add(schemaField("payload", "text", false, new JsonObject()));
+
+		JsonObject collection = new JsonObject();
+		collection.addProperty("id", "pbc_" + Integer.toUnsignedString(collectionName.hashCode()));
+		collection.addProperty("name", collectionName);
+		collection.addProperty("type", "base");
+		collection.addProperty("system", false);
+		collection.add("schema", fields);
+		return Response.json(200, collection);
+	}
+
+	private static JsonObject schemaField(String name, String type, boolean required, JsonObject options) {
+		JsonObject field = new JsonObject();
+		field.addProperty("system", false);
+		field.addProperty("id", name);
+		field.addProperty("name", name);
+		field.addProperty("type", type);
+		field.addProperty("required", required);
+		field.add("options", options);
+		return field;
+	}
+
+	private static JsonObject options(String name, int value) {
+		JsonObject options = new JsonObject();
+		options.addProperty(name, value);
+		return options;
+	}
+
+	// ================  RECORDS ================
+
+	private Response records(String method, String collectionName, Map<String, String> query, byte[] body, String contentType) {
+		if (method.equals("GET"))
+			return list(collectionName, query);
+		if (!method.equals("POST"))
+			return Response.error(405, "Method not allowed.");
+
+		JsonObject values = parseValues(body, contentType);
+		if (values == null)
+			return Response.error(400, "Failed to load the submitted data due to invalid formatting.");
+
+		if (values.has("id") && records(collectionName).containsKey(values.get("id").getAsString()))
+			return validationError("Failed to create record.", "id", "validation_invalid_id", "The model id is invalid or already exists.");
+
+		JsonObject record = insert(collectionName, values);
+		broadcast(collectionName, "create", record);
+		return Response.json(200, project(record, query.get("fields")));
+	}
+
+	private Response record(String method, String collectionName, String id, Map<String, String> query, byte[] body, String contentType) {
+		Map<String, JsonObject> records = records(collectionName);
+		JsonObject record = records.get(id);
+		if (record == null)
+			return Response.error(404, "The requested resource wasn't found.");
+
+		switch (method) {
+			case "GET":
+				return Response.json(200, project(record, query.get("fields")));
+			case "PATCH": {
+				JsonObject values = parseValues(body, contentType);
+				if (values == null)
+					return Response.error(400, "Failed to load the submitted data due to invalid formatting.");
+
+				JsonObject updated = record.deepCopy();
+				values.entrySet().forEach(entry -> {
+					if (!entry.getKey().equals("id"))
+						updated.add(entry.getKey(), entry.getValue());
+				});
+				updated.addProperty("updated", now());
+				records.put(id, updated);
+				broadcast(collectionName, "update", updated);
+				return Response.json(200, project(updated, query.get("fields")));
+			}
+			case "DELETE":
+				records.remove(id);
+				broadcast(collectionName, "delete", record);
+				return new Response(204, new byte[0], "application/json");
+			default:
+				return Response.error(405, "Method not allowed.");
+		}
+	}
+
+	private Response list(String collectionName, Map<String, String> query) {
+		int page = Math.max(1, intParam(query, "page", 1));
+		int perPage = Math.min(1000, Math.max(1, intParam(query, "perPage", 30)));
+		boolean skipTotal = query.getOrDefault("skipTotal", "").equals("1") || query.getOrDefault("skipTotal", "").equals("true");
+
+		List<JsonObject> matching = new ArrayList<>();
+		String filter = query.get("filter");
+		Filter parsed = filter != null && !filter.isBlank() ? new Filter(filter) : null;
+		for (JsonObject record : records(collectionName).values()) {
+			if (parsed == null || parsed.matches(record))
+				matching.add(record);
+		}
+
+		String sort = query.get("sort");
+		if (sort != null && !sort.isBlank())
+			matching.sort(comparator(sort));
+
+		JsonArray items = new JsonArray();
+		int from = (page - 1) * perPage;
+		for (int i = from; i < Math.min(matching.size(), from + perPage); i++) {
+			items.add(project(matching.get(i), query.get("fields")));
+		}
+
+		JsonObject result = new JsonObject();
+		result.addProperty("page", page);
+		result.addProperty("perPage", perPage);
+		result.addProperty("totalItems", skipTotal ? -1 : matching.size());
+		result.addProperty("totalPages", skipTotal ? -1 : (matching.size() + perPage - 1) / perPage);
+		result.add("items", items);
+		return Response.json(200, result);
+	}
+
+	private static int intParam(Map<String, String> query, String name, int defaultValue) {
+		try {
+			return query.containsKey(name) ? Integer.parseInt(query.get(name)) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static Comparator<JsonObject> comparator(String sort) {
+		Comparator<JsonObject> comparator = null;
+		for (String field : sort.split(",")) {
+			field = field.trim();
+			boolean descending = field.startsWith("-");
+			String name = descending || field.startsWith("+") ? field.substring(1) : field;
+
+			Comparator<JsonObject> fieldComparator = (a, b) -> Filter.compare(a.get(name), b.get(name));
+			if (descending)
+				fieldComparator = fieldComparator.reversed();
+			comparator = comparator == null ? fieldComparator : comparator.thenComparing(fieldComparator);
+		}
+		return comparator;
+	}
+
+	private static JsonObject project(JsonObject record, String fields) {
+		if (fields == null || fields.isBlank() || fields.equals("*"))
+			return record;
+
+		JsonObject projected = new JsonObject();
+		for (String field : fields.split(",")) {
+			JsonElement value = record.get(field.trim());
+			if (value != null)
+				projected.add(field.trim(), value);
+		}
+		return projected;
+	}
+
+	private static Response validationError(String message, String field, String code, String fieldMessage) {
+		JsonObject error = message(400, message);
+		JsonObject fieldError = new JsonObject();
+		fieldError.addProperty("code", code);
+		fieldError.addProperty("message", fieldMessage);
+		error.getAsJsonObject("data").add(field, fieldError);
+		return Response.json(400, error);
+	}
+
+	/**
+	 * Reads the values of a JSON or multipart/form-data body, null if the body is invalid.
+	 */
+	private JsonObject parseValues(byte[] body, String contentType) {
+		try {
+			if (contentType != null && contentType.startsWith("multipart/form-data"))
+				return parseMultipart(body, contentType.substring(contentType.indexOf("boundary=") + "boundary=".length()));
+			if (body.length == 0)
+				return new JsonObject();
+			return JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the parts of a multipart body. Files are stored as their name, repeated names become lists.
+	 */
+	private static JsonObject parseMultipart(byte[] body, String boundary) {
+		// ISO-8859-1 keeps one char per byte, so the file contents cannot break the split
+		String content = new String(body, StandardCharsets.ISO_8859_1);
+		Map<String, List<String>> parts = new LinkedHashMap<>();
+		Set<String> fileFields = new HashSet<>();
+
+		for (String part : content.split("--" + boundary)) {
+			int headerEnd = part.indexOf("\r\n\r\n");
+			if (headerEnd < 0)
+				continue;
+
+			String headers = part.substring(0, headerEnd);
+			String name = headerValue(headers, "name=");
+			String filename = headerValue(headers, "filename=");
+			if (name == null)
+				continue;
+
+			String value;
+			if (filename != null) {
+				value = randomId() + "_" + filename;
+				fileFields.add(name);
+			} else {
+				String raw = part.substring(headerEnd + 4);
+				if (raw.endsWith("\r\n"))
+					raw = raw.substring(0, raw.length() - 2);
+				value = new String(raw.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+			}
+			parts.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+		}
+
+		JsonObject values = new JsonObject();
+		parts.forEach((name, list) -> {
+			if (list.size() == 1 && !fileFields.contains(name)) {
+				values.addProperty(name, list.get(0));
+			} else {
+				JsonArray array = new JsonArray();
+				list.forEach(array::add);
+				values.add(name, array);
+			}
+		});
+		return values;
+	}
+
+	private static String headerValue(String headers, String key) {
+		int start = headers.indexOf("; " + key);
+		if (start < 0)
+			return null;
+		start += key.length() + 2;
+
+		int end = start;
+		while (end < headers.length() && headers.charAt(end) != ';' && headers.charAt(end) != '\r')
+			end++;
+		return headers.substring(start, end).replace("\"", "");
+	}
+
+	// ================  AUTH AND FILES ================
+
+	private Response userAuth(String collectionName, byte[] body) {
+		JsonObject credentials = parseValues(body, "application/json");
+		if (credentials == null || !credentials.has("identity") || "wrong".equals(credentials.get("password").getAsString()))
+			return validationError("Failed to authenticate.", "identity", "validation_invalid_credentials", "Invalid login credentials.");
+
+		String email = credentials.get("identity").getAsString();
+		JsonObject user = null;
+		for (JsonObject record : records(collectionName).values()) {
+			if (record.has("email") && record.get("email").getAsString().equals(email))
+				user = record;
+		}
+		if (user == null) {
+			JsonObject values = new JsonObject();
+			values.addProperty("username", email.split("@")[0]);
+			values.addProperty("email", email);
+			values.addProperty("emailVisibility", false);
+			values.addProperty("verified", true);
+			user = insert(collectionName, values);
+		}
+
+		JsonObject response = new JsonObject();
+		response.addProperty("token", "stub-user-token-" + tokens.incrementAndGet());
+		response.add("record", user);
+		return Response.json(200, response);
+	}
+
+	private Response adminAuth(byte[] body) {
+		JsonObject credentials = parseValues(body, "application/json");
+		if (credentials == null || !credentials.has("identity") || "wrong".equals(credentials.get("password").getAsString()))
+			return validationError("Failed to authenticate.", "identity", "validation_invalid_credentials", "Invalid login credentials.");
+
+		JsonObject admin = new JsonObject();
+		admin.addProperty("id", "stubadmin000001");
+		admin.addProperty("created", now());
+		admin.addProperty("updated", now());
+		admin.addProperty("avatar", 0);
+		admin.addProperty("email", credentials.get("identity").getAsString());
+
+		JsonObject response = new JsonObject();
+		response.addProperty("token", "stub-admin-token-" + tokens.incrementAndGet());
+		response.add("admin", admin);
+		return Response.json(200, response);
+	}
+
+	private Response file(String collectionName, String recordId) {
+		if (!records(collectionName).containsKey(recordId))
+			return Response.error(404, "The requested resource wasn't found.");
+
+		byte[] content = new byte[fileSize];
+		new Random(recordId.hashCode()).nextBytes(content);
+		return new Response(200, content, "application/octet-stream");
+	}
+
+	// ================  BATCH ================
+
+	/**
+	 * Runs the requests of a batch in order. If one fails, the ones before it are rolled back.
+	 * Batches run one at a time, but are not isolated from the other requests.
+	 */
+	private synchronized Response batch(byte[] body) {
+		JsonObject batch = parseValues(body, "application/json");
+		if (batch == null || !batch.has("requests"))
+			return Response.error(400, "Failed to load the submitted data due to invalid formatting.");
+
+		JsonArray requests = batch.getAsJsonArray("requests");
+		if (requests.size() > MAX_BATCH_REQUESTS)
+			return validationError("Invalid batch request data.", "requests", "validation_length_too_long",
+					"The length must be no more than " + MAX_BATCH_REQUESTS + ".");
+
+		JsonArray results = new JsonArray();
+		List<Runnable> rollback = new ArrayList<>();
+
+		for (int i = 0; i < requests.size(); i++) {
+			JsonObject request = requests.get(i).getAsJsonObject();
+			String method = request.get("method").getAsString();
+			URI uri = URI.create(request.get("url").getAsString());
+			byte[] requestBody = request.has("body") ? request.get("body").toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+			rollback.add(undo(uri.getPath()));
+			Response response = dispatch(method, uri.getPath(), parseQuery(uri.getRawQuery()), requestBody, "application/json");
+
+			if (response.status >= 400) {
+				for (int j = rollback.size() - 1; j >= 0; j--) {
+					rollback.get(j).run();
+				}
+
+				JsonObject error = message(400, "Batch transaction failed.");
+				JsonObject requestError = new JsonObject();
+				requestError.add("response", JsonParser.parseString(new String(response.body, StandardCharsets.UTF_8)));
+				JsonObject requestsError = new JsonObject();
+				requestsError.add(String.valueOf(i), requestError);
+				error.getAsJsonObject("data").add("requests", requestsError);
+				return Response.json(400, error);
+			}
+
+			JsonObject result = new JsonObject();
+			result.addProperty("status", response.status);
+			result.add("body", response.status == 204 ? null : JsonParser.parseString(new String(response.body, StandardCharsets.UTF_8)));
+			results.add(result);
+		}
+
+		return Response.json(200, results);
+	}
+
+	/**
+	 * Takes a copy of a collection before a request of a batch, to restore it if the batch fails.
+	 */
+	private Runnable undo(String path) {
+		String[] parts = path.split("/");
+		if (parts.length < 4 || !parts[2].equals("collections"))
+			return () -> {
+			};
+
+		String collectionName = parts[3];
+		Map<String, JsonObject> before = new HashMap<>(records(collectionName));
+		return () -> {
+			// Without clearing the map, so the other requests never see it empty
+			Map<String, JsonObject> records = records(collectionName);
+			records.keySet().retainAll(before.keySet());
+			records.putAll(before);
+		};
+	}
+
+	// ================  REALTIME ================
+
+	/**
+	 * A client connected to the realtime server-sent events.
+	 */
+	private static class RealtimeClient {
+		final HttpExchange exchange;
+		final OutputStream out;
+		final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+		RealtimeClient(HttpExchange exchange) {
+			this.exchange = exchange;
+			this.out = exchange.getResponseBody();
+		}
+
+		synchronized boolean send(String id, String event, String data) {
+			try {
+				out.write(("id:" + id + "\nevent:" + event + "\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		void close() {
+			exchange.close();
+		}
+	}
+
+	private void openRealtime(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+		exchange.getResponseHeaders().set("Cache-Control", "no-store");
+		exchange.sendResponseHeaders(200, 0);
+
+		String clientId = UUID.randomUUID().toString();
+		RealtimeClient client = new RealtimeClient(exchange);
+		realtimeClients.put(clientId, client);
+
+		JsonObject connect = new JsonObject();
+		connect.addProperty("clientId", clientId);
+		client.send(clientId, "PB_CONNECT", connect.toString());
+		// The exchange stays open until the client disconnects or the stub stops
+	}
+
+	private Response subscribe(byte[] body) {
+		JsonObject request = parseValues(body, "application/json");
+		if (request == null || !request.has("clientId"))
+			return Response.error(400, "Failed to load the submitted data due to invalid formatting.");
+
+		RealtimeClient client = realtimeClients.get(request.get("clientId").getAsString());
+		if (client == null)
+			return Response.error(404, "Missing or invalid client id.");
+
+		client.subscriptions.clear();
+		if (request.has("subscriptions")) {
+			request.getAsJsonArray("subscriptions").forEach(topic -> client.subscriptions.add(topic.getAsString()));
+		}
+		return new Response(204, new byte[0], "application/json");
+	}
+
+	private void broadcast(String collectionName, String action, JsonObject record) {
+		if (realtimeClients.isEmpty())
+			return;
+
+		JsonObject event = new JsonObject();
+		event.addProperty("action", action);
+		event.add("record", record);
+		String data = gson.toJson(event);
+		String recordTopic = collectionName + "/" + record.get("id").getAsString();
+
+		realtimeClients.forEach((clientId, client) -> {
+			String topic = client.subscriptions.contains(recordTopic) ? recordTopic
+					: client.subscriptions.contains(collectionName) ? collectionName : null;
+			if (topic != null && !client.send(clientId, topic, data)) {
+				realtimeClients.remove(clientId);
+			}
+		});
+	}
+
+	// ================  FILTERS ================
+
+	/**
+	 * A small evaluator of the PocketBase filter syntax: comparisons (=, !=, &gt;, &gt;=, &lt;, &lt;=, ~, !~)
+	 * between fields and literals, joined with &amp;&amp; and || and grouped with parentheses.
+	 */
+	static class Filter {
+		private final List<String> tokens = new ArrayList<>();
+		private int position;
+		private JsonObject record;
+
+		Filter(String expression) {
+			tokenize(expression);
+		}
+
+		boolean matches(JsonObject record) {
+			this.record = record;
+			this.position = 0;
+			return or();
+		}
+
+		private boolean or() {
+			boolean result = and();
+			while (peek("||")) {
+				position++;
+				result |= and();
+			}
+			return result;
+		}
+
+		private boolean and() {
+			boolean result = primary();
+			while (peek("&&")) {
+				position++;
+				result &= primary();
+			}
+			return result;
+		}
+
+		private boolean primary() {
+			if (peek("(")) {
+				position++;
+				boolean result = or();
+				position++; // ")"
+				return result;
+			}
+
+			JsonElement left = operand(tokens.get(position++));
+			String operator = tokens.get(position++);
+			JsonElement right = operand(tokens.get(position++));
+
+			switch (operator) {
+				case "=":
+					return compare(left, right) == 0;
+				case "!=":
+					return compare(left, right) != 0;
+				case ">":
+					return compare(left, right) > 0;
+				case ">=":
+					return compare(left, right) >= 0;
+				case "<":
+					return compare(left, right) < 0;
+				case "<=":
+					return compare(left, right) <= 0;
+				case "~":
+					return text(left).toLowerCase().contains(text(right).toLowerCase());
+				case "!~":
+					return !text(left).toLowerCase().contains(text(right).toLowerCase());
+				default:
+					throw new IllegalArgumentException("Unknown operator " + operator);
+			}
+		}
+
+		private boolean peek(String token) {
+			return position < tokens.size() && tokens.get(position).equals(token);
+		}
+
+		private JsonElement operand(String token) {
+			char first = token.charAt(0);
+			if (first == '"' || first == '\'')
+				return new JsonPrimitive(token.substring(1));
+			if (Character.isDigit(first) || first == '-')
+				return new JsonPrimitive(Double.parseDouble(token));
+			if (token.equals("true") || token.equals("false"))
+				return new JsonPrimitive(Boolean.parseBoolean(token));
+			if (token.equals("null"))
+				return null;
+			return record.get(token);
+		}
+
+		private void tokenize(String expression) {
+			int i = 0;
+			while (i < expression.length()) {
+				char c = expression.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '"' || c == '\'') {
+					// Strings keep the opening quote to be told apart from the fields
+					StringBuilder string = new StringBuilder().append(c);
+					i++;
+					while (i < expression.length() && expression.charAt(i) != c) {
+						if (expression.charAt(i) == '\\' && i + 1 < expression.length())
+							i++;
+						string.append(expression.charAt(i++));
+					}
+					i++;
+					tokens.add(string.toString());
+				} else if (c == '(' || c == ')') {
+					tokens.add(String.valueOf(c));
+					i++;
+				} else if ("=!<>~&|".indexOf(c) >= 0) {
+					int start = i;
+					while (i < expression.length() && "=!<>~&|".indexOf(expression.charAt(i)) >= 0)
+						i++;
+					tokens.add(expression.substring(start, i));
+				} else {
+					int start = i;
+					while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+							&& "()=!<>~&|".indexOf(expression.charAt(i)) < 0)
+						i++;
+					tokens.add(expression.substring(start, i));
+				}
+			}
+		}
+
+		private static String text(JsonElement element) {
+			if (element == null || element.isJsonNull())
+				return "";
+			return element.isJsonPrimitive() ? element.getAsString() : element.toString();
+		}
+
+		/**
+		 * Compares two values as numbers if both are numbers, otherwise as strings. Missing values are empty strings.
+		 */
+		static int compare(JsonElement a, JsonElement b) {
+			String left = text(a);
+			String right = text(b);
+			if (isNumber(a) && isNumber(b))
+				return Double.compare(Double.parseDouble(left), Double.parseDouble(right));
+			return left.compareTo(right);
+		}
+
+		private static boolean isNumber(JsonElement element) {
+			if (element == null || !element.isJsonPrimitive())
+				return false;
+			if (element.getAsJsonPrimitive().isNumber())
+				return true;
+			try {
+				Double.parseDouble(element.getAsString());
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+	}
+}